@@ -0,0 +1,265 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.processing.Completion;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import mbenson.snapin.SnapinProcessor;
+
+/**
+ * Compiles sources in memory with a {@link SnapinProcessor} attached, timing the processor separately from the
+ * compilation as a whole.
+ */
+public final class InMemoryCompiler {
+    // JCodeModel logs each modifier it cannot represent; keep a strong reference to retain the level:
+    private static final Logger CODE_MODEL_LOGGER = Logger.getLogger("com.helger.jcodemodel");
+
+    static {
+        CODE_MODEL_LOGGER.setLevel(Level.SEVERE);
+    }
+
+    /**
+     * Outcome of a single compilation.
+     */
+    public static final class Result {
+        /**
+         * Wall-clock nanoseconds spent in the compilation as a whole.
+         */
+        public final long compileNanos;
+
+        /**
+         * Nanoseconds spent within {@link SnapinProcessor#process(Set, RoundEnvironment)}.
+         */
+        public final long processorNanos;
+
+        /**
+         * Sum of the peak usage, in bytes, of each heap memory pool during the compilation.
+         */
+        public final long peakHeapBytes;
+
+        Result(long compileNanos, long processorNanos, long peakHeapBytes) {
+            this.compileNanos = compileNanos;
+            this.processorNanos = processorNanos;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("compile %dms, processor %dms, peak heap %dMB",
+                TimeUnit.NANOSECONDS.toMillis(compileNanos), TimeUnit.NANOSECONDS.toMillis(processorNanos),
+                peakHeapBytes >> 20);
+        }
+    }
+
+    /**
+     * Create an in-memory source {@link JavaFileObject}.
+     *
+     * @param className fully qualified class name
+     * @param content source code
+     * @return {@link JavaFileObject}
+     */
+    public static JavaFileObject source(String className, String content) {
+        final MemoryFileObject result = new MemoryFileObject(className, Kind.SOURCE);
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        result.content.write(bytes, 0, bytes.length);
+        return result;
+    }
+
+    private static class MemoryFileObject extends SimpleJavaFileObject {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        MemoryFileObject(String className, Kind kind) {
+            super(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            content.reset();
+            return content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Retains generated sources in memory so that javac can compile them in subsequent rounds, and discards class
+     * files.
+     */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+            FileObject sibling) {
+            return new MemoryFileObject(className, kind);
+        }
+
+        @Override
+        public FileObject getFileForOutput(Location location, String packageName, String relativeName,
+            FileObject sibling) {
+            return new MemoryFileObject(packageName + '.' + relativeName, Kind.OTHER);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            return a.toUri().equals(b.toUri());
+        }
+    }
+
+    /**
+     * Delegates to a {@link SnapinProcessor}, accumulating the time spent processing.
+     */
+    private static class TimedProcessor implements Processor {
+        final Processor delegate = new SnapinProcessor();
+        long nanos;
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return delegate.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return delegate.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return delegate.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            final long start = System.nanoTime();
+            delegate.init(processingEnv);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            final long start = System.nanoTime();
+            try {
+                return delegate.process(annotations, roundEnv);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation,
+            ExecutableElement member, String userText) {
+            return delegate.getCompletions(element, annotation, member, userText);
+        }
+    }
+
+    private final JavaCompiler compiler;
+    private final List<String> options;
+
+    /**
+     * Create a new {@link InMemoryCompiler} compiling against the current class path.
+     *
+     * @param processOnly whether to stop after annotation processing ({@code -proc:only}) rather than compile the
+     *            generated sources as well
+     * @param processorOptions {@code key=value} pairs passed to the processor
+     */
+    public InMemoryCompiler(boolean processOnly, String... processorOptions) {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No system Java compiler; run on a JDK");
+        }
+        options = new ArrayList<>(Arrays.asList("-classpath", System.getProperty("java.class.path"), "-source", "1.8",
+            "-target", "1.8", "-Xlint:-options", processOnly ? "-proc:only" : "-g"));
+        for (String option : processorOptions) {
+            options.add("-A" + option);
+        }
+    }
+
+    /**
+     * Compile {@code sources}.
+     *
+     * @param sources to compile
+     * @return {@link Result}
+     * @throws IllegalStateException if compilation fails
+     */
+    public Result compile(List<JavaFileObject> sources) {
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final TimedProcessor processor = new TimedProcessor();
+
+        final List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans();
+        heap.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+        heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        final long start = System.nanoTime();
+        final boolean success;
+        try (JavaFileManager fileManager =
+            new MemoryFileManager(compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8))) {
+            final JavaCompiler.CompilationTask task =
+                compiler.getTask(null, fileManager, diagnostics, options, null, sources);
+            task.setProcessors(Arrays.asList(processor));
+            success = task.call().booleanValue();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        final long compileNanos = System.nanoTime() - start;
+
+        if (!success || diagnostics.getDiagnostics().stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.ERROR)) {
+            throw new IllegalStateException("Compilation failed: " + diagnostics.getDiagnostics());
+        }
+        return new Result(compileNanos, processor.nanos,
+            heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum());
+    }
+}
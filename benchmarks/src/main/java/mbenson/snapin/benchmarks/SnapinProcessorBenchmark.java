@@ -0,0 +1,77 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaFileObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mbenson.snapin.SnapinProcessor;
+import mbenson.snapin.benchmarks.SyntheticTemplates.Shape;
+
+/**
+ * Measures {@link SnapinProcessor} throughput over bulk synthetic templates. Each invocation runs javac, with
+ * {@code -proc:only}, over {@link #count} templates; divide the score by {@link #count} for the time per template.
+ * Run with {@code -prof gc} for allocation figures, or use {@link SnapinProcessorScaling} for peak heap.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapinProcessorBenchmark {
+    private static final String STREAMING_OPTION = "snapin.streaming";
+
+    @Param
+    public Shape shape;
+
+    @Param({ "100" })
+    public int count;
+
+    /**
+     * Whether to generate each template into its own code model.
+     */
+    @Param({ "false", "true" })
+    public boolean streaming;
+
+    private InMemoryCompiler compiler;
+    private List<JavaFileObject> sources;
+
+    @Setup
+    public void setup() {
+        compiler = new InMemoryCompiler(true, STREAMING_OPTION + '=' + streaming);
+        sources = SyntheticTemplates.generate(shape, count);
+    }
+
+    @Benchmark
+    public InMemoryCompiler.Result process() {
+        return compiler.compile(sources);
+    }
+}
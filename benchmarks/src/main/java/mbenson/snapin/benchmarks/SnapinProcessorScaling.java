@@ -0,0 +1,82 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.tools.JavaFileObject;
+
+import mbenson.snapin.SnapinProcessor;
+import mbenson.snapin.benchmarks.SyntheticTemplates.Shape;
+
+/**
+ * Reports how {@link SnapinProcessor} scales with the number of templates in a compilation: time per template and
+ * peak heap, for each {@link Shape}. Usage:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar mbenson.snapin.benchmarks.SnapinProcessorScaling \
+ *     [counts] [shapes] [repetitions]
+ * </pre>
+ *
+ * where {@code counts} and {@code shapes} are comma-delimited, defaulting to {@code 10,100,500} and all shapes.
+ * Set the system property {@code snapin.compile=true} to compile the generated sources as well; other system
+ * properties prefixed {@code snapin.} are passed as processor options, e.g. {@code -Dsnapin.streaming=true}.
+ */
+public class SnapinProcessorScaling {
+    private static final int WARMUP = 3;
+
+    public static void main(String[] args) {
+        final List<Integer> counts = Arrays.stream((args.length > 0 ? args[0] : "10,100,500").split(","))
+            .map(Integer::valueOf).collect(Collectors.toList());
+        final List<Shape> shapes = args.length > 1
+            ? Arrays.stream(args[1].split(",")).map(Shape::valueOf).collect(Collectors.toList())
+            : Arrays.asList(Shape.values());
+        final int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        final String[] processorOptions = System.getProperties().stringPropertyNames().stream()
+            .filter(k -> k.startsWith("snapin.") && !"snapin.compile".equals(k))
+            .map(k -> k + '=' + System.getProperty(k)).toArray(String[]::new);
+        final InMemoryCompiler compiler =
+            new InMemoryCompiler(!Boolean.getBoolean("snapin.compile"), processorOptions);
+
+        System.out.printf("%-22s %9s %12s %14s %16s %14s%n", "shape", "templates", "compile ms", "processor ms",
+            "processor us/tpl", "peak heap MB");
+
+        for (Shape shape : shapes) {
+            for (int count : counts) {
+                final List<JavaFileObject> sources = SyntheticTemplates.generate(shape, count);
+                for (int i = 0; i < WARMUP; i++) {
+                    compiler.compile(sources);
+                }
+                long compileNanos = 0, processorNanos = 0, peakHeapBytes = 0;
+                for (int i = 0; i < repetitions; i++) {
+                    System.gc();
+                    final InMemoryCompiler.Result result = compiler.compile(sources);
+                    compileNanos += result.compileNanos;
+                    processorNanos += result.processorNanos;
+                    peakHeapBytes = Math.max(peakHeapBytes, result.peakHeapBytes);
+                }
+                System.out.printf("%-22s %9d %12d %14d %16d %14d%n", shape, count,
+                    TimeUnit.NANOSECONDS.toMillis(compileNanos / repetitions),
+                    TimeUnit.NANOSECONDS.toMillis(processorNanos / repetitions),
+                    TimeUnit.NANOSECONDS.toMicros(processorNanos / repetitions / count), peakHeapBytes >> 20);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates synthetic {@link Snapin} templates, and their delegate interfaces, in bulk.
+ */
+public final class SyntheticTemplates {
+    /**
+     * Package of generated sources.
+     */
+    public static final String PACKAGE = "synthetic";
+
+    private static final String IMPORTS =
+        "import java.util.*;\nimport mbenson.snapin.Snapin;\nimport mbenson.snapin.SnapinTemplate;\n\n";
+
+    /**
+     * Template shapes, each stressing a different aspect of type resolution.
+     */
+    public enum Shape {
+        /**
+         * Non-generic delegate interface with many methods of assorted signatures.
+         */
+        WIDE {
+
+            @Override
+            void generate(int index, List<JavaFileObject> sink) {
+                final String delegate = "WideDelegate" + index;
+                final String template = "WideSnapinTemplate" + index;
+                final String[] signatures = { "String m%d(String a, int b)",
+                    "List<String> m%d(Map<String, Integer> a)", "void m%d(Set<? extends Number> a, Object... rest)",
+                    "<X extends Comparable<X>> X m%d(Collection<X> a)",
+                    "long m%d(long a, double b) throws java.io.IOException" };
+
+                sink.add(source(delegate, "public interface " + delegate + " {\n"
+                    + methods(WIDTH, i -> "    " + String.format(signatures[i % signatures.length], i) + ";\n")
+                    + "}\n"));
+
+                sink.add(source(template,
+                    "@Snapin(\"WideSnapin" + index + "\")\nabstract class " + template + " implements SnapinTemplate<"
+                        + delegate + "> {\n" + methods(WIDTH / 4, i -> "    protected abstract "
+                            + String.format(signatures[i % signatures.length], i).replace(" m", " t") + ";\n")
+                        + "}\n"));
+            }
+        },
+
+        /**
+         * Generic delegate interface whose methods nest the delegate's type variables deeply.
+         */
+        DEEP_GENERICS {
+
+            @Override
+            void generate(int index, List<JavaFileObject> sink) {
+                final String delegate = "DeepDelegate" + index;
+                final String template = "DeepSnapinTemplate" + index;
+                final String[] signatures = { "Map<K, List<Set<V>>> m%d(Map<K, Map<V, List<K>>> a)",
+                    "Optional<Map<K, List<V>>> m%d(List<? extends Map<K, V>> a)",
+                    "<X extends Comparable<X>> Set<X> m%d(Map<X, Set<? super V>> a)",
+                    "void m%d(Map<List<K>, Set<Map<V, K>>> a, List<List<List<V>>> b)" };
+
+                sink.add(source(delegate, "public interface " + delegate + "<K, V> {\n"
+                    + methods(WIDTH / 2, i -> "    " + String.format(signatures[i % signatures.length], i) + ";\n")
+                    + "}\n"));
+
+                sink.add(source(template,
+                    "@Snapin(\"DeepSnapin" + index + "\")\nabstract class " + template
+                        + "<K extends Comparable<K>, V> implements SnapinTemplate<" + delegate
+                        + "<K, List<Map<K, V>>>> {\n"
+                        + methods(WIDTH / 8,
+                            i -> "    protected abstract Map<K, List<Set<V>>> t" + i + "(Map<K, Map<V, List<K>>> a);\n")
+                        + "}\n"));
+            }
+        },
+
+        /**
+         * Delegate interface and template both declaring many type parameters, bound to each other out of order,
+         * after the fashion of {@code ParameterizedSnapinTemplate}.
+         */
+        MANY_TYPE_PARAMETERS {
+
+            @Override
+            void generate(int index, List<JavaFileObject> sink) {
+                final String delegate = "ManyDelegate" + index;
+                final String template = "ManySnapinTemplate" + index;
+                final String params = "A, B, C, D, E, F, G, H";
+                final String[] signatures =
+                    { "A m%d(B b, C c)", "Map<D, E> m%d(F f, List<G> g)", "<X extends Number> X m%d(A a, List<X> x)" };
+
+                sink.add(source(delegate, "public interface " + delegate + "<" + params + "> {\n"
+                    + methods(WIDTH / 2, i -> "    " + String.format(signatures[i % signatures.length], i) + ";\n")
+                    + "}\n"));
+
+                sink.add(source(template,
+                    "@Snapin(\"ManySnapin" + index + "\")\nabstract class " + template + "<" + params
+                        + "> implements SnapinTemplate<" + delegate + "<H, G, F, E, D, C, B, List<A>>> {\n"
+                        + methods(WIDTH / 8, i -> "    protected abstract "
+                            + String.format(signatures[i % signatures.length], i).replace(" m", " t") + ";\n")
+                        + "}\n"));
+            }
+        };
+
+        abstract void generate(int index, List<JavaFileObject> sink);
+    }
+
+    /**
+     * Number of methods declared by a {@link Shape#WIDE} delegate interface; other shapes scale from this.
+     */
+    public static final int WIDTH = 40;
+
+    /**
+     * Generate {@code count} templates of {@code shape}.
+     *
+     * @param shape {@link Shape}
+     * @param count number of templates
+     * @return {@link List} of source {@link JavaFileObject}s
+     */
+    public static List<JavaFileObject> generate(Shape shape, int count) {
+        final List<JavaFileObject> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shape.generate(i, result);
+        }
+        return result;
+    }
+
+    private static String methods(int count, IntFunction<String> method) {
+        return IntStream.range(0, count).mapToObj(method).collect(Collectors.joining());
+    }
+
+    private static JavaFileObject source(String simpleName, String body) {
+        return InMemoryCompiler.source(PACKAGE + '.' + simpleName, "package " + PACKAGE + ";\n\n" + IMPORTS + body);
+    }
+
+    private SyntheticTemplates() {
+    }
+}
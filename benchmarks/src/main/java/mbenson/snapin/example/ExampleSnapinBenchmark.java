@@ -0,0 +1,167 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the overhead of invoking an {@link Example} delegate through a generated {@link ExampleSnapin} against
+ * a hand-written direct call to the same logic. Lives in the package of the generated snap-in to reach its
+ * package-private wrapper methods.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ExampleSnapinBenchmark {
+    private static final int MEGAMORPHIC_DELEGATES = 8;
+
+    /**
+     * Per-thread {@link Example} that sinks its arguments into the thread's {@link Blackhole}.
+     */
+    @State(Scope.Thread)
+    public static class Sink implements Example {
+        Blackhole blackhole;
+        Example[] megamorphic;
+        int index;
+
+        @Setup(Level.Iteration)
+        public void setup(Blackhole blackhole) {
+            this.blackhole = blackhole;
+            // distinct lambda classes defeat inlining of the delegate call site:
+            megamorphic = new Example[] { (id, arg) -> blackhole.consume(id), (id, arg) -> blackhole.consume(arg),
+                (id, arg) -> blackhole.consume(id.length()), (id, arg) -> blackhole.consume(arg.hashCode()),
+                (id, arg) -> blackhole.consume(id.hashCode()), (id, arg) -> blackhole.consume(arg.toString()),
+                (id, arg) -> blackhole.consume(id.isEmpty()), (id, arg) -> blackhole.consume(arg == id) };
+            if (megamorphic.length != MEGAMORPHIC_DELEGATES) {
+                throw new IllegalStateException("expected " + MEGAMORPHIC_DELEGATES + " megamorphic delegates");
+            }
+        }
+
+        @Override
+        public void call(String id, Object arg) {
+            blackhole.consume(id);
+            blackhole.consume(arg);
+        }
+
+        Example next() {
+            return megamorphic[index++ & (MEGAMORPHIC_DELEGATES - 1)];
+        }
+    }
+
+    private static <T> ExampleSnapin<T> snapin() {
+        return new ExampleSnapin<T>() {
+
+            @Override
+            protected void foo(T t) {
+                call("foo", t);
+            }
+
+            @Override
+            protected <X> void bar(X x) throws Exception {
+                call("bar", x);
+            }
+
+            @Override
+            protected <Y> Y baz(String... s) {
+                call("baz", s);
+                return null;
+            }
+        };
+    }
+
+    private final ExampleSnapin<String> snapin = ExampleSnapinBenchmark.<String> snapin();
+    private final ExampleSnapinPool<String> pool = new ExampleSnapinPool<String>(ExampleSnapinBenchmark::snapin);
+    private final String value = "value";
+    private final String[] varargs = { "a", "b", "c" };
+
+    /**
+     * Baseline: the logic of {@code foo} written directly against the delegate.
+     */
+    @Benchmark
+    public void directFoo(Sink sink) {
+        sink.call("foo", value);
+    }
+
+    @Benchmark
+    public void snapinFoo(Sink sink) {
+        snapin.foo(sink, value);
+    }
+
+    @Benchmark
+    public void boundFoo(Sink sink) {
+        snapin.bind(sink).foo(value);
+    }
+
+    @Benchmark
+    public void directBaz(Sink sink) {
+        sink.call("baz", varargs);
+    }
+
+    @Benchmark
+    public Object snapinBaz(Sink sink) {
+        return snapin.baz(sink, varargs);
+    }
+
+    @Benchmark
+    public Object snapinBazInlineVarargs(Sink sink) {
+        return snapin.baz(sink, "a", "b", "c");
+    }
+
+    @Benchmark
+    public void directFooMegamorphic(Sink sink) {
+        sink.next().call("foo", value);
+    }
+
+    @Benchmark
+    public void snapinFooMegamorphic(Sink sink) {
+        snapin.foo(sink.next(), value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void directFooContended(Sink sink) {
+        sink.call("foo", value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void snapinFooContended(Sink sink) {
+        snapin.foo(sink, value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void pooledFooContended(Sink sink) {
+        pool.get().foo(sink, value);
+    }
+}
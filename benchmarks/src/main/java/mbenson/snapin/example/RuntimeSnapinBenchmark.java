@@ -0,0 +1,214 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mbenson.snapin.SnapinTemplate;
+import mbenson.snapin.Snapins;
+
+/**
+ * Measures a snap-in generated at runtime by {@link Snapins} against the {@link ExampleSnapin} generated at compile
+ * time: the per-call overhead of {@code foo}, alongside a {@link Proxy}-based forwarder as the reflective alternative,
+ * and the startup cost of each, as the single-shot time to obtain a usable snap-in class in a fresh class loader.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class RuntimeSnapinBenchmark {
+
+    /**
+     * The template of {@link ExampleSnapinBenchmark}'s {@code foo}, for generation at runtime.
+     */
+    public abstract static class RuntimeTemplate implements SnapinTemplate<Example>, Example {
+
+        public void foo(Object t) {
+            call("foo", t);
+        }
+    }
+
+    /**
+     * Reflective alternative: a {@link Proxy} of {@link Example} forwarding to the installed delegate.
+     */
+    static final class ProxySnapin implements InvocationHandler {
+        private final Example self = (Example) Proxy.newProxyInstance(Example.class.getClassLoader(),
+            new Class<?>[] { Example.class }, this);
+        private Example delegate;
+
+        synchronized void foo(Example delegate, Object t) {
+            this.delegate = delegate;
+            try {
+                self.call("foo", t);
+            } finally {
+                this.delegate = null;
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return method.invoke(delegate, args);
+        }
+    }
+
+    /**
+     * Loads the named classes afresh, delegating all others to its parent, that their loading, linking and (for
+     * templates) generation are measured cold.
+     */
+    static final class IsolatingClassLoader extends ClassLoader {
+        private final Collection<String> isolated;
+
+        IsolatingClassLoader(Class<?>... isolated) {
+            super(RuntimeSnapinBenchmark.class.getClassLoader());
+            this.isolated = new HashSet<>();
+            Arrays.stream(isolated).map(Class::getName).forEach(this.isolated::add);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!isolated.contains(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> result = findLoadedClass(name);
+                if (result == null) {
+                    final byte[] b;
+                    try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        if (in == null) {
+                            throw new ClassNotFoundException(name);
+                        }
+                        b = toByteArray(in);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                    result = defineClass(name, b, 0, b.length);
+                }
+                if (resolve) {
+                    resolveClass(result);
+                }
+                return result;
+            }
+        }
+
+        private static byte[] toByteArray(InputStream in) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) >= 0;) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static final Snapins.TemplateRun<RuntimeTemplate, RuntimeException> FOO = s -> s.foo("value");
+
+    private final ExampleSnapin<String> compiled = new ExampleSnapin<String>() {
+
+        @Override
+        protected void foo(String t) {
+            call("foo", t);
+        }
+
+        @Override
+        protected <X> void bar(X x) throws Exception {
+            call("bar", x);
+        }
+
+        @Override
+        protected <Y> Y baz(String... s) {
+            call("baz", s);
+            return null;
+        }
+    };
+    private final Snapins.Engine<RuntimeTemplate, Example> engine = Snapins.generate(RuntimeTemplate.class);
+    private final RuntimeTemplate runtime = engine.newInstance();
+    private final ProxySnapin proxy = new ProxySnapin();
+    private final String value = "value";
+
+    @Benchmark
+    public void compiledFoo(ExampleSnapinBenchmark.Sink sink) {
+        compiled.foo(sink, value);
+    }
+
+    @Benchmark
+    public void runtimeFoo(ExampleSnapinBenchmark.Sink sink) {
+        engine.run(runtime, sink, FOO);
+    }
+
+    @Benchmark
+    public void proxyFoo(ExampleSnapinBenchmark.Sink sink) {
+        proxy.foo(sink, value);
+    }
+
+    /**
+     * A fresh class loader per startup measurement.
+     */
+    @State(Scope.Thread)
+    public static class Cold {
+        IsolatingClassLoader loader;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            loader = new IsolatingClassLoader(ExampleSnapin.class, RuntimeTemplate.class);
+        }
+    }
+
+    /**
+     * Baseline startup: loading and initializing the compiled snap-in class.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 100)
+    public Class<?> compiledStartup(Cold cold) throws ClassNotFoundException {
+        return Class.forName(ExampleSnapin.class.getName(), true, cold.loader);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 100)
+    @SuppressWarnings("unchecked")
+    public Snapins.Engine<?, ?> runtimeStartup(Cold cold) throws ClassNotFoundException {
+        return Snapins.generate(
+            (Class<RuntimeTemplate>) Class.forName(RuntimeTemplate.class.getName(), true, cold.loader));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mbenson.snapin.example.Example;
+
+/**
+ * Compares the guard strategies selected by {@link mbenson.snapin.Snapin#concurrency()}, uncontended and contended,
+ * and the amortization of a single guard across a {@code Session}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+    private static final int SESSION_CALLS = 16;
+
+    /**
+     * Per-thread {@link Example} that sinks its arguments into the thread's {@link Blackhole}.
+     */
+    @State(Scope.Thread)
+    public static class Sink implements Example {
+        Blackhole blackhole;
+
+        @Setup
+        public void setup(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void call(String id, Object arg) {
+            blackhole.consume(id);
+            blackhole.consume(arg);
+        }
+    }
+
+    @Param({ "LOCK", "CONFINED", "NONE" })
+    public String guard;
+
+    private Guarded guarded;
+    private final String value = "value";
+
+    @Setup
+    public void setup() {
+        guarded = Guarded.valueOf(guard);
+    }
+
+    @Benchmark
+    public void foo(Sink sink) {
+        guarded.foo(sink, value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fooContended(Sink sink) {
+        guarded.foo(sink, value);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSION_CALLS)
+    public void fooRepeated(Sink sink) {
+        for (int i = 0; i < SESSION_CALLS; i++) {
+            guarded.foo(sink, value);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSION_CALLS)
+    public void fooSession(Sink sink) {
+        guarded.session(sink, value);
+    }
+
+    /**
+     * Adapts the generated snap-ins, which share no common supertype, to a single benchmark parameter.
+     */
+    enum Guarded {
+        LOCK {
+            final LockingSnapin<String> snapin = new LockingSnapin<String>() {
+
+                @Override
+                protected void foo(String t) {
+                    call("foo", t);
+                }
+
+                @Override
+                protected <R> R bar(String t) {
+                    return null;
+                }
+            };
+
+            @Override
+            void foo(Example delegate, String value) {
+                snapin.foo(delegate, value);
+            }
+
+            @Override
+            void session(Example delegate, String value) {
+                try (LockingSnapin<String>.Session session = snapin.open(delegate)) {
+                    for (int i = 0; i < SESSION_CALLS; i++) {
+                        session.foo(value);
+                    }
+                }
+            }
+        },
+        CONFINED {
+            final ConfinedSnapin<String> snapin = new ConfinedSnapin<String>() {
+
+                @Override
+                protected void foo(String t) {
+                    call("foo", t);
+                }
+
+                @Override
+                protected <R> R bar(String t) {
+                    return null;
+                }
+            };
+
+            @Override
+            void foo(Example delegate, String value) {
+                snapin.foo(delegate, value);
+            }
+
+            @Override
+            void session(Example delegate, String value) {
+                try (ConfinedSnapin<String>.Session session = snapin.open(delegate)) {
+                    for (int i = 0; i < SESSION_CALLS; i++) {
+                        session.foo(value);
+                    }
+                }
+            }
+        },
+        NONE {
+            // unguarded snap-ins are unsafe to share; each thread gets its own
+            final ThreadLocal<UnguardedSnapin<String>> snapin =
+                ThreadLocal.withInitial(() -> new UnguardedSnapin<String>() {
+
+                    @Override
+                    protected void foo(String t) {
+                        call("foo", t);
+                    }
+
+                    @Override
+                    protected <R> R bar(String t) {
+                        return null;
+                    }
+                });
+
+            @Override
+            void foo(Example delegate, String value) {
+                snapin.get().foo(delegate, value);
+            }
+
+            @Override
+            void session(Example delegate, String value) {
+                try (UnguardedSnapin<String>.Session session = snapin.get().open(delegate)) {
+                    for (int i = 0; i < SESSION_CALLS; i++) {
+                        session.foo(value);
+                    }
+                }
+            }
+        };
+
+        abstract void foo(Example delegate, String value);
+
+        abstract void session(Example delegate, String value);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.fanout;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a generated {@link FanOutSnapin.FanOut} of three {@link Sink}s of distinct classes (a primary, audit and
+ * replica sink) against a hand-written composite looping over the same sinks at a single, thus megamorphic, call site.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FanOutBenchmark {
+
+    private abstract static class BlackholeSink implements Sink {
+        Blackhole blackhole;
+
+        @Override
+        public void acceptAll(String... events) {
+            blackhole.consume(events);
+        }
+
+        @Override
+        public int count(String key) {
+            return key.length();
+        }
+
+        @Override
+        public double weight(String key) {
+            return key.length();
+        }
+
+        @Override
+        public <V> V get(String key, Class<V> type) {
+            return null;
+        }
+    }
+
+    private static final class PrimarySink extends BlackholeSink {
+
+        @Override
+        public void accept(String event) {
+            blackhole.consume(event);
+        }
+    }
+
+    private static final class AuditSink extends BlackholeSink {
+
+        @Override
+        public void accept(String event) {
+            blackhole.consume(event.length());
+        }
+    }
+
+    private static final class ReplicaSink extends BlackholeSink {
+
+        @Override
+        public void accept(String event) {
+            blackhole.consume(event.hashCode());
+        }
+    }
+
+    /**
+     * The generic composite a {@code FanOut} replaces.
+     */
+    private static final class LoopSink extends BlackholeSink {
+        private final List<Sink> sinks;
+
+        LoopSink(Sink... sinks) {
+            this.sinks = Arrays.asList(sinks);
+        }
+
+        @Override
+        public void accept(String event) throws IOException {
+            for (Sink sink : sinks) {
+                sink.accept(event);
+            }
+        }
+
+        @Override
+        public int count(String key) {
+            int result = 0;
+            for (Sink sink : sinks) {
+                result = sink.count(key);
+            }
+            return result;
+        }
+    }
+
+    private final FanOutSnapin snapin = new FanOutSnapin() {
+
+        @Override
+        protected void publish(String event) throws IOException {
+            accept(event);
+        }
+
+        @Override
+        protected int tally(String key) {
+            return count(key);
+        }
+    };
+    private final BlackholeSink[] sinks = { new PrimarySink(), new AuditSink(), new ReplicaSink() };
+    private final Sink loop = new LoopSink(sinks);
+    private final Sink fanOut = snapin.fanOut(sinks);
+    private final String event = "event";
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        for (BlackholeSink sink : sinks) {
+            sink.blackhole = blackhole;
+        }
+    }
+
+    @Benchmark
+    public void loopAccept() throws IOException {
+        loop.accept(event);
+    }
+
+    @Benchmark
+    public void fanOutAccept() throws IOException {
+        fanOut.accept(event);
+    }
+
+    @Benchmark
+    public int loopCount() {
+        return loop.count(event);
+    }
+
+    @Benchmark
+    public int fanOutCount() {
+        return fanOut.count(event);
+    }
+}
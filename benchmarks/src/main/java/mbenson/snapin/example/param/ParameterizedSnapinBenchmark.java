@@ -0,0 +1,94 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.param;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of the generic delegate path through a generated {@link ParameterizedSnapin} against a
+ * hand-written direct call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ParameterizedSnapinBenchmark {
+    private final Parameterized<Integer, List<String>> delegate = new Parameterized<Integer, List<String>>() {
+
+        @Override
+        public List<String> apply(Integer t) {
+            return null;
+        }
+    };
+
+    private final ParameterizedSnapin<Integer, String> snapin = new ParameterizedSnapin<Integer, String>() {
+
+        @Override
+        protected Integer foo(Integer p) {
+            apply(p);
+            return p;
+        }
+
+        @Override
+        protected Integer bar(Integer bar) {
+            apply(bar);
+            return bar;
+        }
+    };
+
+    private final Integer value = Integer.valueOf(42);
+
+    /**
+     * Baseline: the logic of {@code foo} written directly against the delegate.
+     */
+    @Benchmark
+    public Integer direct() {
+        delegate.apply(value);
+        return value;
+    }
+
+    @Benchmark
+    public Integer snapin() {
+        return snapin.foo(delegate, value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer directContended() {
+        delegate.apply(value);
+        return value;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer snapinContended() {
+        return snapin.foo(delegate, value);
+    }
+}
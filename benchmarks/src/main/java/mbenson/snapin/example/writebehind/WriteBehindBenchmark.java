@@ -0,0 +1,157 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.writebehind;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a template making many small writes to a {@link Log} whose every call pays a simulated round trip: forwarded
+ * directly by a {@link LogSnapin}, and recorded by a {@link WriteBehindSnapin} to be replayed one by one or accepted
+ * as a batch by a {@link WriteBehindSnapin.BatchAware} log, paying one round trip per flush.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class WriteBehindBenchmark {
+
+    private static class RemoteLog implements Log {
+        Blackhole blackhole;
+        long roundTrip;
+
+        @Override
+        public void write(String message) {
+            Blackhole.consumeCPU(roundTrip);
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void write(int level, String message) {
+            Blackhole.consumeCPU(roundTrip);
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void measure(String name, double value) {
+            Blackhole.consumeCPU(roundTrip);
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void writeAll(String... messages) {
+            Blackhole.consumeCPU(roundTrip);
+            blackhole.consume(messages);
+        }
+
+        @Override
+        public void sync() {
+            Blackhole.consumeCPU(roundTrip);
+        }
+
+        @Override
+        public int written() {
+            return 0;
+        }
+    }
+
+    private static final class BatchRemoteLog extends RemoteLog implements WriteBehindSnapin.BatchAware {
+
+        @Override
+        public void writeBehind(WriteBehindSnapin.Calls calls) {
+            Blackhole.consumeCPU(roundTrip);
+            for (int i = 0, size = calls.size(); i < size; i++) {
+                blackhole.consume(calls.method(i));
+            }
+        }
+    }
+
+    private final LogSnapin direct = new LogSnapin() {
+
+        @Override
+        protected void report(int count) {
+            for (int i = 0; i < count; i++) {
+                write("message");
+            }
+        }
+    };
+    private final WriteBehindSnapin writeBehind = new WriteBehindSnapin() {
+
+        @Override
+        protected void report(int count) {
+            for (int i = 0; i < count; i++) {
+                write("message");
+            }
+        }
+
+        @Override
+        protected int reportAndSync(int count) {
+            report(count);
+            return 0;
+        }
+    };
+    private final RemoteLog log = new RemoteLog();
+    private final RemoteLog batchLog = new BatchRemoteLog();
+
+    /**
+     * Simulated cost of a round trip, in {@link Blackhole#consumeCPU(long)} tokens.
+     */
+    @Param({ "0", "100" })
+    public long roundTrip;
+
+    /**
+     * Writes per template call.
+     */
+    @Param({ "16" })
+    public int count;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        for (RemoteLog remote : new RemoteLog[] { log, batchLog }) {
+            remote.blackhole = blackhole;
+            remote.roundTrip = roundTrip;
+        }
+    }
+
+    @Benchmark
+    public void direct() {
+        direct.report(log, count);
+    }
+
+    @Benchmark
+    public void writeBehindReplayed() {
+        writeBehind.report(log, count);
+    }
+
+    @Benchmark
+    public void writeBehindBatched() {
+        writeBehind.report(batchLog, count);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import javax.annotation.processing.Filer;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.helger.jcodemodel.AbstractCodeWriter;
+import com.helger.jcodemodel.JPackage;
+
+/**
+ * {@link AbstractCodeWriter} that creates each source file through a {@link Filer}.
+ */
+class FilerCodeWriter extends AbstractCodeWriter {
+    private static final String SOURCE_SUFFIX = ".java";
+
+    private final Filer filer;
+
+    FilerCodeWriter(Filer filer) {
+        super(StandardCharsets.UTF_8);
+        this.filer = Objects.requireNonNull(filer, "filer");
+    }
+
+    @Override
+    public OutputStream openBinary(JPackage pkg, String fileName) throws IOException {
+        final String simpleName = StringUtils.removeEnd(fileName, SOURCE_SUFFIX);
+        final String name = pkg.isUnnamed() ? simpleName : pkg.name() + '.' + simpleName;
+        return new BufferedOutputStream(filer.createSourceFile(name).openOutputStream());
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.helger.jcodemodel.JCodeModel;
+
+import mbenson.annotationprocessing.CodeModelProcessorBase;
+
+/**
+ * Index of template fingerprints, kept under the generated sources output, by which an unchanged template can be
+ * recognized without regenerating its snap-in. A fingerprint digests everything that contributes to generated code:
+ * the template's declaration and members, including {@link Snapin.Doc} text and all other annotations; the delegate
+ * type and its members; and the processor itself, along with the code generation libraries it uses. Entries for
+ * templates not encountered by a compilation are dropped as the index is stored.
+ */
+class FingerprintIndex {
+    /**
+     * Processor option by which the index is enabled.
+     */
+    static final String OPTION = "snapin.fingerprints";
+
+    private static final String RESOURCE = "META-INF/snapin/fingerprints.properties";
+    private static final String ALGORITHM = "SHA-256";
+    /**
+     * Classes whose code sources (jar or class directory) shape the generated code: the processor, with its
+     * annotations, and the code generation libraries.
+     */
+    private static final Class<?>[] CODE_SOURCES = { FingerprintIndex.class,
+        CodeModelProcessorBase.class, JCodeModel.class };
+
+    private static String processorDigest;
+
+    private static synchronized String processorDigest() {
+        if (processorDigest == null) {
+            final MessageDigest digest = digest();
+            for (Class<?> c : CODE_SOURCES) {
+                final Path location = location(c);
+                if (location == null) {
+                    // unidentifiable, so never to be trusted as unchanged by another compilation:
+                    digest.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+                    continue;
+                }
+                try {
+                    if (Files.isDirectory(location)) {
+                        try (Stream<Path> files = Files.walk(location)) {
+                            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+                                digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                                update(digest, file);
+                            }
+                        }
+                    } else {
+                        update(digest, location);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to read code source " + location, e);
+                }
+            }
+            processorDigest = Base64.getEncoder().encodeToString(digest.digest());
+        }
+        return processorDigest;
+    }
+
+    private static Path location(Class<?> c) {
+        final CodeSource codeSource = c.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            return null;
+        }
+        try {
+            final Path result = Paths.get(codeSource.getLocation().toURI());
+            return Files.exists(result) ? result : null;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // not a file:
+            return null;
+        }
+    }
+
+    private static void update(MessageDigest digest, Path file) throws IOException {
+        final byte[] buf = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                digest.update(buf, 0, n);
+            }
+        }
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final Filer filer;
+    private final Map<String, String> fingerprints = new TreeMap<>();
+    private final Set<String> seen = new HashSet<>();
+    private boolean changed;
+
+    /**
+     * Create a new {@link FingerprintIndex}, loading any index left by a previous compilation.
+     *
+     * @param filer
+     */
+    FingerprintIndex(Filer filer) {
+        this.filer = Objects.requireNonNull(filer, "filer");
+        try (InputStream in = filer.getResource(StandardLocation.SOURCE_OUTPUT, "", RESOURCE).openInputStream()) {
+            final Properties index = new Properties();
+            index.load(in);
+            index.stringPropertyNames().forEach(k -> fingerprints.put(k, index.getProperty(k)));
+        } catch (IOException | IllegalArgumentException e) {
+            // no usable index; every template is new
+            fingerprints.clear();
+        }
+    }
+
+    /**
+     * Compute the fingerprint of {@code template}.
+     *
+     * @param template
+     * @param snapinType delegate type
+     * @return String
+     */
+    String fingerprint(TypeElement template, DeclaredType snapinType) {
+        final StringBuilder canonical = new StringBuilder(processorDigest()).append('\n');
+        describe(template, canonical);
+        canonical.append(snapinType).append('\n');
+        describe(snapinType.asElement(), canonical);
+
+        final byte[] bytes = canonical.toString().getBytes(StandardCharsets.UTF_8);
+        return Base64.getEncoder().encodeToString(digest().digest(bytes));
+    }
+
+    /**
+     * Learn whether {@code template} had {@code fingerprint} when last generated.
+     *
+     * @param template
+     * @param fingerprint
+     * @return boolean
+     */
+    boolean unchanged(TypeElement template, String fingerprint) {
+        final String name = template.getQualifiedName().toString();
+        seen.add(name);
+        return fingerprint.equals(fingerprints.get(name));
+    }
+
+    /**
+     * Record the fingerprint of a generated template.
+     *
+     * @param template
+     * @param fingerprint
+     */
+    void put(TypeElement template, String fingerprint) {
+        final String name = template.getQualifiedName().toString();
+        seen.add(name);
+        if (!fingerprint.equals(fingerprints.put(name, fingerprint))) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Write the index, if changed, having dropped the entries of templates not encountered, which may have been
+     * deleted or renamed.
+     *
+     * @throws IOException
+     */
+    void store() throws IOException {
+        if (fingerprints.keySet().retainAll(seen)) {
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+        // unlike Properties.store(), write sorted and without a timestamp, so that the index is stable:
+        final FileObject index = filer.createResource(StandardLocation.SOURCE_OUTPUT, "", RESOURCE);
+        try (Writer out = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.ISO_8859_1)) {
+            out.write("# snap-in template fingerprints\n");
+            for (Map.Entry<String, String> e : fingerprints.entrySet()) {
+                out.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+            }
+        }
+        changed = false;
+    }
+
+    private static void describe(Element element, StringBuilder canonical) {
+        canonical.append(element.getKind()).append(' ').append(element.getModifiers()).append(' ').append(element)
+            .append(' ').append(element.asType()).append(' ').append(element.getAnnotationMirrors()).append('\n');
+
+        if (element instanceof TypeElement) {
+            final TypeElement type = (TypeElement) element;
+            canonical.append(type.getSuperclass()).append(' ').append(type.getInterfaces()).append('\n');
+            type.getTypeParameters().forEach(tp -> describe(tp, canonical));
+            type.getEnclosedElements().forEach(e -> describe(e, canonical));
+        } else if (element instanceof ExecutableElement) {
+            final ExecutableElement method = (ExecutableElement) element;
+            canonical.append(method.isVarArgs()).append(' ').append(method.getThrownTypes()).append('\n');
+            method.getTypeParameters().forEach(tp -> describe(tp, canonical));
+            method.getParameters().forEach(p -> describe(p, canonical));
+        } else if (element instanceof TypeParameterElement) {
+            canonical.append(bounds(((TypeParameterElement) element).getBounds())).append('\n');
+        } else if (element instanceof VariableElement) {
+            canonical.append(element.getSimpleName()).append('\n');
+        }
+    }
+
+    private static String bounds(List<? extends TypeMirror> bounds) {
+        return bounds.stream().map(TypeMirror::toString).collect(Collectors.joining("&"));
+    }
+}
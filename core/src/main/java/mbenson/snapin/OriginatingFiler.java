@@ -0,0 +1,136 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+
+/**
+ * {@link Filer} that supplies the originating element registered for each generated type, on behalf of code
+ * writers that create source files by name alone. Each generated snap-in thereby derives from exactly one template
+ * element, as required of an isolating processor by incremental build tools.
+ */
+class OriginatingFiler implements Filer {
+    private final Filer delegate;
+    private final Map<String, Element> originatingElements = new HashMap<>();
+
+    OriginatingFiler(Filer delegate) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+    }
+
+    /**
+     * Register the element from which the type named {@code typeName} is generated.
+     *
+     * @param typeName fully qualified name of a top-level type
+     * @param originatingElement
+     */
+    void originate(String typeName, Element originatingElement) {
+        originatingElements.put(typeName, originatingElement);
+    }
+
+    /**
+     * Decorate {@code processingEnv} to provide this {@link Filer}.
+     *
+     * @param processingEnv
+     * @return {@link ProcessingEnvironment}
+     */
+    ProcessingEnvironment decorate(ProcessingEnvironment processingEnv) {
+        return new ProcessingEnvironment() {
+
+            @Override
+            public Map<String, String> getOptions() {
+                return processingEnv.getOptions();
+            }
+
+            @Override
+            public Messager getMessager() {
+                return processingEnv.getMessager();
+            }
+
+            @Override
+            public Filer getFiler() {
+                return OriginatingFiler.this;
+            }
+
+            @Override
+            public Elements getElementUtils() {
+                return processingEnv.getElementUtils();
+            }
+
+            @Override
+            public Types getTypeUtils() {
+                return processingEnv.getTypeUtils();
+            }
+
+            @Override
+            public SourceVersion getSourceVersion() {
+                return processingEnv.getSourceVersion();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return processingEnv.getLocale();
+            }
+        };
+    }
+
+    @Override
+    public JavaFileObject createSourceFile(CharSequence name, Element... originatingElements)
+        throws IOException {
+        return delegate.createSourceFile(name, originate(name, originatingElements));
+    }
+
+    @Override
+    public JavaFileObject createClassFile(CharSequence name, Element... originatingElements) throws IOException {
+        return delegate.createClassFile(name, originate(name, originatingElements));
+    }
+
+    @Override
+    public FileObject createResource(Location location, CharSequence pkg, CharSequence relativeName,
+        Element... originatingElements) throws IOException {
+        return delegate.createResource(location, pkg, relativeName, originatingElements);
+    }
+
+    @Override
+    public FileObject getResource(Location location, CharSequence pkg, CharSequence relativeName)
+        throws IOException {
+        return delegate.getResource(location, pkg, relativeName);
+    }
+
+    private Element[] originate(CharSequence name, Element[] originatingElements) {
+        if (originatingElements != null && originatingElements.length > 0) {
+            return originatingElements;
+        }
+        // strip any module prefix:
+        final String typeName = name.toString().substring(name.toString().indexOf('/') + 1);
+        final Element originatingElement = this.originatingElements.get(typeName);
+        return originatingElement == null ? originatingElements : new Element[] { originatingElement };
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.meta.CodeModelBuildingException;
+
+/**
+ * Per-round memo of code model types resolved from {@link TypeMirror}s, shared by all snap-ins generated into a
+ * single {@link JCodeModel}. Common types recur across the signatures of large interfaces, and of every snap-in in a
+ * round; each is resolved only once.
+ */
+class ResolutionCache {
+    /**
+     * A resolved type is identified by its rendering together with the types bound to each type variable it
+     * mentions.
+     */
+    private static final class Key {
+        final String type;
+        final List<AbstractJClass> bindings;
+
+        Key(String type, List<AbstractJClass> bindings) {
+            this.type = type;
+            this.bindings = bindings;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return type.equals(other.type) && bindings.equals(other.bindings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, bindings);
+        }
+    }
+
+    /**
+     * Resolution function that may fail with a {@link CodeModelBuildingException}.
+     *
+     * @param <T> input type
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    interface Resolver<T, R> {
+        R resolve(T t) throws CodeModelBuildingException;
+    }
+
+    private final JCodeModel codeModel;
+    private final Elements elements;
+    private final Map<String, AbstractJType> parsed = new HashMap<>();
+    private final Map<String, AbstractJClass> refs = new HashMap<>();
+    private final Map<Key, AbstractJClass> resolved = new HashMap<>();
+
+    ResolutionCache(JCodeModel codeModel, Elements elements) {
+        this.codeModel = Objects.requireNonNull(codeModel, "codeModel");
+        this.elements = Objects.requireNonNull(elements, "elements");
+    }
+
+    /**
+     * Parse a type by name.
+     *
+     * @param name
+     * @param parser
+     * @return {@link AbstractJType}
+     */
+    AbstractJType parse(String name, Function<String, ? extends AbstractJType> parser) {
+        AbstractJType result = parsed.get(name);
+        if (result == null) {
+            result = parser.apply(name);
+            parsed.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reference the raw class of a {@link TypeElement}.
+     *
+     * @param element
+     * @return {@link AbstractJClass}
+     * @throws CodeModelBuildingException on failure, in which case nothing is cached
+     * @see JCodeModel#refWithErrorTypes(TypeElement, Elements)
+     */
+    AbstractJClass ref(TypeElement element) throws CodeModelBuildingException {
+        final String name = element.getQualifiedName().toString();
+        AbstractJClass result = refs.get(name);
+        if (result == null) {
+            result = codeModel.refWithErrorTypes(element, elements);
+            refs.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Resolve a {@link DeclaredType} whose type variables are bound by {@code typeMappings}.
+     *
+     * @param type
+     * @param typeMappings by variable simple name
+     * @param resolver
+     * @return {@link AbstractJClass}
+     * @throws CodeModelBuildingException if thrown by {@code resolver}, in which case nothing is cached
+     */
+    AbstractJClass resolve(DeclaredType type, Map<String, ? extends AbstractJClass> typeMappings,
+        Resolver<DeclaredType, ? extends AbstractJClass> resolver) throws CodeModelBuildingException {
+        final Key key = new Key(type.toString(), bindings(type, typeMappings, Collections.emptyList()));
+        // not computeIfAbsent(); resolution recurses into this cache:
+        AbstractJClass result = resolved.get(key);
+        if (result == null) {
+            result = resolver.resolve(type);
+            resolved.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Collect the types bound to the variables of {@code type}, in order of appearance, visiting exactly those
+     * positions where variable resolution substitutes a mapped type.
+     */
+    private static List<AbstractJClass> bindings(TypeMirror type,
+        Map<String, ? extends AbstractJClass> typeMappings, List<AbstractJClass> result) {
+        switch (type.getKind()) {
+        case TYPEVAR:
+            final List<AbstractJClass> bindings = result.isEmpty() ? new ArrayList<>() : result;
+            bindings.add(typeMappings.get(((TypeVariable) type).asElement().getSimpleName().toString()));
+            return bindings;
+        case WILDCARD:
+            final WildcardType wild = (WildcardType) type;
+            final TypeMirror bound = wild.getExtendsBound() == null ? wild.getSuperBound() : wild.getExtendsBound();
+            return bound == null ? result : bindings(bound, typeMappings, result);
+        case DECLARED:
+            List<AbstractJClass> r = result;
+            for (TypeMirror arg : ((DeclaredType) type).getTypeArguments()) {
+                r = bindings(arg, typeMappings, r);
+            }
+            return r;
+        default:
+            return result;
+        }
+    }
+}
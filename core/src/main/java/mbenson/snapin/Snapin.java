@@ -20,6 +20,7 @@ import java.lang.annotation.Repeatable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Annotation to trigger processing of a {@link SnapinTemplate} and define a snap-in. This is an abstract class defining
@@ -34,9 +35,10 @@ import java.lang.annotation.Target;
  * It will clone any type parameters from the template, and implement the interface specified by {@link SnapinTemplate}
  * type parameter {@code T}, forwarding all calls to a {@code private} variable {@code snapin} of the interface type.
  *
- * For every {@code protected abstract} (template) method defined on the hosting class, a package-access
- * {@code final synchronized} method will be defined prepending an argument of the interface type which will invoke the
- * template method using the first argument as the snap-in. These methods may then be invoked as desired.
+ * For every {@code protected abstract} (template) method defined on the hosting class, a package-access {@code final}
+ * method will be defined prepending an argument of the interface type which will invoke the template method using the
+ * first argument as the snap-in. These methods may then be invoked as desired. How these methods and the forwarding
+ * interface methods guard the snap-in is determined by {@link #concurrency()}.
  */
 @Retention(RetentionPolicy.SOURCE)
 @Target(ElementType.TYPE)
@@ -49,6 +51,232 @@ public @interface Snapin {
      */
     String value();
 
+    /**
+     * Defines the manner in which the generated snap-in guards its delegate.
+     *
+     * @return {@link Concurrency}
+     */
+    Concurrency concurrency() default Concurrency.SYNCHRONIZED;
+
+    /**
+     * Whether to generate a nested {@code Bound} class, an immutable view of the snap-in whose interface methods are
+     * forwarded without guard to a {@code final} delegate, along with a {@code bind(T)} method to create it. Its
+     * template entry points invoke the snap-in's wrapper methods; combine with {@link Concurrency#THREAD_CONFINED} for
+     * concurrent views that take no lock.
+     *
+     * @return boolean
+     */
+    boolean bind() default false;
+
+    /**
+     * Whether to generate a nested {@code Session} class, along with an {@code open(T)} method to create it. A session
+     * installs its delegate (and acquires any lock) once, and exposes the template methods directly until it is
+     * {@link AutoCloseable#close() closed}. Not available with {@link Concurrency#SYNCHRONIZED}.
+     *
+     * @return boolean
+     */
+    boolean session() default false;
+
+    /**
+     * Whether the generated snap-in permits re-entry: rather than throwing an {@link IllegalStateException} when a
+     * delegate is already installed, a wrapper method (or session) saves the current delegate and restores it upon
+     * completion, such that a template method may call another wrapper method of the same snap-in with a different
+     * delegate.
+     *
+     * @return boolean
+     */
+    boolean reentrant() default false;
+
+    /**
+     * Whether to generate a companion {@code public final} class, named by appending {@code Pool} to {@link #value()},
+     * which distributes calls among a configurable number of snap-in instances striped by thread. For each template
+     * method, the pool declares a wrapper method of the same signature which calls the wrapper method of the current
+     * thread's instance. Not available with {@link Concurrency#NONE}.
+     *
+     * @return boolean
+     */
+    boolean pool() default false;
+
+    /**
+     * Whether to generate, for each template method {@code m}, a batch wrapper method {@code mAll} accepting an
+     * {@link Iterable} of delegates in place of a single delegate. The snap-in is guarded once for the entire batch,
+     * and a {@link java.util.List} of results is returned from non-{@code void} methods. If {@link #pool()} is also
+     * specified, the pool additionally declares an {@code mAllParallel} method to process chunks of a
+     * {@link java.util.List} of delegates in parallel, each using the pooled instance of its worker thread.
+     *
+     * @return boolean
+     */
+    boolean batch() default false;
+
+    /**
+     * Whether to generate, for each wrapper method, an overload accepting a {@link java.util.function.Supplier} of the
+     * delegate in place of the delegate itself. The supplier is called only upon the first call of an interface method
+     * by the template method, and at most once per wrapper call; a template method that never calls the interface
+     * thus never obtains the delegate. The delegate type must not itself be a {@link java.util.function.Supplier}.
+     *
+     * @return boolean
+     */
+    boolean lazy() default false;
+
+    /**
+     * Whether the generated snap-in keeps invocation metrics: a call count and total latency, each a
+     * {@link java.util.concurrent.atomic.LongAdder} so as not to contend, for each wrapper, batch and interface
+     * method (calls of bound views and sessions are attributed to the snap-in methods they correspond to). The
+     * statistics are exposed by the generated methods {@code snapinStats()}, {@code resetSnapinStats()} and
+     * {@code snapinStatsMXBean()}, the last providing a view for registration with JMX. A
+     * {@link Concurrency#SYNCHRONIZED} snap-in does not count time spent awaiting its monitor; each instance of a
+     * pool keeps its own metrics.
+     *
+     * @return boolean
+     */
+    boolean metrics() default false;
+
+    /**
+     * Whether the generated snap-in measures contention for its guard, which must be a monitor or lock per
+     * {@link #concurrency()}: for each wrapper and batch method, the time sampled calls waited to enter and held the
+     * guard, and the greatest number of calls waiting at once to enter it. Apart from any
+     * {@link #contentionEvents() events} recorded, the measurement allocates nothing; the statistics are exposed by the
+     * generated method {@code snapinContention()}. As a wrapper method of a
+     * {@link Concurrency#SYNCHRONIZED} snap-in must then enter the monitor within its body, it is not itself
+     * {@code synchronized}.
+     *
+     * @return boolean
+     */
+    boolean contention() default false;
+
+    /**
+     * When measuring {@link #contention()}, sample on average one in this many calls for timing. Every call is counted
+     * toward the number of waiters.
+     *
+     * @return int
+     */
+    int contentionSampling() default 1;
+
+    /**
+     * When measuring {@link #contention()}, additionally generate a JDK Flight Recorder event, committed for each
+     * sampled call while recording. Requires {@code jdk.jfr} at compile and run time.
+     *
+     * @return boolean
+     */
+    boolean contentionEvents() default false;
+
+    /**
+     * Whether to generate a nested {@code Interceptor} interface, an instance of which may be installed via the
+     * generated method {@code snapinInterceptor(Interceptor)} to be notified before and after each call of a wrapper,
+     * batch or interface method (calls of bound views and sessions are reported as for {@link #metrics()}), and of
+     * any failure. With no interceptor installed, a call costs a single {@code volatile} read and a null check, which
+     * the JIT compiler can predict; a snap-in not requesting interception includes no hook at all.
+     *
+     * @return boolean
+     */
+    boolean intercept() default false;
+
+    /**
+     * Whether to generate a nested {@code FanOut} class, a composite of the delegate type forwarding each interface
+     * call to several delegates in turn, along with {@code fanOut(T...)} and {@code fanOutParallel(Executor, T...)}
+     * methods to create it. A {@code FanOut} may be passed to any wrapper method as its delegate. Calls of the first
+     * few delegates are unrolled, such that the JIT compiler profiles each at a call site of its own rather than at a
+     * single megamorphic site. The results of non-{@code void} methods are reconciled per {@link #fanOutResult()}; if
+     * created by {@code fanOutParallel(Executor, T...)}, {@code void} methods call the delegates other than the first
+     * in parallel on the given {@link java.util.concurrent.Executor}, awaiting all before returning. The delegate type
+     * must be an interface or an extensible class.
+     *
+     * @return boolean
+     */
+    boolean fanOut() default false;
+
+    /**
+     * The result returned by a non-{@code void} method of a {@link #fanOut() FanOut}.
+     *
+     * @return {@link FanOutResult}
+     */
+    FanOutResult fanOutResult() default FanOutResult.FIRST;
+
+    /**
+     * The capacity of a write-behind buffer in which the generated snap-in records calls of the {@code void} methods
+     * of the delegate type, other than generic methods and those declaring checked exceptions, rather than
+     * forwarding each as it is made; {@code 0} to forward every call directly. The buffer is a nested {@code Calls}
+     * class holding the arguments of each recorded method in preallocated arrays (of primitive type where
+     * applicable), such that recording a call allocates nothing. Recorded calls are flushed to the delegate, in
+     * order, when the buffer fills, before any other interface method is forwarded, and before the delegate is
+     * uninstalled or replaced: thus as a wrapper method returns, or as a session closes. Calls still buffered when
+     * the template method throws are discarded, so that the delegate sees no calls after a failure and a flush
+     * cannot mask the original exception. A delegate implementing the generated nested {@code BatchAware} interface
+     * receives each flush as a single batch; otherwise the calls are replayed one by one. Arguments are recorded by
+     * reference, so should not be modified once passed. A {@link Concurrency#THREAD_CONFINED} snap-in keeps a buffer
+     * per thread.
+     *
+     * @return int
+     */
+    int writeBehind() default 0;
+
+    /**
+     * Whether to generate, for each wrapper method {@code m}, an asynchronous variant {@code mAsync} accepting an
+     * additional trailing {@link java.util.concurrent.Executor} (and any variable arguments as an array). It returns at
+     * once a {@link java.util.concurrent.CompletableFuture} of the template method's result ({@link Void} for a
+     * {@code void} method), having submitted to the executor a task calling the wrapper method. The delegate is thus
+     * installed only within the executing thread and for the duration of the task, such that concurrent tasks on the
+     * same snap-in proceed independently; any delegate already installed in that thread, as where a direct executor
+     * is used within a template method, is suspended until the task completes. Anything thrown by the template
+     * method, checked exceptions included, completes the future exceptionally. Requires
+     * {@link Concurrency#THREAD_CONFINED}: a monitor or lock would serialize the tasks, and {@link Concurrency#NONE}
+     * cannot keep their delegates apart.
+     *
+     * @return boolean
+     */
+    boolean async() default false;
+
+    /**
+     * Concurrency strategies available to generated snap-ins.
+     */
+    public enum Concurrency {
+        /**
+         * Wrapper and interface methods are {@code synchronized} on the snap-in instance. Note that a virtual thread
+         * blocking while it holds (or awaits) a monitor pins its carrier thread; where snap-ins are used from virtual
+         * threads, prefer {@link #REENTRANT_LOCK} or {@link #THREAD_CONFINED}.
+         */
+        SYNCHRONIZED,
+
+        /**
+         * Wrapper methods are guarded by a {@link java.util.concurrent.locks.ReentrantLock}; interface methods are
+         * unguarded, being intended for use only by template methods.
+         */
+        REENTRANT_LOCK,
+
+        /**
+         * The delegate is held in a {@link ThreadLocal}, such that a single snap-in instance may be used concurrently
+         * without locking.
+         */
+        THREAD_CONFINED,
+
+        /**
+         * No guard is generated; the caller is responsible for confining the snap-in to a single thread.
+         */
+        NONE;
+    }
+
+    /**
+     * Policies by which a {@link Snapin#fanOut() FanOut} reconciles the results of its delegates. Every delegate is
+     * called, unless a delegate throws.
+     */
+    public enum FanOutResult {
+        /**
+         * Return the result of the first delegate.
+         */
+        FIRST,
+
+        /**
+         * Return the result of the last delegate.
+         */
+        LAST,
+
+        /**
+         * Return the result common to all delegates, throwing an {@link IllegalStateException} if any delegate
+         * returns a different result.
+         */
+        ALL;
+    }
+
     /**
      * Documentation.
      */
@@ -63,6 +291,92 @@ public @interface Snapin {
         String[] value();
     }
 
+    /**
+     * Requests primitive specializations of the annotated type variable of the template class or of a template method.
+     * For each specified primitive type, every template method having a parameter of the variable's type is accompanied
+     * by an overload replacing the variable (also as the return type) with the primitive type, as is its wrapper method
+     * and any other entry point. The specialized template method is not {@code abstract}: by default it calls the
+     * generic template method with its arguments boxed, and should be overridden to avoid doing so. The boxed type of
+     * each primitive type must lie within the bounds of the type variable. A type variable of the template class must
+     * moreover be bounded by the boxed type itself (e.g. {@code T extends Integer}), thereby fixing the variable to
+     * that type; otherwise the variable could be bound to another type, yet the boxed argument of a specialization
+     * would be passed as its value. Specialize type variables of template methods to serve several primitive types.
+     * Where a method has several specialized type variables, an overload is generated for each combination of their
+     * primitive types.
+     */
+    @Target(ElementType.TYPE_PARAMETER)
+    public @interface Specialize {
+
+        /**
+         * The primitive types with which to specialize.
+         *
+         * @return Class[]
+         */
+        Class<?>[] value();
+    }
+
+    /**
+     * Marks a template method as a pure function of its arguments and the identity of the delegate, such that its
+     * wrapper method may return a result remembered from an earlier call rather than invoke the template method. The
+     * results of each wrapper method are kept in a bounded cache of their own, and a remembered result is returned
+     * without entering the snap-in's guard. The cache follows the {@link Concurrency} of the snap-in: under
+     * {@link Concurrency#SYNCHRONIZED} or {@link Concurrency#REENTRANT_LOCK} each lookup and each store holds the
+     * cache's own monitor, shared by all callers of the method; a {@link Concurrency#THREAD_CONFINED} snap-in keeps
+     * caches per thread, taking no monitor; and under {@link Concurrency#NONE} the caches are unguarded. An
+     * {@link Eviction#LFU} store into a full cache examines every remembered result. Arguments are compared by
+     * {@link java.util.Arrays#deepEquals(Object[], Object[]) value}; arrays, variable arguments included, are copied
+     * deeply for the purpose, but other arguments should not be modified once passed. A call that throws is not
+     * remembered. Calls of bound views and pools are memoized, as these call the wrapper methods; calls of batches
+     * and sessions are not. The template method must not be {@code void}.
+     */
+    @Target(ElementType.METHOD)
+    public @interface Memoize {
+
+        /**
+         * The greatest number of results to remember.
+         *
+         * @return int
+         */
+        int size() default 256;
+
+        /**
+         * The result to forget when a new result would exceed {@link #size()}.
+         *
+         * @return {@link Eviction}
+         */
+        Eviction eviction() default Eviction.LRU;
+
+        /**
+         * The time, in {@link #unit()}, after which a remembered result is forgotten; {@code 0} to keep results until
+         * evicted.
+         *
+         * @return long
+         */
+        long expireAfter() default 0L;
+
+        /**
+         * The unit of {@link #expireAfter()}.
+         *
+         * @return {@link TimeUnit}
+         */
+        TimeUnit unit() default TimeUnit.SECONDS;
+
+        /**
+         * Eviction policies.
+         */
+        public enum Eviction {
+            /**
+             * Forget the least recently used result.
+             */
+            LRU,
+
+            /**
+             * Forget the least frequently used result, the oldest among equals.
+             */
+            LFU;
+        }
+    }
+
     /**
      * {@link DocThrow} container annotation.
      */
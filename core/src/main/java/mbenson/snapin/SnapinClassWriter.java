@@ -0,0 +1,444 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes the class file of a runtime snap-in: a {@code final} subclass of a template, implementing
+ * {@link Snapins.Host}, that forwards each of a number of interface methods to a delegate held in a field, as does a
+ * {@link Snapin.Concurrency#SYNCHRONIZED} snap-in generated by {@link SnapinProcessor}. The class file is written
+ * directly, as its shape is fixed and small enough not to warrant a bytecode library.
+ */
+final class SnapinClassWriter {
+    private static final int VERSION = 52;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNCHRONIZED = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DUP = 0x59;
+    private static final int RETURN = 0xb1;
+    private static final int ARETURN = 0xb0;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int NEW = 0xbb;
+    private static final int ATHROW = 0xbf;
+    private static final int CHECKCAST = 0xc0;
+    private static final int WIDE = 0xc4;
+    private static final int IFNONNULL = 0xc7;
+
+    private static final int ITEM_INTEGER = 1;
+    private static final int ITEM_FLOAT = 2;
+    private static final int ITEM_DOUBLE = 3;
+    private static final int ITEM_LONG = 4;
+    private static final int ITEM_OBJECT = 7;
+    private static final int FULL_FRAME = 255;
+
+    private static final String DELEGATE_FIELD_NAME = "delegate";
+    private static final String NO_DELEGATE_NAME = "snapin$noDelegate";
+    private static final String OBJECT = "java/lang/Object";
+
+    private final String name;
+    private final String template;
+    private final String delegate;
+    private final String delegateDescriptor;
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount;
+
+    /**
+     * Create a new {@link SnapinClassWriter} instance.
+     *
+     * @param name binary name of the class to write, in the package of {@code template}
+     * @param template superclass
+     * @param delegateType interface
+     */
+    SnapinClassWriter(String name, Class<?> template, Class<?> delegateType) {
+        this.name = internalName(name);
+        this.template = internalName(template.getName());
+        this.delegate = internalName(delegateType.getName());
+        this.delegateDescriptor = descriptor(delegateType);
+    }
+
+    /**
+     * Write the class, forwarding {@code forwarded}.
+     *
+     * @param forwarded methods of the delegate type
+     * @return class file bytes
+     */
+    byte[] write(Collection<Method> forwarded) {
+        try {
+            constructor();
+            accessors();
+            for (Method method : forwarded) {
+                forward(method);
+            }
+            noDelegate();
+
+            final int thisClass = classRef(name);
+            final int superClass = classRef(template);
+            final int host = classRef(internalName(Snapins.Host.class.getName()));
+            final int fieldName = utf8(DELEGATE_FIELD_NAME);
+            final int fieldDescriptor = utf8(delegateDescriptor);
+
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(result);
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolIndices.size() + 1);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(host);
+
+            out.writeShort(1);
+            out.writeShort(ACC_PRIVATE);
+            out.writeShort(fieldName);
+            out.writeShort(fieldDescriptor);
+            out.writeShort(0);
+
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0);
+            return result.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void constructor() throws IOException {
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(code);
+        out.writeByte(ALOAD_0);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(methodRef(template, "<init>", "()V"));
+        out.writeByte(RETURN);
+        method(ACC_PUBLIC, "<init>", "()V", 1, 1, code, null);
+    }
+
+    /**
+     * Implement {@link Snapins.Host}.
+     *
+     * @throws IOException
+     */
+    private void accessors() throws IOException {
+        final int field = fieldRef(name, DELEGATE_FIELD_NAME, delegateDescriptor);
+
+        final ByteArrayOutputStream get = new ByteArrayOutputStream();
+        final DataOutputStream getOut = new DataOutputStream(get);
+        getOut.writeByte(ALOAD_0);
+        getOut.writeByte(GETFIELD);
+        getOut.writeShort(field);
+        getOut.writeByte(ARETURN);
+        method(ACC_PUBLIC | ACC_FINAL, "snapinDelegate", "()L" + OBJECT + ";", 1, 1, get, null);
+
+        final ByteArrayOutputStream set = new ByteArrayOutputStream();
+        final DataOutputStream setOut = new DataOutputStream(set);
+        setOut.writeByte(ALOAD_0);
+        setOut.writeByte(ALOAD_1);
+        setOut.writeByte(CHECKCAST);
+        setOut.writeShort(classRef(delegate));
+        setOut.writeByte(PUTFIELD);
+        setOut.writeShort(field);
+        setOut.writeByte(RETURN);
+        method(ACC_PUBLIC | ACC_FINAL, "snapinDelegate", "(L" + OBJECT + ";)V", 2, 2, set, null);
+    }
+
+    /**
+     * Forward {@code method}, reading the delegate once and calling the cold {@code noDelegate} method if it is
+     * {@code null}.
+     *
+     * @param method
+     * @throws IOException
+     */
+    private void forward(Method method) throws IOException {
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final String descriptor = descriptor(method);
+
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(code);
+        out.writeByte(ALOAD_0);
+        out.writeByte(GETFIELD);
+        out.writeShort(fieldRef(name, DELEGATE_FIELD_NAME, delegateDescriptor));
+        out.writeByte(DUP);
+        out.writeByte(IFNONNULL);
+        out.writeShort(6);
+        out.writeByte(INVOKESTATIC);
+        out.writeShort(methodRef(name, NO_DELEGATE_NAME, "()V"));
+        final int target = code.size();
+
+        int slot = 1;
+        for (Class<?> parameterType : parameterTypes) {
+            load(out, parameterType, slot);
+            slot += size(parameterType);
+        }
+        out.writeByte(INVOKEINTERFACE);
+        out.writeShort(interfaceMethodRef(delegate, method.getName(), descriptor));
+        out.writeByte(slot);
+        out.writeByte(0);
+        out.writeByte(returnOpcode(method.getReturnType()));
+
+        // the delegate remains on the stack at the branch target:
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        final DataOutputStream frame = new DataOutputStream(frames);
+        frame.writeShort(1);
+        frame.writeByte(FULL_FRAME);
+        frame.writeShort(target);
+        frame.writeShort(parameterTypes.length + 1);
+        frame.writeByte(ITEM_OBJECT);
+        frame.writeShort(classRef(name));
+        for (Class<?> parameterType : parameterTypes) {
+            verificationType(frame, parameterType);
+        }
+        frame.writeShort(1);
+        frame.writeByte(ITEM_OBJECT);
+        frame.writeShort(classRef(delegate));
+
+        final int maxStack = Math.max(2, slot);
+        method(ACC_PUBLIC | ACC_FINAL | ACC_SYNCHRONIZED, method.getName(), descriptor, maxStack, slot, code,
+            frames);
+    }
+
+    private void noDelegate() throws IOException {
+        final String exception = internalName(IllegalStateException.class.getName());
+        final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(code);
+        out.writeByte(NEW);
+        out.writeShort(classRef(exception));
+        out.writeByte(DUP);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(methodRef(exception, "<init>", "()V"));
+        out.writeByte(ATHROW);
+        method(ACC_PRIVATE | ACC_STATIC, NO_DELEGATE_NAME, "()V", 2, 0, code, null);
+    }
+
+    private void method(int access, String methodName, String descriptor, int maxStack, int maxLocals,
+        ByteArrayOutputStream code, ByteArrayOutputStream stackMapTable) throws IOException {
+        final int nameIndex = utf8(methodName);
+        final int descriptorIndex = utf8(descriptor);
+        final int codeIndex = utf8("Code");
+        final int stackMapTableIndex = stackMapTable == null ? 0 : utf8("StackMapTable");
+
+        methods.writeShort(access);
+        methods.writeShort(nameIndex);
+        methods.writeShort(descriptorIndex);
+        methods.writeShort(1);
+
+        methods.writeShort(codeIndex);
+        final int attributesLength = stackMapTable == null ? 0 : 6 + stackMapTable.size();
+        methods.writeInt(12 + code.size() + attributesLength);
+        methods.writeShort(maxStack);
+        methods.writeShort(maxLocals);
+        methods.writeInt(code.size());
+        code.writeTo(methods);
+        methods.writeShort(0);
+        if (stackMapTable == null) {
+            methods.writeShort(0);
+        } else {
+            methods.writeShort(1);
+            methods.writeShort(stackMapTableIndex);
+            methods.writeInt(stackMapTable.size());
+            stackMapTable.writeTo(methods);
+        }
+        methodCount++;
+    }
+
+    private void load(DataOutputStream out, Class<?> type, int slot) throws IOException {
+        final int opcode;
+        if (type == long.class) {
+            opcode = 0x16;
+        } else if (type == float.class) {
+            opcode = 0x17;
+        } else if (type == double.class) {
+            opcode = 0x18;
+        } else if (type.isPrimitive()) {
+            opcode = 0x15;
+        } else {
+            opcode = 0x19;
+        }
+        if (slot > 0xff) {
+            out.writeByte(WIDE);
+            out.writeByte(opcode);
+            out.writeShort(slot);
+        } else {
+            out.writeByte(opcode);
+            out.writeByte(slot);
+        }
+    }
+
+    private void verificationType(DataOutputStream out, Class<?> type) throws IOException {
+        if (type == long.class) {
+            out.writeByte(ITEM_LONG);
+        } else if (type == float.class) {
+            out.writeByte(ITEM_FLOAT);
+        } else if (type == double.class) {
+            out.writeByte(ITEM_DOUBLE);
+        } else if (type.isPrimitive()) {
+            out.writeByte(ITEM_INTEGER);
+        } else {
+            out.writeByte(ITEM_OBJECT);
+            out.writeShort(classRef(type.isArray() ? descriptor(type) : internalName(type.getName())));
+        }
+    }
+
+    private static int returnOpcode(Class<?> type) {
+        if (type == void.class) {
+            return RETURN;
+        }
+        if (type == long.class) {
+            return 0xad;
+        }
+        if (type == float.class) {
+            return 0xae;
+        }
+        if (type == double.class) {
+            return 0xaf;
+        }
+        return type.isPrimitive() ? 0xac : ARETURN;
+    }
+
+    private static int size(Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    private int utf8(String value) throws IOException {
+        final String key = CONSTANT_UTF8 + ":" + value;
+        Integer result = poolIndices.get(key);
+        if (result == null) {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+            result = register(key);
+        }
+        return result.intValue();
+    }
+
+    private int classRef(String internalName) throws IOException {
+        final String key = CONSTANT_CLASS + ":" + internalName;
+        Integer result = poolIndices.get(key);
+        if (result == null) {
+            final int nameIndex = utf8(internalName);
+            pool.writeByte(CONSTANT_CLASS);
+            pool.writeShort(nameIndex);
+            result = register(key);
+        }
+        return result.intValue();
+    }
+
+    private int nameAndType(String memberName, String descriptor) throws IOException {
+        final String key = CONSTANT_NAME_AND_TYPE + ":" + memberName + ":" + descriptor;
+        Integer result = poolIndices.get(key);
+        if (result == null) {
+            final int nameIndex = utf8(memberName);
+            final int descriptorIndex = utf8(descriptor);
+            pool.writeByte(CONSTANT_NAME_AND_TYPE);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+            result = register(key);
+        }
+        return result.intValue();
+    }
+
+    private int fieldRef(String owner, String memberName, String descriptor) throws IOException {
+        return memberRef(CONSTANT_FIELDREF, owner, memberName, descriptor);
+    }
+
+    private int methodRef(String owner, String memberName, String descriptor) throws IOException {
+        return memberRef(CONSTANT_METHODREF, owner, memberName, descriptor);
+    }
+
+    private int interfaceMethodRef(String owner, String memberName, String descriptor) throws IOException {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, memberName, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String memberName, String descriptor) throws IOException {
+        final String key = tag + ":" + owner + ":" + memberName + ":" + descriptor;
+        Integer result = poolIndices.get(key);
+        if (result == null) {
+            final int classIndex = classRef(owner);
+            final int nameAndTypeIndex = nameAndType(memberName, descriptor);
+            pool.writeByte(tag);
+            pool.writeShort(classIndex);
+            pool.writeShort(nameAndTypeIndex);
+            result = register(key);
+        }
+        return result.intValue();
+    }
+
+    private Integer register(String key) {
+        final Integer result = Integer.valueOf(poolIndices.size() + 1);
+        poolIndices.put(key, result);
+        return result;
+    }
+
+    private static String internalName(String binaryName) {
+        return binaryName.replace('.', '/');
+    }
+
+    private static String descriptor(Method method) {
+        return Stream.of(method.getParameterTypes()).map(SnapinClassWriter::descriptor)
+            .collect(Collectors.joining("", "(", ")")) + descriptor(method.getReturnType());
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return internalName(type.getName());
+        }
+        if (type.isPrimitive()) {
+            if (type == void.class) {
+                return "V";
+            }
+            if (type == boolean.class) {
+                return "Z";
+            }
+            if (type == long.class) {
+                return "J";
+            }
+            return String.valueOf(Character.toUpperCase(type.getName().charAt(0)));
+        }
+        return "L" + internalName(type.getName()) + ";";
+    }
+}
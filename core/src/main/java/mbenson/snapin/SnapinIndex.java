@@ -0,0 +1,94 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Index of the templates of a compilation, written to the class output as the resource
+ * {@value SnapinRegistry#RESOURCE} for lookup at runtime by {@link SnapinRegistry}. Each line names, by binary name,
+ * a template, its generated snap-in and its delegate type.
+ */
+class SnapinIndex {
+    /**
+     * Processor option by which the index is enabled.
+     */
+    static final String OPTION = "snapin.index";
+
+    private final Filer filer;
+    private final Elements elements;
+    private final Map<String, String> lines = new TreeMap<>();
+    private final Map<String, Element> originatingElements = new LinkedHashMap<>();
+
+    /**
+     * Create a new {@link SnapinIndex}.
+     *
+     * @param filer
+     * @param elements
+     */
+    SnapinIndex(Filer filer, Elements elements) {
+        this.filer = Objects.requireNonNull(filer, "filer");
+        this.elements = Objects.requireNonNull(elements, "elements");
+    }
+
+    /**
+     * Record a template.
+     *
+     * @param template
+     * @param snapin qualified name of the generated snap-in
+     * @param delegateType
+     */
+    void put(TypeElement template, String snapin, TypeElement delegateType) {
+        final String name = elements.getBinaryName(template).toString();
+        lines.put(name, String.join(" ", name, snapin, elements.getBinaryName(delegateType)));
+        originatingElements.put(name, template);
+    }
+
+    /**
+     * Write the index, if any template was recorded.
+     *
+     * @throws IOException
+     */
+    void store() throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        final FileObject index = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SnapinRegistry.RESOURCE,
+            originatingElements.values().toArray(new Element[originatingElements.size()]));
+        try (Writer out = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+            out.write("# snap-in template, snap-in, delegate type\n");
+            for (String line : lines.values()) {
+                out.append(line).append('\n');
+            }
+        }
+        lines.clear();
+        originatingElements.clear();
+    }
+}
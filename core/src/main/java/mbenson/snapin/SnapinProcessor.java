@@ -21,23 +21,51 @@ import static com.helger.jcodemodel.JExpr._this;
 import static com.helger.jcodemodel.JOp.eq;
 import static com.helger.jcodemodel.JOp.ne;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.AnnotatedConstruct;
 import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
@@ -45,7 +73,9 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.TypeVariable;
@@ -57,17 +87,30 @@ import org.apache.commons.lang3.Validate;
 
 import com.helger.jcodemodel.AbstractJClass;
 import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.JAnonymousClass;
+import com.helger.jcodemodel.JArray;
 import com.helger.jcodemodel.IJExpression;
 import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCatchBlock;
 import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JCommentPart;
+import com.helger.jcodemodel.JConditional;
 import com.helger.jcodemodel.JDefinedClass;
 import com.helger.jcodemodel.JDocComment;
 import com.helger.jcodemodel.JExpr;
 import com.helger.jcodemodel.JFieldRef;
 import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JForEach;
+import com.helger.jcodemodel.JForLoop;
 import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JLambda;
+import com.helger.jcodemodel.JLambdaMethodRef;
+import com.helger.jcodemodel.JLambdaParam;
 import com.helger.jcodemodel.JMethod;
 import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JOp;
+import com.helger.jcodemodel.JPrimitiveType;
+import com.helger.jcodemodel.JSwitch;
 import com.helger.jcodemodel.JTryBlock;
 import com.helger.jcodemodel.JTypeVar;
 import com.helger.jcodemodel.JVar;
@@ -76,15 +119,33 @@ import com.helger.jcodemodel.meta.ErrorTypeFound;
 
 import mbenson.annotationprocessing.CodeModelProcessorBase;
 import mbenson.annotationprocessing.util.LangModel;
+import mbenson.snapin.Snapin.Concurrency;
 import mbenson.snapin.Snapin.Doc;
 import mbenson.snapin.Snapin.DocThrow;
+import mbenson.snapin.Snapin.FanOutResult;
+import mbenson.snapin.Snapin.Memoize;
+import mbenson.snapin.Snapin.Specialize;
 
 /**
- * {@link Snapin} annotation processor.
+ * {@link Snapin} annotation processor. With the processor option {@code -Asnapin.fingerprints=true}, templates are
+ * fingerprinted into an index under the generated sources output; a template whose fingerprint is unchanged, and
+ * whose generated types are already part of the compilation, is not regenerated, leaving the existing sources
+ * untouched. This suits builds that recompile all sources, e.g. Maven; Gradle's incremental processing makes it
+ * unnecessary. With {@code -Asnapin.streaming=true}, each template is generated into its own code model, written
+ * out and released as soon as it is complete, rather than into a single code model written at the end of the round;
+ * peak memory is then bounded by the largest template rather than by the number of templates. With
+ * {@code -Asnapin.index=true}, an index of all templates is written to the class output for lookup by
+ * {@link SnapinRegistry}; as the index derives from every template, the processor then declares itself aggregating,
+ * rather than isolating, to Gradle's incremental compilation.
  */
 @SupportedAnnotationTypes("mbenson.snapin.Snapin")
 @SupportedSourceVersion(SourceVersion.RELEASE_5)
+@SupportedOptions({ FingerprintIndex.OPTION, SnapinProcessor.STREAMING_OPTION, SnapinIndex.OPTION })
 public class SnapinProcessor extends CodeModelProcessorBase {
+    static final String STREAMING_OPTION = "snapin.streaming";
+
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
 
     private static String doc(AnnotatedConstruct host) {
         final String[] value =
@@ -93,6 +154,10 @@ public class SnapinProcessor extends CodeModelProcessorBase {
     }
 
     private TypeElement templateInterface;
+    private OriginatingFiler filer;
+    private FingerprintIndex fingerprints;
+    private SnapinIndex index;
+    private boolean streaming;
 
     /**
      * Initialize the processor.
@@ -101,8 +166,29 @@ public class SnapinProcessor extends CodeModelProcessorBase {
      */
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
-        super.init(processingEnv);
+        filer = new OriginatingFiler(processingEnv.getFiler());
+        super.init(filer.decorate(processingEnv));
         templateInterface = elements().getTypeElement(SnapinTemplate.class.getCanonicalName());
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(FingerprintIndex.OPTION))) {
+            fingerprints = new FingerprintIndex(filer);
+        }
+        streaming = Boolean.parseBoolean(processingEnv.getOptions().get(STREAMING_OPTION));
+        if (Boolean.parseBoolean(processingEnv.getOptions().get(SnapinIndex.OPTION))) {
+            index = new SnapinIndex(filer, elements());
+        }
+    }
+
+    /**
+     * Get the supported options, including that by which Gradle learns the incremental category of the processor,
+     * which depends on whether {@link SnapinIndex#OPTION} was specified.
+     *
+     * @return {@link Set} of String
+     */
+    @Override
+    public Set<String> getSupportedOptions() {
+        final Set<String> result = new LinkedHashSet<>(super.getSupportedOptions());
+        result.add(index == null ? GRADLE_ISOLATING : GRADLE_AGGREGATING);
+        return result;
     }
 
     /**
@@ -112,36 +198,211 @@ public class SnapinProcessor extends CodeModelProcessorBase {
     protected boolean processTo(JCodeModel codeModel, Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
         throws Throwable {
         if (annotations != null) {
-            roundEnv.getElementsAnnotatedWith(Snapin.class).stream().filter(e -> e.getKind() == ElementKind.CLASS)
-                .map(e -> new Worker((TypeElement) e, codeModel)).forEach(Worker::process);
+            final List<TypeElement> annotated =
+                roundEnv.getElementsAnnotatedWith(Snapin.class).stream().filter(e -> e.getKind() == ElementKind.CLASS)
+                    .map(TypeElement.class::cast).collect(Collectors.toList());
+            if (index != null) {
+                // index unchanged templates too:
+                annotated.forEach(this::index);
+            }
+            final Stream<TypeElement> templates = annotated.stream().filter(e -> !unchanged(e));
+
+            if (streaming) {
+                templates.forEach(this::stream);
+            } else {
+                final ResolutionCache resolutions = new ResolutionCache(codeModel, elements());
+                templates.map(e -> new Worker(e, codeModel, resolutions)).forEach(Worker::process);
+            }
+        }
+        if (roundEnv.processingOver() && !roundEnv.errorRaised()) {
+            if (fingerprints != null) {
+                fingerprints.store();
+            }
+            if (index != null) {
+                index.store();
+            }
         }
         return true;
     }
 
+    /**
+     * Generate {@code template} into a code model of its own, and write it out immediately. Templates are processed
+     * serially, the javac model being unsafe for concurrent use.
+     *
+     * @param template
+     * @throws UncheckedIOException on failure to write
+     */
+    private void stream(TypeElement template) {
+        final JCodeModel codeModel = new JCodeModel();
+        new Worker(template, codeModel, new ResolutionCache(codeModel, elements())).process();
+        try {
+            codeModel.build(new FilerCodeWriter(filer()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Learn whether {@code template} can be skipped, being unchanged since its generated types were last written.
+     * Otherwise record its fingerprint, to be stored once processing completes without error.
+     *
+     * @param template
+     * @return boolean
+     */
+    private boolean unchanged(TypeElement template) {
+        if (fingerprints == null) {
+            return false;
+        }
+        final TypeMirror snapinType = getSnapinType(template);
+        final Snapin annotation = template.getAnnotation(Snapin.class);
+        if (snapinType == null || snapinType.getKind() != TypeKind.DECLARED || annotation == null) {
+            // let the Worker report the problem
+            return false;
+        }
+        final String fingerprint = fingerprints.fingerprint(template, (DeclaredType) snapinType);
+        if (fingerprints.unchanged(template, fingerprint)) {
+            final String snapin = snapinName(template, annotation);
+
+            if (elements().getTypeElement(snapin) != null && (!annotation.pool()
+                || elements().getTypeElement(snapin + Worker.POOL_CLASS_SUFFIX) != null)) {
+                return true;
+            }
+        }
+        fingerprints.put(template, fingerprint);
+        return false;
+    }
+
+    /**
+     * Record {@code template} in the {@link SnapinIndex}, if valid.
+     *
+     * @param template
+     */
+    private void index(TypeElement template) {
+        final TypeMirror snapinType = getSnapinType(template);
+        final Snapin annotation = template.getAnnotation(Snapin.class);
+        if (snapinType != null && snapinType.getKind() == TypeKind.DECLARED && annotation != null) {
+            // otherwise the Worker reports the problem
+            index.put(template, snapinName(template, annotation),
+                (TypeElement) ((DeclaredType) snapinType).asElement());
+        }
+    }
+
+    private String snapinName(TypeElement template, Snapin annotation) {
+        final String pkg = elements().getPackageOf(template).getQualifiedName().toString();
+        return pkg.isEmpty() ? annotation.value() : pkg + '.' + annotation.value();
+    }
+
     private class Worker extends CodeModelProcess<TypeElement> {
 
         private static final String TYPE_PARAMETER_FORMAT = "<%s>";
         private static final String DELEGATE_FIELD_NAME = "delegate";
-
+        private static final String SUPPLIER_FIELD_NAME = "supplier";
+        private static final String LOCK_FIELD_NAME = "lock";
+        private static final String BOUND_CLASS_NAME = "Bound";
+        private static final String SESSION_CLASS_NAME = "Session";
+        private static final String CLOSED_FIELD_NAME = "closed";
+        private static final String PREVIOUS_NAME = "previous";
+        private static final String POOL_CLASS_SUFFIX = "Pool";
+        private static final String BATCH_SUFFIX = "All";
+        private static final String PARALLEL_SUFFIX = "Parallel";
+        private static final String ASYNC_SUFFIX = "Async";
+        private static final int CHUNKS_PER_STRIPE = 4;
+        private static final String METRIC_NAMES_FIELD_NAME = "METRIC_NAMES";
+        private static final String METRICS_FIELD_NAME = "metrics";
+        private static final String METRIC_CLASS_NAME = "Metric";
+        private static final String STATS_CLASS_NAME = "Stats";
+        private static final String STATS_MXBEAN_NAME = "StatsMXBean";
+        private static final String CONTENTION_NAMES_FIELD_NAME = "CONTENTION_NAMES";
+        private static final String CONTENTION_FIELD_NAME = "contention";
+        private static final String OCCUPANCY_FIELD_NAME = "occupancy";
+        private static final String CONTENTION_CLASS_NAME = "Contention";
+        private static final String CONTENTION_STATS_CLASS_NAME = "ContentionStats";
+        private static final String CONTENTION_EVENT_CLASS_NAME = "ContentionEvent";
+        private static final String JFR_EVENT = "jdk.jfr.Event";
+        private static final String INTERCEPTOR_CLASS_NAME = "Interceptor";
+        private static final String INTERCEPTOR_FIELD_NAME = "interceptor";
+        private static final String MEMO_CLASS_NAME = "Memo";
+        private static final String MEMO_KEY_CLASS_NAME = "Key";
+        private static final String MEMOS_FIELD_NAME = "memos";
+        private static final String MISS_FIELD_NAME = "MISS";
+        private static final String FAN_OUT_CLASS_NAME = "FanOut";
+        private static final String FAN_OUT_CALL_CLASS_NAME = "FanOutCall";
+        private static final String EXECUTOR_FIELD_NAME = "executor";
+        private static final int FAN_OUT_UNROLL = 4;
+        private static final String CALLS_CLASS_NAME = "Calls";
+        private static final String BATCH_AWARE_CLASS_NAME = "BatchAware";
+        private static final String CALLS_FIELD_NAME = "calls";
+        private static final String FAILURES_CLASS_NAME = "Failures";
+
+        final ResolutionCache resolutions;
         final Snapin annotation;
+        final Concurrency concurrency;
         final DeclaredType snapinType;
         final JDefinedClass snapin;
         final AbstractJClass delegateType;
+        final Map<String, AbstractJClass> delegateTypeArguments;
+        final Map<ExecutableElement, TypeVariableRenamer> delegateMethodTypeVariables = new HashMap<>();
+        final Map<String, JMethod> throwers = new HashMap<>();
+        JDefinedClass failures;
+        final List<String> metricNames = new ArrayList<>();
+        final List<String> contentionNames = new ArrayList<>();
+        JDefinedClass bound;
+        JDefinedClass session;
+        JDefinedClass pool;
+        Map<TypeParameterElement, List<JPrimitiveType>> classSpecializations;
+        JFieldVar metricNamesField;
+        JFieldVar contentionNamesField;
+        JDefinedClass contentionClass;
+        JFieldVar interceptorField;
+        JDefinedClass memoClass;
+        JDefinedClass memoKeyClass;
+        JFieldVar missField;
+        JArray memos;
+        JDefinedClass callsClass;
+        JDefinedClass batchAwareClass;
+        JArray callNames;
+        JMethod replay;
+        JSwitch replaySwitch;
+        JVar replayCursor;
+        JSwitch argumentsSwitch;
+        JVar argumentsCursor;
+        JBlock clearCalls;
+        int recordedMethods;
 
         /**
          * Create a new Worker instance.
          *
          * @param element
+         * @param codeModel
+         * @param resolutions shared by all Workers of the round
          */
-        Worker(TypeElement element, JCodeModel codeModel) {
+        Worker(TypeElement element, JCodeModel codeModel, ResolutionCache resolutions) {
             super(element, codeModel);
+            this.resolutions = resolutions;
             validate(element.getSuperclass().getKind() != TypeKind.NONE, "%s should be a class", element);
             validate(element.getModifiers().contains(Modifier.ABSTRACT), "%s should be abstract", element);
-            validate(types().isAssignable(types().erasure(element.asType()), templateInterface.asType()),
+            validate(
+                types().isAssignable(types().erasure(element.asType()), types().erasure(templateInterface.asType())),
                 "%s should implement SnapinTemplate", element);
             annotation = element.getAnnotation(Snapin.class);
             validate(annotation != null, "Cannot find Snapin annotation on %s; thus how did we even start processing?",
                 element);
+            concurrency = annotation.concurrency();
+            validate(!annotation.session() || concurrency != Concurrency.SYNCHRONIZED,
+                "%s: a monitor cannot be held across the calls of a session; specify another concurrency", element);
+            validate(!annotation.pool() || concurrency != Concurrency.NONE,
+                "%s: instances of a pool may be shared among threads; specify another concurrency", element);
+            validate(!annotation.async() || concurrency == Concurrency.THREAD_CONFINED,
+                "%s: a monitor or lock would serialize asynchronous calls, and none may share an unguarded delegate;"
+                    + " specify THREAD_CONFINED concurrency",
+                element);
+            validate(
+                !annotation.contention() || concurrency == Concurrency.SYNCHRONIZED
+                    || concurrency == Concurrency.REENTRANT_LOCK,
+                "%s: contention can be measured only for a monitor or lock; specify another concurrency", element);
+            validate(annotation.contentionSampling() > 0, "%s: contentionSampling must be positive", element);
+            validate(!annotation.contentionEvents() || elements().getTypeElement(JFR_EVENT) != null,
+                "%s: contention events require JDK Flight Recorder (%s)", element, JFR_EVENT);
 
             validate(LangModel.filterByModifier(ElementFilter.methodsIn(element.getEnclosedElements()),
                 Modifier.ABSTRACT, Modifier.PROTECTED).iterator().hasNext(), "found no template methods in %s",
@@ -161,6 +422,7 @@ public class SnapinProcessor extends CodeModelProcessorBase {
                 error(e, "Unable to define class %s.%s:", pkg, simple);
                 throw new IllegalStateException(e);
             }
+            filer.originate(snapin.fullName(), element);
             LangModel.to(codeModel).copyTo(element.getTypeParameters(), snapin);
 
             try {
@@ -170,6 +432,31 @@ public class SnapinProcessor extends CodeModelProcessorBase {
                 error(e, "Unable to get code model for %s", snapinType);
                 throw new IllegalStateException(e);
             }
+            delegateTypeArguments = typeArguments(delegateType);
+            validate(!annotation.lazy() || !types().isSameType(types().erasure(snapinType),
+                types().erasure(elements().getTypeElement(Supplier.class.getName()).asType())),
+                "%s: the delegates of a lazy snap-in cannot themselves be suppliers", element);
+            validate(!annotation.fanOut() || snapinType.asElement().getKind().isInterface()
+                || isExtensibleClass(snapinType.asElement()),
+                "%s: a fan-out must extend its delegate type; specify an interface or extensible class", element);
+            Stream.of(element, snapinType.asElement()).forEach(type -> validate(
+                ElementFilter.typesIn(elements().getAllMembers(TypeElement.class.cast(type))).stream()
+                    .noneMatch(member -> member.getSimpleName().contentEquals(FAILURES_CLASS_NAME)),
+                "%s: member type %s of %s would be hidden by that of the generated snap-in", element,
+                FAILURES_CLASS_NAME, type));
+            validate(annotation.writeBehind() >= 0, "%s: writeBehind must not be negative", element);
+            validate(annotation.writeBehind() == 0 || delegateMethods().stream().anyMatch(this::recordable),
+                "%s: write-behind requires a void, non-generic delegate method declaring no checked exception",
+                element);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        protected <T extends AbstractJType> T naiveType(String name) {
+            return (T) resolutions.parse(name, n -> super.<AbstractJType> naiveType(n));
         }
 
         /**
@@ -185,51 +472,138 @@ public class SnapinProcessor extends CodeModelProcessorBase {
                 snapin.javadoc().addParam(String.format(TYPE_PARAMETER_FORMAT, tp.getSimpleName())).add(doc(tp));
             });
 
-            snapin.field(JMod.PRIVATE, delegateType, DELEGATE_FIELD_NAME);
+            defineFailures(snapin);
+
+            if (concurrency == Concurrency.THREAD_CONFINED) {
+                final AbstractJClass threadLocal = codeModel.ref(ThreadLocal.class).narrow(delegateType);
+                snapin.field(JMod.PRIVATE | JMod.FINAL, threadLocal, DELEGATE_FIELD_NAME, _new(threadLocal));
+            } else {
+                snapin.field(JMod.PRIVATE, delegateType, DELEGATE_FIELD_NAME);
+            }
+            if (annotation.lazy()) {
+                final AbstractJClass supplier = supplierType();
+                if (concurrency == Concurrency.THREAD_CONFINED) {
+                    final AbstractJClass threadLocal = codeModel.ref(ThreadLocal.class).narrow(supplier);
+                    snapin.field(JMod.PRIVATE | JMod.FINAL, threadLocal, SUPPLIER_FIELD_NAME, _new(threadLocal));
+                } else {
+                    snapin.field(JMod.PRIVATE, supplier, SUPPLIER_FIELD_NAME);
+                }
+            }
+            if (concurrency == Concurrency.REENTRANT_LOCK) {
+                final AbstractJClass lock = codeModel.ref(ReentrantLock.class);
+                snapin.field(JMod.PRIVATE | JMod.FINAL, lock, LOCK_FIELD_NAME, _new(lock));
+            }
+
+            if (annotation.metrics()) {
+                defineMetrics(snapin);
+            }
+            if (annotation.contention()) {
+                defineContention(snapin);
+            }
+            if (annotation.intercept()) {
+                defineInterceptor(snapin);
+            }
+            if (annotation.bind()) {
+                bound = defineBound(snapin);
+            }
+            if (annotation.fanOut()) {
+                defineFanOut(snapin);
+            }
+            if (annotation.writeBehind() > 0) {
+                defineWriteBehind(snapin);
+            }
+            if (annotation.session()) {
+                session = defineSession(snapin);
+            }
+            if (annotation.pool()) {
+                pool = definePool();
+            }
+
+            classSpecializations = new LinkedHashMap<>();
+            element.getTypeParameters().forEach(tp -> {
+                final List<JPrimitiveType> primitives = specializations(tp);
+                if (!primitives.isEmpty()) {
+                    classSpecializations.put(tp, primitives);
+                }
+            });
+            final Set<TypeParameterElement> specialized = new HashSet<>();
 
             for (ExecutableElement templateMethod : LangModel.filterByModifier(
                 ElementFilter.methodsIn(element.getEnclosedElements()), Modifier.ABSTRACT, Modifier.PROTECTED)) {
-                addTo(snapin, templateMethod);
+                final JMethod template = addTo(snapin, templateMethod, Collections.emptyMap(), null);
+
+                for (Map<TypeParameterElement, JPrimitiveType> specialization : specializations(templateMethod)) {
+                    addTo(snapin, templateMethod, specialization, template);
+                    specialized.addAll(specialization.keySet());
+                }
             }
+            classSpecializations.keySet().forEach(tp -> validate(specialized.contains(tp),
+                "%s: no template method can be specialized on %s, which must be the type of a parameter", element,
+                tp));
 
             implementSnapin(snapin);
+
+            if (metricNamesField != null) {
+                final JArray names = JExpr.newArray(codeModel.ref(String.class));
+                metricNames.stream().map(JExpr::lit).forEach(names::add);
+                metricNamesField.init(names);
+            }
+            if (contentionNamesField != null) {
+                final JArray names = JExpr.newArray(codeModel.ref(String.class));
+                contentionNames.stream().map(JExpr::lit).forEach(names::add);
+                contentionNamesField.init(names);
+            }
         }
 
-        private void addTo(JDefinedClass snapin, ExecutableElement templateMethod) {
-            final JFieldRef delegateField = JExpr.ref(_this(), DELEGATE_FIELD_NAME);
+        /**
+         * Add to {@code snapin} the template method modeled by {@code templateMethod}, along with its wrapper method
+         * and any other entry points.
+         *
+         * @param snapin
+         * @param templateMethod
+         * @param specialization primitive types with which to replace type variables, if any
+         * @param generic template method, required if {@code specialization} is not empty
+         * @return the template {@link JMethod}
+         */
+        private JMethod addTo(JDefinedClass snapin, ExecutableElement templateMethod,
+            Map<TypeParameterElement, JPrimitiveType> specialization, JMethod generic) {
+            final AbstractJType rt = specialize(templateMethod.getReturnType(), specialization);
+            final List<? extends VariableElement> methodParameters = templateMethod.getParameters();
+            final String paramTypes = methodParameters.stream().map(VariableElement::asType).map(this::linkType)
+                .collect(Collectors.joining(","));
 
-            final AbstractJType rt = naiveType(templateMethod.getReturnType().toString());
             // copy template method:
-            final JMethod template =
-                snapin.method(JMod.PROTECTED | JMod.ABSTRACT, rt, templateMethod.getSimpleName().toString());
+            final JMethod template = snapin.method(JMod.PROTECTED | (generic == null ? JMod.ABSTRACT : JMod.NONE), rt,
+                templateMethod.getSimpleName().toString());
             template.javadoc().add(doc(templateMethod));
+            if (generic != null) {
+                template.javadoc().add(String.format(
+                    "%n<p>Specialization of {@link #%s(%s)}, to which this default implementation passes its boxed",
+                    templateMethod.getSimpleName(), paramTypes));
+                template.javadoc().add(" arguments; override to avoid boxing.</p>");
+            }
             if (codeModel.VOID != rt) {
                 template.javadoc().addReturn().add(rt);
             }
             // create snapin wrapper method:
             final JMethod wrapper =
-                snapin.method(JMod.FINAL | JMod.SYNCHRONIZED, rt, templateMethod.getSimpleName().toString());
+                snapin.method(JMod.FINAL | wrapperModifier(), rt, templateMethod.getSimpleName().toString());
 
-            final List<? extends VariableElement> methodParameters = templateMethod.getParameters();
-            final String paramTypes = methodParameters.stream().map(VariableElement::asType).map(Object::toString)
-                .collect(Collectors.joining(","));
+            wrapper.javadoc().append(String.format("Call {@link #%s} using {@code delegate}",
+                templateLink(templateMethod, specialization))).addReturn().add(rt);
 
-            wrapper.javadoc().append(String.format("Call {@link #%s(%s)} using {@code delegate}",
-                templateMethod.getSimpleName(), paramTypes)).addReturn().add(rt);
-
-            LangModel.to(codeModel).copyTo(templateMethod.getTypeParameters(), template, wrapper);
+            // specialized type variables are not declared:
+            LangModel.to(codeModel).copyTo(templateMethod.getTypeParameters().stream()
+                .filter(tp -> !specialization.containsKey(tp)).collect(Collectors.toList()), template, wrapper);
 
             // document method type parameters:
-            templateMethod.getTypeParameters().forEach(tp -> Stream.of(template, wrapper).forEach(m -> {
-                m.javadoc().addParam(String.format(TYPE_PARAMETER_FORMAT, tp.getSimpleName())).add(doc(tp));
-            }));
+            Stream.of(template, wrapper).forEach(m -> documentTypeParameters(m, templateMethod));
 
             // add delegate param to wrapper method:
             final JVar delegateParam = wrapper.param(delegateType, DELEGATE_FIELD_NAME);
             wrapper.javadoc().addParam(delegateParam).append(delegateType).add("delegate");
 
-            final Map<String, String[]> docThrows = Stream.of(templateMethod.getAnnotationsByType(DocThrow.class))
-                .collect(Collectors.toMap(dt -> getClassName(dt, DocThrow::type), DocThrow::value));
+            final Map<String, String[]> docThrows = docThrows(templateMethod);
 
             templateMethod.getThrownTypes().stream().map(Object::toString).<AbstractJClass> map(this::naiveType)
                 .forEach(twn -> {
@@ -240,33 +614,15 @@ public class SnapinProcessor extends CodeModelProcessorBase {
                         });
                 });
 
-            // define wrapper method body:
-            JBlock block = wrapper.body();
-
-            // if delegateField != null throw new IllegalStateException:
-            block._if(ne(delegateField, _null()))._then()
-                ._throw(_new(codeModel._ref(IllegalStateException.class)).arg("Re-entry not permitted"));
-
-            // if delegateParam == null throw new NPE:
-            block._if(eq(delegateParam, _null()))._then()._throw(_new(codeModel._ref(NullPointerException.class)));
-
-            // enter synchronized block:
-            block = block.synchronizedBlock(_this()).body();
-
-            // next, assign:
-            block = block.assign(delegateField, delegateParam);
-
-            // try to defer to original
-            final JTryBlock tryBlock = block._try();
-            block = tryBlock.body();
             final JInvocation invocation = JExpr.invoke(template);
+            final JInvocation boxing = generic == null ? null : JExpr.invoke(generic);
 
             int index = 0;
             // handle params, sending from wrapper to original
             for (VariableElement p : methodParameters) {
                 final boolean varParam = ++index == methodParameters.size() && templateMethod.isVarArgs();
                 final int mods = LangModel.encodeModifiers(p.getModifiers());
-                final AbstractJType t = naiveType(p.asType().toString());
+                final AbstractJType t = specialize(p.asType(), specialization);
 
                 final String parameterDocs = doc(p);
                 final String paramName = p.getSimpleName().toString();
@@ -278,6 +634,9 @@ public class SnapinProcessor extends CodeModelProcessorBase {
                     templateParam = template.param(mods, t, paramName);
                 }
                 template.javadoc().addParam(templateParam).add(parameterDocs);
+                if (boxing != null) {
+                    boxing.arg(box(template, templateParam, p.asType(), specialization));
+                }
 
                 final JVar wrapperParam;
                 if (varParam) {
@@ -288,218 +647,2631 @@ public class SnapinProcessor extends CodeModelProcessorBase {
                 wrapper.javadoc().addParam(wrapperParam).add(parameterDocs);
                 invocation.arg(wrapperParam);
             }
-            returnFrom(block, templateMethod.getReturnType(), invocation);
-
-            // clear delegate field in finally block:
-            tryBlock._finally().assign(delegateField, JExpr._null());
-        }
 
-        private void implementSnapin(JDefinedClass snapin) {
-            final Element snapinTypeElement = snapinType.asElement();
+            if (boxing != null) {
+                // cast a specialized result, lest its type variable be inferred from the primitive return type:
+                final boolean specializedResult =
+                    templateMethod.getReturnType().getKind() == TypeKind.TYPEVAR && rt.isPrimitive();
+                returnFrom(template.body(), templateMethod.getReturnType(),
+                    specializedResult ? JExpr.cast(rt.boxify(), boxing) : boxing);
+            }
 
-            final boolean inheritance;
-            if (snapinTypeElement.getKind().isInterface()) {
-                snapin._implements(delegateType);
-                inheritance = true;
-            } else if (isExtensibleClass(snapinTypeElement)) {
-                snapin._extends(delegateType);
-                inheritance = true;
+            // define wrapper method body:
+            final String signature = signature(template, 0);
+            final JBlock body = instrumented(wrapper, signature);
+            final Memoize memoize = templateMethod.getAnnotation(Memoize.class);
+            final JVar memo;
+            final JVar key;
+            if (memoize == null) {
+                memo = null;
+                key = null;
             } else {
-                inheritance = false;
+                validate(codeModel.VOID != rt, "%s: cannot memoize void method %s", element, templateMethod);
+                validate(memoize.size() > 0, "%s: memoized size of %s must be positive", element, templateMethod);
+                validate(memoize.expireAfter() >= 0L, "%s: memoized expiry of %s must not be negative", element,
+                    templateMethod);
+                if (memoClass == null) {
+                    defineMemo(snapin);
+                }
+                memo = body.decl(JMod.FINAL, memoClass, localName(wrapper, "memo"),
+                    JExpr.component(current(MEMOS_FIELD_NAME), JExpr.lit(memos.exprs().size())));
+                memos.add(_new(memoClass).arg(JExpr.lit(memoize.size()))
+                    .arg(JExpr.lit(memoize.eviction() == Memoize.Eviction.LFU))
+                    .arg(JExpr.lit(memoize.unit().toNanos(memoize.expireAfter()))));
+
+                // copy any array the caller might go on to modify:
+                final JArray args = JExpr.newArray(codeModel.ref(Object.class));
+                final List<JVar> params = new ArrayList<>(wrapper.params().subList(1, wrapper.params().size()));
+                Optional.ofNullable(wrapper.varParam()).ifPresent(params::add);
+                params.forEach(p -> args.add(mayBeArray(p.type()) ? memoKeyClass.staticInvoke("copy").arg(p) : p));
+                key = body.decl(JMod.FINAL, memoKeyClass, localName(wrapper, "key"),
+                    _new(memoKeyClass).arg(delegateParam).arg(args));
+
+                // return any remembered result without entering the guard:
+                final JVar remembered = body.decl(JMod.FINAL, codeModel.ref(Object.class),
+                    localName(wrapper, "remembered"), memo.invoke("get").arg(key));
+                body._if(ne(remembered, memoClass.staticRef(missField)))._then()
+                    ._return(JExpr.cast(rt.boxify(), remembered));
+                final TypeMirror returnType = templateMethod.getReturnType();
+                if (!rt.isPrimitive() && !types().isSameType(returnType, types().erasure(returnType))) {
+                    wrapper.annotate(SuppressWarnings.class).param("value", "unchecked");
+                }
             }
+            final JBlock block = guard(wrapper, body, delegateParam, signature, false);
 
-            final Map<String, AbstractJClass> delegateTypeArguments = typeArguments(delegateType);
+            // assign, then defer to original:
+            installDelegate(block, delegateParam);
+            if (memo == null) {
+                returnFrom(block, templateMethod.getReturnType(), invocation);
+            } else {
+                final JVar result = block.decl(JMod.FINAL, rt, localName(wrapper, "result"), invocation);
+                block.add(memo.invoke("put").arg(key).arg(result));
+                block._return(result);
+            }
 
-            final JFieldVar delegateField = snapin.fields().get(DELEGATE_FIELD_NAME);
-            for (ExecutableElement method : ElementFilter.methodsIn(snapinTypeElement.getEnclosedElements())) {
-                if (method.getModifiers().contains(Modifier.STATIC)) {
-                    continue;
+            if (annotation.lazy()) {
+                lazyTo(snapin, wrapper, template, templateMethod, specialization);
+            }
+            if (bound != null) {
+                bindTo(bound, wrapper, templateMethod);
+            }
+            if (session != null) {
+                openTo(session, wrapper, template, templateMethod);
+            }
+            if (pool != null) {
+                poolTo(pool, wrapper, templateMethod);
+            }
+            if (annotation.batch()) {
+                final JMethod batch = batchTo(snapin, wrapper, template, templateMethod);
+                if (pool != null) {
+                    poolBatchTo(pool, batch, templateMethod);
                 }
-                final String name = method.getSimpleName().toString();
-
-                // the return type may be a mapped type variable, so defer until we can handle it
-                final JMethod impl = snapin.method(JMod.PUBLIC | JMod.SYNCHRONIZED | JMod.FINAL, codeModel.NULL, name);
+            }
+            if (annotation.async()) {
+                asyncTo(snapin, wrapper, templateMethod, specialization);
+            }
+            return template;
+        }
 
-                final TypeVariableRenamer utv = new TypeVariableRenamer(codeModel,
-                    snapin.typeParamList().stream().map(JTypeVar::name).collect(Collectors.toSet()));
-                LangModel.to(codeModel).copyTo(method.getTypeParameters(), utv);
+        /**
+         * Get the primitive types with which {@code typeParameter} should be specialized, per {@link Specialize}.
+         *
+         * @param typeParameter
+         * @return {@link List} of {@link JPrimitiveType}, empty if none
+         */
+        @SuppressWarnings("unchecked")
+        private List<JPrimitiveType> specializations(TypeParameterElement typeParameter) {
+            return typeParameter.getAnnotationMirrors().stream()
+                .filter(am -> TypeElement.class.cast(am.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(Specialize.class.getCanonicalName()))
+                .flatMap(am -> am.getElementValues().values().stream())
+                .flatMap(v -> ((List<? extends AnnotationValue>) v.getValue()).stream())
+                .map(v -> TypeMirror.class.cast(v.getValue())).distinct().map(type -> {
+                    validate(type.getKind().isPrimitive(), "%s: cannot specialize %s as non-primitive %s",
+                        typeParameter.getGenericElement(), typeParameter, type);
+
+                    final TypeMirror boxed = types().boxedClass(PrimitiveType.class.cast(type)).asType();
+                    validate(
+                        typeParameter.getBounds().stream()
+                            .allMatch(bound -> types().isAssignable(boxed, types().erasure(bound))),
+                        "%s: cannot specialize %s as %s, %s being outside its bounds",
+                        typeParameter.getGenericElement(), typeParameter, type, boxed);
+
+                    // a class type variable may be bound to another type, which the boxed argument would pollute:
+                    validate(
+                        typeParameter.getGenericElement().getKind() == ElementKind.METHOD
+                            || typeParameter.getBounds().stream().anyMatch(bound -> types().isSameType(boxed, bound)),
+                        "%s: cannot specialize class type variable %s as %s unless bounded by %s",
+                        typeParameter.getGenericElement(), typeParameter, type, boxed);
+
+                    return this.<JPrimitiveType> naiveType(type.toString());
+                }).collect(Collectors.toList());
+        }
 
-                final Map<String, AbstractJClass> methodTypeArguments = new HashMap<>(delegateTypeArguments);
-                methodTypeArguments.putAll(utv.copyTo(impl));
+        /**
+         * Get the combinations of primitive types with which {@code templateMethod} should be specialized: each
+         * specialized type variable of the template class that appears as the type of some parameter of
+         * {@code templateMethod}, and each specialized type variable of {@code templateMethod} itself, is mapped to
+         * one of its primitive types.
+         *
+         * @param templateMethod
+         * @return {@link List} of specializations, empty if none
+         */
+        private List<Map<TypeParameterElement, JPrimitiveType>> specializations(ExecutableElement templateMethod) {
+            final Map<TypeParameterElement, List<JPrimitiveType>> variables = new LinkedHashMap<>();
 
-                final AbstractJType returnType = resolveVariables(method.getReturnType(), methodTypeArguments);
-                impl.type(returnType);
-                if (codeModel.VOID != returnType) {
-                    impl.javadoc().addReturn().add(returnType);
+            classSpecializations.forEach((tp, primitives) -> {
+                if (specializable(templateMethod, tp)) {
+                    variables.put(tp, primitives);
                 }
-                if (inheritance) {
-                    impl.annotate(Override.class);
+            });
+            for (TypeParameterElement tp : templateMethod.getTypeParameters()) {
+                final List<JPrimitiveType> primitives = specializations(tp);
+                if (!primitives.isEmpty()) {
+                    validate(specializable(templateMethod, tp),
+                        "%s: cannot specialize %s, which must be the type of a parameter and may otherwise appear only"
+                            + " as the return type",
+                        templateMethod, tp);
+                    variables.put(tp, primitives);
                 }
-
-                // implement body:
-                // if delegate field == null throw new IllegalStateException:
-                impl.body()._if(eq(delegateField, _null()))._then()
-                    ._throw(_new(codeModel.ref(IllegalStateException.class)));
-
-                final JInvocation invocation = JExpr.invoke(delegateField, name);
-
-                final List<? extends VariableElement> methodParameters = method.getParameters();
-
-                int index = 0;
-                for (VariableElement p : methodParameters) {
-                    final boolean varParam = ++index == methodParameters.size() && method.isVarArgs();
-                    final int mods = LangModel.encodeModifiers(p.getModifiers());
-                    final AbstractJType t = resolveVariables(p.asType(), methodTypeArguments);
-                    final String paramName = p.getSimpleName().toString();
-
-                    final JVar param;
-                    if (varParam) {
-                        param = impl.varParam(mods, t.elementType(), paramName);
-                    } else {
-                        param = impl.param(mods, t, paramName);
+            }
+            if (variables.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<Map<TypeParameterElement, JPrimitiveType>> result =
+                Collections.singletonList(Collections.emptyMap());
+
+            for (Map.Entry<TypeParameterElement, List<JPrimitiveType>> e : variables.entrySet()) {
+                final List<Map<TypeParameterElement, JPrimitiveType>> combined = new ArrayList<>();
+                for (Map<TypeParameterElement, JPrimitiveType> partial : result) {
+                    for (JPrimitiveType primitive : e.getValue()) {
+                        final Map<TypeParameterElement, JPrimitiveType> specialization = new LinkedHashMap<>(partial);
+                        specialization.put(e.getKey(), primitive);
+                        combined.add(specialization);
                     }
-                    invocation.arg(param);
-                    impl.javadoc().addParam(param).add("see interface");
                 }
+                result = combined;
+            }
+            return result;
+        }
 
-                returnFrom(impl.body(), method.getReturnType(), invocation);
-
-                if (inheritance) {
-                    impl.javadoc().add("{@inheritDoc}");
-                }
-                impl.javadoc().addTag(JDocComment.TAG_SEE)
-                    .add(String.format("%s#%s(%s)", delegateType.erasure().name(), name,
-                        impl.params().stream().map(JVar::type).map(this::seeParameter).map(AbstractJType::name)
-                            .collect(Collectors.joining(", "))));
+        /**
+         * Learn whether {@code templateMethod} can be specialized on {@code typeParameter}: it must be the type of
+         * some parameter, and may otherwise appear only as the return type, such that it can be replaced by a
+         * primitive type.
+         *
+         * @param templateMethod
+         * @param typeParameter
+         * @return boolean
+         */
+        private boolean specializable(ExecutableElement templateMethod, TypeParameterElement typeParameter) {
+            final List<TypeMirror> parameterTypes = templateMethod.getParameters().stream()
+                .map(VariableElement::asType).collect(Collectors.toList());
 
-                method.getThrownTypes().stream().map(Object::toString).<AbstractJClass> map(this::naiveType)
-                    .forEach(((Consumer<AbstractJClass>) impl::_throws).andThen(twn -> {
-                        impl.javadoc().addThrows(twn).add("see interface");
-                    }));
+            if (!parameterTypes.stream().anyMatch(t -> isVariable(t, typeParameter))) {
+                return false;
             }
+            return Stream
+                .concat(Stream.concat(parameterTypes.stream(), Stream.of(templateMethod.getReturnType())),
+                    templateMethod.getTypeParameters().stream().flatMap(tp -> tp.getBounds().stream()))
+                .allMatch(t -> isVariable(t, typeParameter) || !mentions(t, typeParameter));
         }
 
-        private AbstractJType seeParameter(AbstractJType type) {
-            if (type.isArray()) {
-                return seeParameter(type.elementType()).array();
-            }
-            if (type instanceof JTypeVar) {
-                return seeParameter(((JTypeVar) type)._extends());
-            }
-            return type.erasure();
+        private boolean isVariable(TypeMirror type, TypeParameterElement typeParameter) {
+            return type.getKind() == TypeKind.TYPEVAR
+                && typeParameter.equals(TypeVariable.class.cast(type).asElement());
         }
 
-        private AbstractJClass represent(TypeMirror type, Map<String, AbstractJClass> variableMappingTypes)
-            throws ErrorTypeFound, CodeModelBuildingException {
+        private boolean mentions(TypeMirror type, TypeParameterElement typeParameter) {
             switch (type.getKind()) {
-            case DECLARED:
-                final DeclaredType declaredType = DeclaredType.class.cast(type);
-
-                AbstractJClass result =
-                    codeModel.refWithErrorTypes(TypeElement.class.cast(declaredType.asElement()), elements());
-
-                for (TypeMirror arg : declaredType.getTypeArguments()) {
-                    result = result.narrow(represent(arg, variableMappingTypes));
-                }
-                return result;
             case TYPEVAR:
-                final TypeVariable tv = TypeVariable.class.cast(type);
-
-                final TypeParameterElement typeParameter = TypeParameterElement.class.cast(tv.asElement());
-                final String genericElementName =
-                    TypeElement.class.cast(typeParameter.getGenericElement()).getQualifiedName().toString();
-
-                if (variableMappingTypes.containsKey(genericElementName)) {
-
-                    final Optional<JTypeVar> var = Stream.of(variableMappingTypes.get(genericElementName).typeParams())
-                        .filter(tp -> typeParameter.getSimpleName().contentEquals(tp.name())).findFirst();
-
-                    if (var.isPresent()) {
-                        return var.get();
-                    }
-                }
-                break;
+                return isVariable(type, typeParameter);
+            case ARRAY:
+                return mentions(ArrayType.class.cast(type).getComponentType(), typeParameter);
+            case DECLARED:
+                return DeclaredType.class.cast(type).getTypeArguments().stream()
+                    .anyMatch(arg -> mentions(arg, typeParameter));
+            case WILDCARD:
+                final WildcardType wildcard = WildcardType.class.cast(type);
+                return Stream.of(wildcard.getExtendsBound(), wildcard.getSuperBound()).filter(Objects::nonNull)
+                    .anyMatch(bound -> mentions(bound, typeParameter));
             default:
-                break;
+                return false;
             }
-            return naiveType(type.toString());
         }
 
-        private boolean isExtensibleClass(Element snapinTypeElement) {
-            if (snapinTypeElement.getKind() == ElementKind.CLASS) {
-                if (!snapinTypeElement.getModifiers().contains(Modifier.FINAL)) {
-                    return ElementFilter.constructorsIn(snapinTypeElement.getEnclosedElements()).stream()
-                        .filter(this::isExtensibleCtor).findFirst().isPresent();
+        /**
+         * Get the code model type of {@code type}, replacing the type variable it may be per {@code specialization}.
+         *
+         * @param type
+         * @param specialization
+         * @return {@link AbstractJType}
+         */
+        private AbstractJType specialize(TypeMirror type, Map<TypeParameterElement, JPrimitiveType> specialization) {
+            if (type.getKind() == TypeKind.TYPEVAR) {
+                final JPrimitiveType primitive = specialization.get(TypeVariable.class.cast(type).asElement());
+                if (primitive != null) {
+                    return primitive;
                 }
             }
-            return false;
+            return naiveType(type.toString());
         }
 
-        private boolean isExtensibleCtor(ExecutableElement ctor) {
-            if ((ctor.getKind() == ElementKind.CONSTRUCTOR) && ctor.getParameters().isEmpty()) {
-                final Set<Modifier> mods = ctor.getModifiers();
-                if (mods.contains(Modifier.PUBLIC) || mods.contains(Modifier.PROTECTED)) {
-                    return true;
-                }
-                if (!mods.contains(Modifier.PRIVATE)) {
-                    return elements().getPackageOf(ctor).equals(elements().getPackageOf(element));
+        /**
+         * Get the expression by which a specialized template method passes {@code param} to its generic counterpart.
+         *
+         * @param template specialized
+         * @param param
+         * @param type of the generic parameter
+         * @param specialization
+         * @return {@link IJExpression}
+         */
+        private IJExpression box(JMethod template, JVar param, TypeMirror type,
+            Map<TypeParameterElement, JPrimitiveType> specialization) {
+            if (type.getKind() == TypeKind.TYPEVAR) {
+                final Element typeParameter = TypeVariable.class.cast(type).asElement();
+                final JPrimitiveType primitive = specialization.get(typeParameter);
+                if (primitive != null) {
+                    final JInvocation boxed = primitive.boxify().staticInvoke("valueOf").arg(param);
+
+                    // a type variable of the class, unlike one of the method, must be cast to:
+                    final Optional<JTypeVar> classVariable = snapin.typeParamList().stream()
+                        .filter(tv -> typeParameter.getSimpleName().contentEquals(tv.name())
+                            && element.equals(TypeParameterElement.class.cast(typeParameter).getGenericElement()))
+                        .findFirst();
+                    if (classVariable.isPresent()) {
+                        if (template.annotations().isEmpty()) {
+                            template.annotate(SuppressWarnings.class).param("value", "unchecked");
+                        }
+                        return JExpr.cast(classVariable.get(), boxed);
+                    }
+                    return boxed;
                 }
             }
-            return false;
+            return param;
         }
 
-        private void returnFrom(JBlock block, TypeMirror resultType, IJExpression expr) {
-            if (resultType.getKind() == TypeKind.VOID) {
-                block.add((JInvocation) expr);
-                block._return();
-            } else {
-                block._return(expr);
-            }
+        /**
+         * Get the representation of {@code type} with which to link to a method having a parameter of that type. A
+         * type variable is represented by its erasure, javadoc being unable to resolve a bounded type variable.
+         *
+         * @param type
+         * @return String
+         */
+        private String linkType(TypeMirror type) {
+            return (type.getKind() == TypeKind.TYPEVAR ? types().erasure(type) : type).toString();
         }
 
-        private Map<String, AbstractJClass> typeArguments(AbstractJClass type) {
+        /**
+         * Get the javadoc link target of a template method: its name and parameter types.
+         *
+         * @param templateMethod
+         * @param specialization
+         * @return String
+         */
+        private String templateLink(ExecutableElement templateMethod,
+            Map<TypeParameterElement, JPrimitiveType> specialization) {
+            return String.format("%s(%s)", templateMethod.getSimpleName(),
+                templateMethod.getParameters().stream().map(VariableElement::asType)
+                    .map(t -> specialization.containsKey(types().asElement(t)) ? specialize(t, specialization).name()
+                        : linkType(t))
+                    .collect(Collectors.joining(",")));
+        }
 
-            final JTypeVar[] typeParams = type.erasure().typeParams();
-            final List<? extends AbstractJClass> typeArguments = type.getTypeParameters();
+        /**
+         * Document on {@code method} those type parameters of {@code templateMethod} that it declares.
+         *
+         * @param method
+         * @param templateMethod
+         */
+        private void documentTypeParameters(JMethod method, ExecutableElement templateMethod) {
+            final Set<String> declared =
+                method.typeParamList().stream().map(JTypeVar::name).collect(Collectors.toSet());
 
-            final Map<String, AbstractJClass> result = new LinkedHashMap<>();
-            for (int i = 0; (i < typeParams.length) && (i < typeArguments.size()); i++) {
-                result.put(typeParams[i].name(), typeArguments.get(i));
-            }
-            return result;
+            templateMethod.getTypeParameters().stream().filter(tp -> declared.contains(tp.getSimpleName().toString()))
+                .forEach(tp -> method.javadoc().addParam(String.format(TYPE_PARAMETER_FORMAT, tp.getSimpleName()))
+                    .add(doc(tp)));
         }
 
-        @SuppressWarnings("unchecked")
-        private <T extends AbstractJType> T resolveVariables(TypeMirror type,
-            Map<String, ? extends AbstractJClass> typeMappings) {
-            switch (type.getKind()) {
-            case TYPEVAR:
-                return (T) typeMappings.get(TypeVariable.class.cast(type).asElement().getSimpleName().toString());
+        /**
+         * Begin the body of a method that installs one or more delegates: having checked {@code delegateArg}
+         * for {@code null}, enter the guarded block and check for re-entry (or save the current delegate), then
+         * open a {@code try} block whose {@code finally} clears (or restores) the delegate. Write-behind calls are
+         * flushed only if the {@code try} block completes normally; a failure discards them.
+         *
+         * @param method
+         * @param block of {@code method}
+         * @param delegateArg
+         * @param signature of {@code method}, naming its contention statistics
+         * @param lazy whether {@code delegateArg} is a supplier, to be installed in place of any current delegate
+         * @return the {@code try} body, into which the delegate should be installed
+         */
+        private JBlock guard(JMethod method, JBlock block, JVar delegateArg, String signature, boolean lazy) {
 
-            case WILDCARD:
-                final WildcardType wild = WildcardType.class.cast(type);
-                final TypeMirror xBound = wild.getExtendsBound();
+            // if delegateArg == null throw new NPE:
+            block._if(eq(delegateArg, _null()))._then().add(nullDelegate());
 
-                if (xBound != null) {
-                    return (T) this.<AbstractJClass> resolveVariables(xBound, typeMappings).wildcard();
-                }
-                final TypeMirror sBound = wild.getSuperBound();
-                if (sBound != null) {
-                    return (T) this.<AbstractJClass> resolveVariables(sBound, typeMappings).wildcardSuper();
-                }
-                return (T) codeModel.wildcard();
+            // enter guarded block:
+            block = enter(method, block, signature);
 
-            case DECLARED:
-                final DeclaredType declaredType = DeclaredType.class.cast(type);
+            final JVar previous;
+            final JVar previousSupplier;
+            if (annotation.reentrant()) {
+                // save the current delegate for restoration:
+                previous = block.decl(JMod.FINAL, delegateType, localName(method, PREVIOUS_NAME), currentDelegate());
+                previousSupplier = lazy ? block.decl(JMod.FINAL, supplierType(),
+                    localName(method, PREVIOUS_NAME + "Supplier"), current(SUPPLIER_FIELD_NAME)) : null;
+            } else {
+                previous = null;
+                previousSupplier = null;
+                // if current delegate != null throw new IllegalStateException:
+                block._if(installed())._then().add(reentered());
+            }
 
-                try {
-                    AbstractJClass result =
-                        codeModel.refWithErrorTypes(TypeElement.class.cast(declaredType.asElement()), elements());
+            final JTryBlock tryBlock = block._try();
 
-                    for (TypeMirror arg : declaredType.getTypeArguments()) {
-                        result = result.narrow(this.<AbstractJType> resolveVariables(arg, typeMappings));
-                    }
-                    return (T) result;
+            if (callsClass != null) {
+                // calls recorded for a failed template are discarded, leaving nothing to flush:
+                final JCatchBlock failed = tryBlock._catch(codeModel.ref(Throwable.class));
+                final JVar failure = failed.param(localName(method, "failure"));
+                failed.body().add(current(_this(), CALLS_FIELD_NAME).invoke("discard"));
+                failed.body()._throw(failure);
+            }
+            // clear or restore delegate in finally block:
+            restoreDelegate(tryBlock._finally(), JExpr.ref(_this(), DELEGATE_FIELD_NAME), previous);
+            if (lazy) {
+                restoreDelegate(tryBlock._finally(), JExpr.ref(_this(), SUPPLIER_FIELD_NAME), previousSupplier);
+            }
+            return tryBlock.body();
+        }
+
+        /**
+         * Add to {@code snapin} a method to call {@code template} against each of a number of delegates, guarding
+         * once for the entire batch.
+         *
+         * @param snapin
+         * @param wrapper
+         * @param template
+         * @param templateMethod
+         * @return {@link JMethod}
+         */
+        private JMethod batchTo(JDefinedClass snapin, JMethod wrapper, JMethod template,
+            ExecutableElement templateMethod) {
+            final boolean isVoid = templateMethod.getReturnType().getKind() == TypeKind.VOID;
+            final AbstractJClass resultType =
+                isVoid ? null : codeModel.ref(List.class).narrow(wrapper.type().boxify());
+
+            final JMethod batch = snapin.method(JMod.FINAL | wrapperModifier(),
+                isVoid ? codeModel.VOID : resultType, wrapper.name() + BATCH_SUFFIX);
+            batch.javadoc().append(String.format("Call {@link #%s} using each of {@code delegates} in turn",
+                templateMethod.getSimpleName()));
+
+            wrapper.typeParamList().forEach(tp -> batch.generify(tp.name()).boundLike(tp));
+            documentTypeParameters(batch, templateMethod);
+
+            final JVar delegates = batch.param(codeModel.ref(Iterable.class).narrow(delegateType.wildcard()),
+                DELEGATE_FIELD_NAME + 's');
+            batch.javadoc().addParam(delegates).add("delegates");
+
+            final JInvocation invocation = JExpr.invoke(template);
+            final List<JVar> params = wrapper.params().subList(1, wrapper.params().size());
+            final Iterator<? extends VariableElement> templateParams = templateMethod.getParameters().iterator();
+            for (JVar p : params) {
+                final JVar param = batch.param(p.mods().getValue(), p.type(), p.name());
+                batch.javadoc().addParam(param).add(doc(templateParams.next()));
+                invocation.arg(param);
+            }
+            if (wrapper.hasVarArgs()) {
+                final JVar varParam = wrapper.varParam();
+                final JVar param =
+                    batch.varParam(varParam.mods().getValue(), varParam.type().elementType(), varParam.name());
+                batch.javadoc().addParam(param).add(doc(templateParams.next()));
+                invocation.arg(param);
+            }
+            final Map<String, String[]> docThrows = docThrows(templateMethod);
+            wrapper.getThrows().forEach(twn -> {
+                batch._throws(twn);
+                batch.javadoc().addThrows(twn).add(docThrows.get(twn.fullName()));
+            });
+
+            final String signature = signature(batch, 1);
+            final JBlock block = guard(batch, instrumented(batch, signature), delegates, signature, false);
+
+            final JVar result;
+            if (isVoid) {
+                result = null;
+            } else {
+                batch.javadoc().addReturn().add(String.format("{@link List} of results in {@code %s} order",
+                    delegates.name()));
+                result = block.decl(JMod.FINAL, resultType, localName(batch, "result"),
+                    _new(codeModel.ref(ArrayList.class).narrow(wrapper.type().boxify())));
+            }
+            final JForEach each = block.forEach(delegateType, localName(batch, DELEGATE_FIELD_NAME), delegates);
+            each.body()._if(eq(each.var(), _null()))._then().add(nullDelegate());
+            if (!annotation.reentrant()) {
+                flushCalls(each.body(), _this());
+            }
+            installDelegate(each.body(), each.var());
+            if (isVoid) {
+                each.body().add(invocation);
+            } else {
+                each.body().add(result.invoke("add").arg(invocation));
+                block._return(result);
+            }
+            return batch;
+        }
+
+        /**
+         * Add to {@code pool} a method to call {@code batch} in parallel over chunks of a {@link List} of delegates,
+         * each chunk using the pooled instance of the worker thread.
+         *
+         * @param pool
+         * @param batch
+         * @param templateMethod
+         */
+        private void poolBatchTo(JDefinedClass pool, JMethod batch, ExecutableElement templateMethod) {
+            final JMethod parallel = pool.method(JMod.NONE, batch.type(), batch.name() + PARALLEL_SUFFIX);
+            parallel.javadoc().append(String.format(
+                "Call {@link %s#%s} in parallel over chunks of {@code delegates}, using pooled instances",
+                snapin.name(), batch.name()));
+
+            batch.typeParamList().forEach(tp -> parallel.generify(tp.name()).boundLike(tp));
+            documentTypeParameters(parallel, templateMethod);
+
+            final JVar delegates = parallel.param(JMod.FINAL,
+                codeModel.ref(List.class).narrow(delegateType.wildcard()), DELEGATE_FIELD_NAME + 's');
+            parallel.javadoc().addParam(delegates).add("delegates");
+
+            final List<JVar> params = new ArrayList<>();
+            final Iterator<? extends VariableElement> templateParams = templateMethod.getParameters().iterator();
+            for (JVar p : batch.params().subList(1, batch.params().size())) {
+                final JVar param = parallel.param(p.mods().getValue() | JMod.FINAL, p.type(), p.name());
+                parallel.javadoc().addParam(param).add(doc(templateParams.next()));
+                params.add(param);
+            }
+            if (batch.hasVarArgs()) {
+                final JVar varParam = batch.varParam();
+                final JVar param = parallel.varParam(varParam.mods().getValue() | JMod.FINAL,
+                    varParam.type().elementType(), varParam.name());
+                parallel.javadoc().addParam(param).add(doc(templateParams.next()));
+                params.add(param);
+            }
+            batch.getThrows().forEach(twn -> {
+                // checked exceptions cannot escape the lambda; propagate wrapped:
+                parallel.javadoc().addThrows(UndeclaredThrowableException.class).append("wrapping any ").append(twn)
+                    .append(" thrown");
+            });
+
+            final JBlock body = parallel.body();
+            // the pool, being of another class, cannot reach the snap-in's failures:
+            body.add(codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(delegates));
+            // aim for several chunks per stripe to balance the load:
+            final JVar chunk = body.decl(JMod.FINAL, codeModel.INT, localName(parallel, "chunk"),
+                codeModel.ref(Math.class).staticInvoke("max").arg(JExpr.lit(1)).arg(JOp.div(delegates.invoke("size"),
+                    JOp.mul(JExpr.invoke("size"), JExpr.lit(CHUNKS_PER_STRIPE)))));
+
+            final JLambda lambda = new JLambda();
+            final JLambdaParam index = lambda.addParam(localName(parallel, "index"));
+            final JVar from =
+                lambda.body().decl(JMod.FINAL, codeModel.INT, localName(parallel, "from"), JOp.mul(index, chunk));
+
+            final JInvocation invocation = JExpr.invoke(JExpr.invoke("get"), batch.name())
+                .arg(delegates.invoke("subList").arg(from).arg(codeModel.ref(Math.class).staticInvoke("min")
+                    .arg(delegates.invoke("size")).arg(JOp.plus(from, chunk))));
+            params.forEach(invocation::arg);
+            // explicit type arguments, as inference does not reach into the lambda:
+            parallel.typeParamList().forEach(invocation::narrow);
+
+            final IJExpression chunks = JOp.div(JOp.minus(JOp.plus(delegates.invoke("size"), chunk), JExpr.lit(1)),
+                chunk);
+            final JInvocation stream = codeModel.ref(IntStream.class).staticInvoke("range").arg(JExpr.lit(0))
+                .arg(chunks).invoke("parallel");
+
+            final JBlock call;
+            if (batch.getThrows().isEmpty()) {
+                call = lambda.body();
+            } else {
+                final JTryBlock tryBlock = lambda.body()._try();
+                call = tryBlock.body();
+                final JCatchBlock rethrow = tryBlock._catch(codeModel.ref(RuntimeException.class));
+                rethrow.body()._throw(rethrow.param("e"));
+                final JCatchBlock wrap = tryBlock._catch(codeModel.ref(Exception.class));
+                wrap.body()._throw(_new(codeModel.ref(UndeclaredThrowableException.class)).arg(wrap.param("e")));
+            }
+            if (codeModel.VOID == batch.type()) {
+                call.add(invocation);
+                body.add(stream.invoke("forEach").arg(lambda));
+            } else {
+                call._return(invocation);
+                body._return(stream.invoke("mapToObj").arg(lambda)
+                    .invoke("flatMap").arg(new JLambdaMethodRef(codeModel.ref(List.class), "stream"))
+                    .invoke("collect").arg(codeModel.ref(Collectors.class).staticInvoke("toList")));
+                parallel.javadoc().addReturn().add(String.format("{@link List} of results in {@code %s} order",
+                    delegates.name()));
+            }
+        }
+
+        private Map<String, String[]> docThrows(ExecutableElement templateMethod) {
+            return Stream.of(templateMethod.getAnnotationsByType(DocThrow.class))
+                .collect(Collectors.toMap(dt -> getClassName(dt, DocThrow::type), DocThrow::value));
+        }
+
+        /**
+         * Define the private nested class holding the cold methods that throw on behalf of the snap-in and its nested
+         * classes, with those common to all snap-ins declared up front. Any others are added upon first use.
+         *
+         * @param snapin
+         */
+        private void defineFailures(JDefinedClass snapin) {
+            try {
+                failures = snapin._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, FAILURES_CLASS_NAME);
+            } catch (Exception e) {
+                error(e, "Unable to define class %s.%s:", snapin.fullName(), FAILURES_CLASS_NAME);
+                throw new IllegalStateException(e);
+            }
+            failures.javadoc().add("Cold paths by which the snap-in fails.");
+            failures.constructor(JMod.PRIVATE);
+
+            nullDelegate();
+            noDelegate();
+            reentered();
+            if (annotation.session()) {
+                sessionClosed();
+            }
+        }
+
+        private JInvocation nullDelegate() {
+            return fail("nullDelegate", NullPointerException.class, null);
+        }
+
+        private JInvocation noDelegate() {
+            return fail("noDelegate", IllegalStateException.class, null);
+        }
+
+        private JInvocation reentered() {
+            return fail("reentered", IllegalStateException.class, "Re-entry not permitted");
+        }
+
+        private JInvocation sessionClosed() {
+            return fail("sessionClosed", IllegalStateException.class, "Session closed");
+        }
+
+        /**
+         * Invoke a static method of the {@code Failures} class, defined on first use, that throws a new
+         * {@code exceptionType}. Building exceptions only on these cold paths keeps the bytecode of the generated
+         * callers within the JIT's inlining thresholds. The method is package-private, though its class is private,
+         * so that the snap-in and its nested classes call it without accessors, yet it forms no part of the snap-in's
+         * API and cannot collide with the methods of the delegate type or template.
+         *
+         * @param name of the method
+         * @param exceptionType
+         * @param message optional
+         * @return {@link JInvocation}
+         */
+        private JInvocation fail(String name, Class<? extends RuntimeException> exceptionType, String message) {
+            final JMethod thrower = throwers.computeIfAbsent(name, k -> {
+                final JMethod result = failures.method(JMod.STATIC, codeModel.VOID, k);
+                final JInvocation exception = _new(codeModel.ref(exceptionType));
+                if (message != null) {
+                    exception.arg(message);
+                }
+                result.body()._throw(exception);
+                result.javadoc().add("Throw a new ");
+                result.javadoc().add(codeModel.ref(exceptionType));
+                result.javadoc().add(".");
+                return result;
+            });
+            return failures.staticInvoke(thrower);
+        }
+
+        /**
+         * Define the metrics of the snap-in: the {@code Stats} snapshot class and the {@code StatsMXBean} interface,
+         * the private {@code Metric} class of which an instance is kept per measured method, and the snap-in methods
+         * by which they are accessed. The metric names are assigned once all measured methods are known.
+         *
+         * @param snapin
+         */
+        private void defineMetrics(JDefinedClass snapin) {
+            final JDefinedClass stats;
+            final JDefinedClass metric;
+            final JDefinedClass mxbean;
+            try {
+                stats = snapin._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, STATS_CLASS_NAME);
+                metric = snapin._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, METRIC_CLASS_NAME);
+                mxbean = snapin._interface(JMod.PUBLIC, STATS_MXBEAN_NAME);
+            } catch (Exception e) {
+                error(e, "Unable to define metrics classes of %s:", snapin.fullName());
+                throw new IllegalStateException(e);
+            }
+            final AbstractJClass statsMap = codeModel.ref(Map.class).narrow(codeModel.ref(String.class), stats);
+
+            // Stats:
+            stats.javadoc().add(String.format("Invocation statistics of a {@link %s} method. The call count and total",
+                snapin.name()));
+            stats.javadoc().add(" time are read separately, so are not an atomic snapshot under concurrent use.");
+            final JFieldVar calls = stats.field(JMod.PRIVATE | JMod.FINAL, codeModel.LONG, "calls");
+            final JFieldVar nanos = stats.field(JMod.PRIVATE | JMod.FINAL, codeModel.LONG, "nanos");
+            final JMethod statsCtor = stats.constructor(JMod.NONE);
+            statsCtor.body().assign(JExpr.ref(_this(), calls), statsCtor.param(JMod.FINAL, codeModel.LONG, "calls"));
+            statsCtor.body().assign(JExpr.ref(_this(), nanos), statsCtor.param(JMod.FINAL, codeModel.LONG, "nanos"));
+
+            final JMethod getCalls = stats.method(JMod.PUBLIC, codeModel.LONG, "getCalls");
+            getCalls.javadoc().add("Get the number of completed calls.");
+            getCalls.javadoc().addReturn().add("long");
+            getCalls.body()._return(calls);
+
+            final JMethod getTotalNanos = stats.method(JMod.PUBLIC, codeModel.LONG, "getTotalNanos");
+            getTotalNanos.javadoc().add("Get the total time spent in completed calls, in nanoseconds.");
+            getTotalNanos.javadoc().addReturn().add("long");
+            getTotalNanos.body()._return(nanos);
+
+            final JMethod getMeanNanos = stats.method(JMod.PUBLIC, codeModel.DOUBLE, "getMeanNanos");
+            getMeanNanos.javadoc().add("Get the mean time spent per completed call, in nanoseconds.");
+            getMeanNanos.javadoc().addReturn().add("double");
+            getMeanNanos.body()._return(JOp.cond(eq(calls, JExpr.lit(0)), JExpr.lit(0.0),
+                JOp.div(JExpr.cast(codeModel.DOUBLE, nanos), calls)));
+
+            final JMethod toString = stats.method(JMod.PUBLIC, String.class, "toString");
+            toString.annotate(Override.class);
+            toString.javadoc().add("{@inheritDoc}");
+            toString.body()._return(codeModel.ref(String.class).staticInvoke("format")
+                .arg("calls=%d, totalNanos=%d, meanNanos=%.1f").arg(calls).arg(nanos).arg(JExpr.invoke(getMeanNanos)));
+
+            // Metric:
+            final AbstractJClass longAdder = codeModel.ref(LongAdder.class);
+            final JFieldVar callCount =
+                metric.field(JMod.PRIVATE | JMod.FINAL, longAdder, "calls", _new(longAdder));
+            final JFieldVar totalNanos =
+                metric.field(JMod.PRIVATE | JMod.FINAL, longAdder, "nanos", _new(longAdder));
+
+            final JMethod record = metric.method(JMod.NONE, codeModel.VOID, "record");
+            final JVar start = record.param(JMod.FINAL, codeModel.LONG, "start");
+            record.body().add(totalNanos.invoke("add").arg(
+                JOp.minus(codeModel.ref(System.class).staticInvoke("nanoTime"), start)));
+            record.body().add(callCount.invoke("increment"));
+
+            metric.method(JMod.NONE, stats, "stats").body()
+                ._return(_new(stats).arg(callCount.invoke("sum")).arg(totalNanos.invoke("sum")));
+
+            final JMethod metricReset = metric.method(JMod.NONE, codeModel.VOID, "reset");
+            metricReset.body().add(callCount.invoke("reset"));
+            metricReset.body().add(totalNanos.invoke("reset"));
+
+            // snap-in fields:
+            metricNamesField = snapin.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+                codeModel.ref(String.class).array(), METRIC_NAMES_FIELD_NAME);
+            final JFieldVar metrics = snapin.field(JMod.PRIVATE | JMod.FINAL, metric.array(), METRICS_FIELD_NAME,
+                JExpr.newArray(metric, JExpr.ref(metricNamesField, "length")));
+            final JForLoop init = snapin.instanceInit()._for();
+            final JVar i = init.init(codeModel.INT, "i", JExpr.lit(0));
+            init.test(JOp.lt(i, JExpr.ref(metrics, "length")));
+            init.update(JOp.incr(i));
+            init.body().assign(JExpr.component(metrics, i), _new(metric));
+
+            // snap-in methods:
+            final JMethod snapinStats = snapin.method(JMod.PUBLIC | JMod.FINAL, statsMap, "snapinStats");
+            snapinStats.javadoc().add(String.format(
+                "Get the {@link %s} of each measured method of this {@link %s}: wrapper, batch and interface methods,",
+                STATS_CLASS_NAME, snapin.name()));
+            snapinStats.javadoc().add(" the latter including those of any bound views, with session calls counted");
+            snapinStats.javadoc().add(" as calls of the corresponding wrapper methods.");
+            snapinStats.javadoc().addReturn().add("unmodifiable {@link Map} of method signature to {@link Stats}");
+            final JVar result = snapinStats.body().decl(JMod.FINAL, statsMap, "result",
+                _new(codeModel.ref(LinkedHashMap.class).narrow(codeModel.ref(String.class), stats)));
+            final JForLoop each = snapinStats.body()._for();
+            final JVar index = each.init(codeModel.INT, "i", JExpr.lit(0));
+            each.test(JOp.lt(index, JExpr.ref(metrics, "length")));
+            each.update(JOp.incr(index));
+            each.body().add(result.invoke("put").arg(JExpr.component(metricNamesField, index))
+                .arg(JExpr.component(metrics, index).invoke("stats")));
+            snapinStats.body()._return(codeModel.ref(Collections.class).staticInvoke("unmodifiableMap").arg(result));
+
+            final JMethod reset = snapin.method(JMod.PUBLIC | JMod.FINAL, codeModel.VOID, "resetSnapinStats");
+            reset.javadoc().add("Reset the statistics of this snap-in.");
+            final JForEach resetEach = reset.body().forEach(metric, "metric", metrics);
+            resetEach.body().add(resetEach.var().invoke("reset"));
+
+            // StatsMXBean:
+            mxbean.javadoc().add(String.format("JMX view of the statistics of a {@link %s}.", snapin.name()));
+            final JMethod getStats = mxbean.method(JMod.NONE, statsMap, "getStats");
+            getStats.javadoc().add("Get the statistics per method.");
+            getStats.javadoc().addReturn().add("{@link Map}");
+            final JMethod resetStats = mxbean.method(JMod.NONE, codeModel.VOID, "resetStats");
+            resetStats.javadoc().add("Reset the statistics.");
+
+            final JMethod viewMethod = snapin.method(JMod.PUBLIC | JMod.FINAL, mxbean, "snapinStatsMXBean");
+            viewMethod.javadoc().add(String.format(
+                "Get a {@link %s} view of the statistics of this snap-in, suitable for registration with an",
+                STATS_MXBEAN_NAME));
+            viewMethod.javadoc().add(" {@link javax.management.MBeanServer}.");
+            viewMethod.javadoc().addReturn().add(STATS_MXBEAN_NAME);
+            final JAnonymousClass view = codeModel.anonymousClass(mxbean);
+            final JMethod viewGetStats = view.method(JMod.PUBLIC, statsMap, getStats.name());
+            viewGetStats.annotate(Override.class);
+            viewGetStats.body()._return(JExpr.invoke(snapin.staticRef("this"), snapinStats));
+            final JMethod viewReset = view.method(JMod.PUBLIC, codeModel.VOID, resetStats.name());
+            viewReset.annotate(Override.class);
+            viewReset.body().add(JExpr.invoke(snapin.staticRef("this"), reset));
+            viewMethod.body()._return(_new(view));
+        }
+
+        /**
+         * Learn whether a parameter of {@code type} may be passed an array.
+         *
+         * @param type
+         * @return boolean
+         */
+        private boolean mayBeArray(AbstractJType type) {
+            return type.isArray() || type instanceof JTypeVar || codeModel.ref(Object.class).equals(type)
+                || codeModel.ref(Cloneable.class).equals(type) || codeModel.ref(Serializable.class).equals(type);
+        }
+
+        /**
+         * Define the private {@code Memo} class, a bounded cache of which an instance is kept per memoized wrapper
+         * method, along with its {@code Key} class and the snap-in field holding the instances. The instances are
+         * added as the memoized wrapper methods are defined. A monitor or lock guarded snap-in synchronizes its
+         * caches; a {@link Concurrency#THREAD_CONFINED} snap-in keeps a set per thread, and one with no concurrency
+         * guard leaves them unguarded, as it does the delegate.
+         *
+         * @param snapin
+         */
+        private void defineMemo(JDefinedClass snapin) {
+            final JDefinedClass entry;
+            try {
+                memoClass = snapin._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, MEMO_CLASS_NAME);
+                memoKeyClass = memoClass._class(JMod.STATIC | JMod.FINAL, MEMO_KEY_CLASS_NAME);
+                entry = memoClass._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, "Entry");
+            } catch (Exception e) {
+                error(e, "Unable to define memo classes of %s:", snapin.fullName());
+                throw new IllegalStateException(e);
+            }
+            final AbstractJClass object = codeModel.ref(Object.class);
+            final AbstractJClass arrays = codeModel.ref(Arrays.class);
+
+            // Key: the identity of the delegate and the values of the arguments:
+            final JFieldVar delegate = memoKeyClass.field(JMod.PRIVATE | JMod.FINAL, object, DELEGATE_FIELD_NAME);
+            final JFieldVar args = memoKeyClass.field(JMod.PRIVATE | JMod.FINAL, object.array(), "args");
+            final JFieldVar hash = memoKeyClass.field(JMod.PRIVATE | JMod.FINAL, codeModel.INT, "hash");
+            final JMethod keyCtor = memoKeyClass.constructor(JMod.NONE);
+            final JVar delegateParam = keyCtor.param(JMod.FINAL, object, DELEGATE_FIELD_NAME);
+            final JVar argsParam = keyCtor.param(JMod.FINAL, object.array(), "args");
+            keyCtor.body().assign(JExpr.ref(_this(), delegate), delegateParam);
+            keyCtor.body().assign(JExpr.ref(_this(), args), argsParam);
+            keyCtor.body().assign(JExpr.ref(_this(), hash),
+                JOp.plus(JOp.mul(JExpr.lit(31), codeModel.ref(System.class).staticInvoke("identityHashCode")
+                    .arg(delegateParam)), arrays.staticInvoke("deepHashCode").arg(argsParam)));
+
+            // deep copy of an array argument:
+            final AbstractJClass reflectArray = codeModel.ref(Array.class);
+            final JMethod copy = memoKeyClass.method(JMod.STATIC, object, "copy");
+            final JVar arg = copy.param(JMod.FINAL, object, "arg");
+            copy.body()._if(eq(arg, _null()).cor(arg.invoke("getClass").invoke("isArray").not()))._then()._return(arg);
+            final JVar length = copy.body().decl(JMod.FINAL, codeModel.INT, "length",
+                reflectArray.staticInvoke("getLength").arg(arg));
+            final JVar copied = copy.body().decl(JMod.FINAL, object, "result", reflectArray.staticInvoke("newInstance")
+                .arg(arg.invoke("getClass").invoke("getComponentType")).arg(length));
+            final JConditional objects = copy.body()._if(arg._instanceof(object.array()));
+            final JForLoop elements = objects._then()._for();
+            final JVar i = elements.init(codeModel.INT, "i", JExpr.lit(0));
+            elements.test(JOp.lt(i, length));
+            elements.update(JOp.incr(i));
+            elements.body().assign(JExpr.cast(object.array(), copied).component(i),
+                JExpr.invoke(copy).arg(JExpr.cast(object.array(), arg).component(i)));
+            objects._else().add(codeModel.ref(System.class).staticInvoke("arraycopy").arg(arg).arg(JExpr.lit(0))
+                .arg(copied).arg(JExpr.lit(0)).arg(length));
+            copy.body()._return(copied);
+
+            final JMethod hashCode = memoKeyClass.method(JMod.PUBLIC, codeModel.INT, "hashCode");
+            hashCode.annotate(Override.class);
+            hashCode.body()._return(hash);
+
+            final JMethod equals = memoKeyClass.method(JMod.PUBLIC, codeModel.BOOLEAN, "equals");
+            equals.annotate(Override.class);
+            final JVar obj = equals.param(JMod.FINAL, object, "obj");
+            equals.body()._if(obj._instanceof(memoKeyClass).not())._then()._return(JExpr.FALSE);
+            final JVar other = equals.body().decl(JMod.FINAL, memoKeyClass, "other", JExpr.cast(memoKeyClass, obj));
+            equals.body()._return(eq(JExpr.ref(other, delegate), delegate)
+                .cand(arrays.staticInvoke("deepEquals").arg(JExpr.ref(other, args)).arg(args)));
+
+            // Entry:
+            final JFieldVar value = entry.field(JMod.PRIVATE | JMod.FINAL, object, "value");
+            final JFieldVar created = entry.field(JMod.PRIVATE | JMod.FINAL, codeModel.LONG, "created");
+            final JFieldVar hits = entry.field(JMod.PRIVATE, codeModel.LONG, "hits");
+            final JMethod entryCtor = entry.constructor(JMod.NONE);
+            entryCtor.body().assign(JExpr.ref(_this(), value), entryCtor.param(JMod.FINAL, object, "value"));
+            entryCtor.body().assign(JExpr.ref(_this(), created),
+                entryCtor.param(JMod.FINAL, codeModel.LONG, "created"));
+
+            // Memo:
+            missField = memoClass.field(JMod.STATIC | JMod.FINAL, object, MISS_FIELD_NAME, _new(object));
+            final JFieldVar size = memoClass.field(JMod.PRIVATE | JMod.FINAL, codeModel.INT, "size");
+            final JFieldVar lfu = memoClass.field(JMod.PRIVATE | JMod.FINAL, codeModel.BOOLEAN, "lfu");
+            final JFieldVar expiryNanos = memoClass.field(JMod.PRIVATE | JMod.FINAL, codeModel.LONG, "expiryNanos");
+            final AbstractJClass entryMap = codeModel.ref(LinkedHashMap.class).narrow(memoKeyClass, entry);
+            final JFieldVar entries = memoClass.field(JMod.PRIVATE | JMod.FINAL, entryMap, "entries");
+
+            final JMethod memoCtor = memoClass.constructor(JMod.NONE);
+            Stream.of(size, lfu, expiryNanos).forEach(f -> memoCtor.body().assign(JExpr.ref(_this(), f),
+                memoCtor.param(JMod.FINAL, f.type(), f.name())));
+            // in access order, unless evicting by frequency:
+            memoCtor.body().assign(JExpr.ref(_this(), entries),
+                _new(codeModel.ref(LinkedHashMap.class).narrowEmpty()).arg(JExpr.lit(16)).arg(JExpr.lit(0.75f))
+                    .arg(lfu.not()));
+
+            final IJExpression now = codeModel.ref(System.class).staticInvoke("nanoTime");
+
+            final int guard = concurrency == Concurrency.SYNCHRONIZED || concurrency == Concurrency.REENTRANT_LOCK
+                ? JMod.SYNCHRONIZED : JMod.NONE;
+            final JMethod get = memoClass.method(guard, object, "get");
+            final JVar getKey = get.param(JMod.FINAL, memoKeyClass, "key");
+            final JVar found = get.body().decl(JMod.FINAL, entry, "entry", entries.invoke("get").arg(getKey));
+            get.body()._if(eq(found, _null()))._then()._return(missField);
+            final JConditional expired = get.body()._if(JOp.gt(expiryNanos, JExpr.lit(0L))
+                .cand(JOp.gte(JOp.minus(now, JExpr.ref(found, created)), expiryNanos)));
+            expired._then().add(entries.invoke("remove").arg(getKey));
+            expired._then()._return(missField);
+            get.body().assignPlus(JExpr.ref(found, hits), JExpr.lit(1L));
+            get.body()._return(JExpr.ref(found, value));
+
+            final JMethod put = memoClass.method(guard, codeModel.VOID, "put");
+            final JVar putKey = put.param(JMod.FINAL, memoKeyClass, "key");
+            final JVar putValue = put.param(JMod.FINAL, object, "value");
+            final JBlock evict = put.body()._if(JOp.gte(entries.invoke("size"), size)
+                .cand(entries.invoke("containsKey").arg(putKey).not()))._then();
+            // the first entry is the least recently used; by frequency, the oldest of the least used:
+            final JVar victim = evict.decl(memoKeyClass, "victim", _null());
+            final JVar fewest = evict.decl(codeModel.LONG, "fewest", codeModel.ref(Long.class).staticRef("MAX_VALUE"));
+            final JForEach each = evict.forEach(codeModel.ref(Map.Entry.class).narrow(memoKeyClass, entry), "e",
+                entries.invoke("entrySet"));
+            final JBlock fewer = each.body()._if(JOp.lt(each.var().invoke("getValue").ref(hits), fewest))._then();
+            fewer.assign(victim, each.var().invoke("getKey"));
+            fewer.assign(fewest, each.var().invoke("getValue").ref(hits));
+            each.body()._if(lfu.not())._then()._break();
+            evict.add(entries.invoke("remove").arg(victim));
+            put.body().add(entries.invoke("put").arg(putKey).arg(_new(entry).arg(putValue)
+                .arg(JOp.cond(JOp.gt(expiryNanos, JExpr.lit(0L)), now, JExpr.lit(0L)))));
+
+            // snap-in field:
+            memos = JExpr.newArray(memoClass);
+            if (concurrency == Concurrency.THREAD_CONFINED) {
+                final JLambda perThread = new JLambda();
+                perThread.body()._return(memos);
+                snapin.field(JMod.PRIVATE | JMod.FINAL, codeModel.ref(ThreadLocal.class).narrow(memoClass.array()),
+                    MEMOS_FIELD_NAME, codeModel.ref(ThreadLocal.class).staticInvoke("withInitial").arg(perThread));
+            } else {
+                snapin.field(JMod.PRIVATE | JMod.FINAL, memoClass.array(), MEMOS_FIELD_NAME, memos);
+            }
+        }
+
+        /**
+         * Define the {@code Interceptor} interface of the snap-in, along with the {@code volatile} field holding any
+         * installed instance and the snap-in methods by which it is accessed.
+         *
+         * @param snapin
+         */
+        private void defineInterceptor(JDefinedClass snapin) {
+            final JDefinedClass interceptor;
+            try {
+                interceptor = snapin._interface(JMod.PUBLIC, INTERCEPTOR_CLASS_NAME);
+            } catch (Exception e) {
+                error(e, "Unable to define interceptor interface of %s:", snapin.fullName());
+                throw new IllegalStateException(e);
+            }
+            interceptor.javadoc().add(String.format(
+                "Intercepts the calls of a {@link %s}, each identified by the signature of the called method. Calls of",
+                snapin.name()));
+            interceptor.javadoc().add(" bound views and sessions are reported as calls of the corresponding snap-in");
+            interceptor.javadoc().add(" methods. Implementations are called on the calling thread, within the monitor");
+            interceptor.javadoc().add(" of any {@code synchronized} method, and should be quick and thread-safe.");
+
+            final JMethod before = interceptor.method(JMod.DEFAULT, codeModel.VOID, "before");
+            before.javadoc().add("Called before a method is entered.");
+            before.javadoc().addParam(before.param(JMod.FINAL, String.class, "method")).add("signature");
+
+            final JMethod after = interceptor.method(JMod.DEFAULT, codeModel.VOID, "after");
+            after.javadoc().add("Called after a method has completed, normally or otherwise.");
+            after.javadoc().addParam(after.param(JMod.FINAL, String.class, "method")).add("signature");
+
+            final JMethod failed = interceptor.method(JMod.DEFAULT, codeModel.VOID, "failed");
+            failed.javadoc().add("Called when a method has thrown {@code failure}, before {@link #after(String)}.");
+            failed.javadoc().addParam(failed.param(JMod.FINAL, String.class, "method")).add("signature");
+            failed.javadoc().addParam(failed.param(JMod.FINAL, Throwable.class, "failure")).add("thrown");
+
+            interceptorField = snapin.field(JMod.PRIVATE | JMod.VOLATILE, interceptor, INTERCEPTOR_FIELD_NAME);
+
+            final JMethod get = snapin.method(JMod.PUBLIC | JMod.FINAL, interceptor, "snapinInterceptor");
+            get.javadoc().add("Get the installed interceptor.");
+            get.javadoc().addReturn().add(String.format("%s, possibly {@code null}", INTERCEPTOR_CLASS_NAME));
+            get.body()._return(interceptorField);
+
+            final JMethod set = snapin.method(JMod.PUBLIC | JMod.FINAL, codeModel.VOID, "snapinInterceptor");
+            set.javadoc().add("Install an interceptor, replacing any previously installed; calls in progress may or");
+            set.javadoc().add(" may not report to it.");
+            final JVar param = set.param(JMod.FINAL, interceptor, INTERCEPTOR_FIELD_NAME);
+            set.javadoc().addParam(param).add("{@code null} to remove");
+            set.body().assign(JExpr.ref(_this(), interceptorField), param);
+        }
+
+        /**
+         * Define the measurement of contention for the guard of the snap-in: the {@code ContentionStats} snapshot
+         * class, the private {@code Contention} class of which an instance is kept per wrapper method, any
+         * {@code ContentionEvent} for JDK Flight Recorder, and the snap-in method by which the statistics are
+         * accessed. The wrapper names are assigned once all wrapper methods are known.
+         *
+         * @param snapin
+         */
+        private void defineContention(JDefinedClass snapin) {
+            final JDefinedClass stats;
+            final JDefinedClass event;
+            try {
+                stats = snapin._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, CONTENTION_STATS_CLASS_NAME);
+                contentionClass = snapin._class(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, CONTENTION_CLASS_NAME);
+                event = annotation.contentionEvents()
+                    ? snapin._class(JMod.STATIC | JMod.FINAL, CONTENTION_EVENT_CLASS_NAME) : null;
+            } catch (Exception e) {
+                error(e, "Unable to define contention classes of %s:", snapin.fullName());
+                throw new IllegalStateException(e);
+            }
+            final String[][] properties = { { "samples", "Get the number of sampled calls." },
+                { "totalWaitNanos", "Get the total time sampled calls waited to enter the guard, in nanoseconds." },
+                { "totalHoldNanos", "Get the total time sampled calls held the guard, in nanoseconds." },
+                { "maxWaitNanos", "Get the longest time a sampled call waited to enter the guard, in nanoseconds." },
+                { "maxWaiters", "Get the greatest number of calls waiting at once to enter the guard." } };
+
+            // ContentionStats:
+            stats.javadoc().add(String.format(
+                "Contention statistics of a {@link %s} wrapper method. The statistics are read separately, so are not",
+                snapin.name()));
+            stats.javadoc().add(" an atomic snapshot under concurrent use.");
+            final JMethod statsCtor = stats.constructor(JMod.NONE);
+            for (String[] property : properties) {
+                final JFieldVar field = stats.field(JMod.PRIVATE | JMod.FINAL, codeModel.LONG, property[0]);
+                statsCtor.body().assign(JExpr.ref(_this(), field),
+                    statsCtor.param(JMod.FINAL, codeModel.LONG, property[0]));
+
+                final JMethod getter = stats.method(JMod.PUBLIC, codeModel.LONG,
+                    "get" + Character.toUpperCase(property[0].charAt(0)) + property[0].substring(1));
+                getter.javadoc().add(property[1]);
+                getter.javadoc().addReturn().add("long");
+                getter.body()._return(field);
+            }
+            final JMethod toString = stats.method(JMod.PUBLIC, String.class, "toString");
+            toString.annotate(Override.class);
+            toString.javadoc().add("{@inheritDoc}");
+            final JInvocation format = codeModel.ref(String.class).staticInvoke("format")
+                .arg(Stream.of(properties).map(p -> p[0] + "=%d").collect(Collectors.joining(", ")));
+            Stream.of(properties).map(p -> JExpr.ref(_this(), p[0])).forEach(format::arg);
+            toString.body()._return(format);
+
+            // ContentionEvent:
+            if (event != null) {
+                event._extends(codeModel.ref(JFR_EVENT));
+                event.annotate(codeModel.ref("jdk.jfr.Name")).param("value", snapin.fullName() + ".Contention");
+                event.annotate(codeModel.ref("jdk.jfr.Label")).param("value", snapin.name() + " Contention");
+                event.annotate(codeModel.ref("jdk.jfr.Category")).paramArray("value", "Snap-in");
+                event.annotate(codeModel.ref("jdk.jfr.StackTrace")).param("value", false);
+                event.javadoc().add(String.format(
+                    "JDK Flight Recorder event recording the contention of a sampled call of a {@link %s} wrapper",
+                    snapin.name()));
+                event.javadoc().add(" method.");
+                event.field(JMod.NONE, String.class, "method").annotate(codeModel.ref("jdk.jfr.Label"))
+                    .param("value", "Method");
+                Stream.of("waitTime", "holdTime").forEach(name -> {
+                    final JFieldVar field = event.field(JMod.NONE, codeModel.LONG, name);
+                    field.annotate(codeModel.ref("jdk.jfr.Label")).param("value",
+                        Character.toUpperCase(name.charAt(0)) + name.substring(1, 4) + " Time");
+                    field.annotate(codeModel.ref("jdk.jfr.Timespan"));
+                });
+                event.field(JMod.NONE, codeModel.LONG, "waiters").annotate(codeModel.ref("jdk.jfr.Label"))
+                    .param("value", "Waiters");
+            }
+
+            // Contention:
+            final AbstractJClass atomicInteger = codeModel.ref(AtomicInteger.class);
+            final AbstractJClass longAdder = codeModel.ref(LongAdder.class);
+            final AbstractJClass longAccumulator = codeModel.ref(LongAccumulator.class);
+            final IJExpression max = new JLambdaMethodRef(codeModel.ref(Math.class), "max");
+
+            final JFieldVar eventType = event == null ? null
+                : contentionClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, codeModel.ref("jdk.jfr.EventType"),
+                    "EVENT_TYPE", codeModel.ref("jdk.jfr.EventType").staticInvoke("getEventType")
+                        .arg(JExpr.dotclass(event)));
+            final JFieldVar method = contentionClass.field(JMod.PRIVATE | JMod.FINAL, String.class, "method");
+            // the number of calls that have requested, but not yet released, the guard:
+            final JFieldVar occupancy =
+                contentionClass.field(JMod.PRIVATE | JMod.FINAL, atomicInteger, OCCUPANCY_FIELD_NAME);
+            final JFieldVar samples =
+                contentionClass.field(JMod.PRIVATE | JMod.FINAL, longAdder, "samples", _new(longAdder));
+            final JFieldVar waitNanos =
+                contentionClass.field(JMod.PRIVATE | JMod.FINAL, longAdder, "waitNanos", _new(longAdder));
+            final JFieldVar holdNanos =
+                contentionClass.field(JMod.PRIVATE | JMod.FINAL, longAdder, "holdNanos", _new(longAdder));
+            final JFieldVar maxWaitNanos = contentionClass.field(JMod.PRIVATE | JMod.FINAL, longAccumulator,
+                "maxWaitNanos", _new(longAccumulator).arg(max).arg(JExpr.lit(0L)));
+            final JFieldVar maxWaiters = contentionClass.field(JMod.PRIVATE | JMod.FINAL, longAccumulator,
+                "maxWaiters", _new(longAccumulator).arg(max).arg(JExpr.lit(0L)));
+
+            final JMethod ctor = contentionClass.constructor(JMod.NONE);
+            ctor.body().assign(JExpr.ref(_this(), method), ctor.param(JMod.FINAL, String.class, "method"));
+            ctor.body().assign(JExpr.ref(_this(), occupancy),
+                ctor.param(JMod.FINAL, atomicInteger, OCCUPANCY_FIELD_NAME));
+
+            // request: the calls found ahead of this one are those waiting, now including this one:
+            final JMethod request = contentionClass.method(JMod.NONE, codeModel.LONG, "request");
+            request.body().add(maxWaiters.invoke("accumulate")
+                .arg(JOp.minus(occupancy.invoke("incrementAndGet"), JExpr.lit(1))));
+            final JInvocation nanoTime = codeModel.ref(System.class).staticInvoke("nanoTime");
+            if (annotation.contentionSampling() == 1) {
+                request.body()._return(nanoTime);
+            } else {
+                request.body()._return(JOp.cond(
+                    eq(codeModel.ref(ThreadLocalRandom.class).staticInvoke("current").invoke("nextInt")
+                        .arg(JExpr.lit(annotation.contentionSampling())), JExpr.lit(0)),
+                    nanoTime, JExpr.lit(0L)));
+            }
+            // acquired:
+            final JMethod acquired = contentionClass.method(JMod.NONE, codeModel.LONG, "acquired");
+            final JVar acquiredRequested = acquired.param(JMod.FINAL, codeModel.LONG, "requested");
+            acquired.body()._return(JOp.cond(eq(acquiredRequested, JExpr.lit(0L)), JExpr.lit(0L), nanoTime));
+
+            // release:
+            final JMethod release = contentionClass.method(JMod.NONE, codeModel.VOID, "release");
+            final JVar requested = release.param(JMod.FINAL, codeModel.LONG, "requested");
+            final JVar acquiredAt = release.param(JMod.FINAL, codeModel.LONG, "acquired");
+            release.body().add(occupancy.invoke("decrementAndGet"));
+            release.body()._if(eq(requested, JExpr.lit(0L)))._then()._return();
+            final JVar wait = release.body().decl(JMod.FINAL, codeModel.LONG, "wait", JOp.minus(acquiredAt, requested));
+            final JVar hold = release.body().decl(JMod.FINAL, codeModel.LONG, "hold", JOp.minus(nanoTime, acquiredAt));
+            release.body().add(samples.invoke("increment"));
+            release.body().add(waitNanos.invoke("add").arg(wait));
+            release.body().add(holdNanos.invoke("add").arg(hold));
+            release.body().add(maxWaitNanos.invoke("accumulate").arg(wait));
+            if (event != null) {
+                // allocate an event only while recording:
+                final JBlock record = release.body()._if(eventType.invoke("isEnabled"))._then();
+                final JVar e = record.decl(JMod.FINAL, event, "event", _new(event));
+                record.assign(JExpr.ref(e, "method"), method);
+                record.assign(JExpr.ref(e, "waitTime"), wait);
+                record.assign(JExpr.ref(e, "holdTime"), hold);
+                record.assign(JExpr.ref(e, "waiters"), occupancy.invoke("get"));
+                record.add(e.invoke("commit"));
+            }
+
+            contentionClass.method(JMod.NONE, stats, "stats").body()
+                ._return(_new(stats).arg(samples.invoke("sum")).arg(waitNanos.invoke("sum"))
+                    .arg(holdNanos.invoke("sum")).arg(maxWaitNanos.invoke("get")).arg(maxWaiters.invoke("get")));
+
+            // snap-in fields:
+            contentionNamesField = snapin.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+                codeModel.ref(String.class).array(), CONTENTION_NAMES_FIELD_NAME);
+            final JFieldVar waitingField =
+                snapin.field(JMod.PRIVATE | JMod.FINAL, atomicInteger, OCCUPANCY_FIELD_NAME, _new(atomicInteger));
+            final JFieldVar contention = snapin.field(JMod.PRIVATE | JMod.FINAL, contentionClass.array(),
+                CONTENTION_FIELD_NAME, JExpr.newArray(contentionClass, JExpr.ref(contentionNamesField, "length")));
+            final JForLoop init = snapin.instanceInit()._for();
+            final JVar i = init.init(codeModel.INT, "i", JExpr.lit(0));
+            init.test(JOp.lt(i, JExpr.ref(contention, "length")));
+            init.update(JOp.incr(i));
+            init.body().assign(JExpr.component(contention, i),
+                _new(contentionClass).arg(JExpr.component(contentionNamesField, i)).arg(waitingField));
+
+            // snap-in method:
+            final AbstractJClass statsMap = codeModel.ref(Map.class).narrow(codeModel.ref(String.class), stats);
+            final JMethod snapinContention = snapin.method(JMod.PUBLIC | JMod.FINAL, statsMap, "snapinContention");
+            snapinContention.javadoc().add(String.format(
+                "Get the {@link %s} of each wrapper and batch method of this {@link %s}.", CONTENTION_STATS_CLASS_NAME,
+                snapin.name()));
+            snapinContention.javadoc().addReturn()
+                .add(String.format("unmodifiable {@link Map} of method signature to {@link %s}",
+                    CONTENTION_STATS_CLASS_NAME));
+            final JVar result = snapinContention.body().decl(JMod.FINAL, statsMap, "result",
+                _new(codeModel.ref(LinkedHashMap.class).narrow(codeModel.ref(String.class), stats)));
+            final JForEach each = snapinContention.body().forEach(contentionClass, "c", contention);
+            each.body().add(result.invoke("put").arg(JExpr.ref(each.var(), method)).arg(each.var().invoke("stats")));
+            snapinContention.body()
+                ._return(codeModel.ref(Collections.class).staticInvoke("unmodifiableMap").arg(result));
+        }
+
+        /**
+         * Get the signature of {@code method} by which it is named in metrics: its name and parameter types.
+         *
+         * @param method
+         * @param skip number of leading parameters to omit
+         * @return String
+         */
+        private String signature(JMethod method, int skip) {
+            final Stream<String> params =
+                method.params().stream().skip(skip).map(JVar::type).map(AbstractJType::name);
+            final Stream<String> varParam = Stream.of(method.varParam()).filter(Objects::nonNull)
+                .map(v -> v.type().elementType().name() + "...");
+            return String.format("%s(%s)", method.name(),
+                Stream.concat(params, varParam).collect(Collectors.joining(",")));
+        }
+
+        /**
+         * Open, in the body of {@code method}, a block intercepted and measured as a call of the method named
+         * {@code name}, per the snap-in's options.
+         *
+         * @param method
+         * @param name
+         * @return {@link JBlock} into which to generate the body of {@code method}
+         */
+        private JBlock instrumented(JMethod method, String name) {
+            return timed(method, intercepted(method, method.body(), name), name);
+        }
+
+        /**
+         * Open, in {@code block}, a block reported to any installed interceptor as a call of the method named
+         * {@code name}, if the snap-in is intercepted.
+         *
+         * @param method
+         * @param block of {@code method}
+         * @param name
+         * @return {@link JBlock}
+         */
+        private JBlock intercepted(JMethod method, JBlock block, String name) {
+            if (interceptorField == null) {
+                return block;
+            }
+            // read the interceptor only once:
+            final JVar interceptor = block.decl(JMod.FINAL, interceptorField.type(),
+                localName(method, INTERCEPTOR_FIELD_NAME), JExpr.ref(snapin.staticRef("this"), interceptorField));
+            block._if(ne(interceptor, _null()))._then().add(interceptor.invoke("before").arg(name));
+
+            final JTryBlock tryBlock = block._try();
+            final JCatchBlock catchBlock = tryBlock._catch(codeModel.ref(Throwable.class));
+            final JVar failure = catchBlock.param(localName(method, "failure"));
+            catchBlock.body()._if(ne(interceptor, _null()))._then()
+                .add(interceptor.invoke("failed").arg(name).arg(failure));
+            // rethrown precisely, as only the exceptions declared by the method can have been caught:
+            catchBlock.body()._throw(failure);
+            tryBlock._finally()._if(ne(interceptor, _null()))._then().add(interceptor.invoke("after").arg(name));
+            return tryBlock.body();
+        }
+
+        /**
+         * Open, in {@code block}, a block timed and counted as a call of the metric named {@code name}, if the
+         * snap-in keeps metrics.
+         *
+         * @param method
+         * @param block of {@code method}
+         * @param name
+         * @return {@link JBlock}
+         */
+        private JBlock timed(JMethod method, JBlock block, String name) {
+            if (metricNamesField == null) {
+                return block;
+            }
+            int index = metricNames.indexOf(name);
+            if (index < 0) {
+                index = metricNames.size();
+                metricNames.add(name);
+            }
+            final JVar start = block.decl(JMod.FINAL, codeModel.LONG, localName(method, "start"),
+                codeModel.ref(System.class).staticInvoke("nanoTime"));
+            final JTryBlock tryBlock = block._try();
+            tryBlock._finally().add(
+                JExpr.component(JExpr.ref(snapin.staticRef("this"), METRICS_FIELD_NAME), JExpr.lit(index))
+                    .invoke("record").arg(start));
+            return tryBlock.body();
+        }
+
+        private int synchronizedModifier() {
+            return concurrency == Concurrency.SYNCHRONIZED ? JMod.SYNCHRONIZED : JMod.NONE;
+        }
+
+        /**
+         * Get the modifier by which a wrapper method is synchronized: unless contention is measured, this is as for
+         * any other method.
+         *
+         * @return int
+         */
+        private int wrapperModifier() {
+            return contentionNamesField == null ? synchronizedModifier() : JMod.NONE;
+        }
+
+        /**
+         * Enter the block guarded per {@link #concurrency}. Unless contention is measured, a
+         * {@link Concurrency#SYNCHRONIZED} method already holds the monitor, so needs no further guard.
+         *
+         * @param method
+         * @param block
+         * @param signature of {@code method}, naming its contention statistics
+         * @return guarded {@link JBlock}
+         */
+        private JBlock enter(JMethod method, JBlock block, String signature) {
+            if (concurrency != Concurrency.SYNCHRONIZED && concurrency != Concurrency.REENTRANT_LOCK) {
+                return block;
+            }
+            final JVar contention;
+            final JVar requested;
+            if (contentionNamesField == null) {
+                if (concurrency == Concurrency.SYNCHRONIZED) {
+                    return block;
+                }
+                contention = null;
+                requested = null;
+            } else {
+                int index = contentionNames.indexOf(signature);
+                if (index < 0) {
+                    index = contentionNames.size();
+                    contentionNames.add(signature);
+                }
+                contention = block.decl(JMod.FINAL, contentionClass, localName(method, CONTENTION_FIELD_NAME),
+                    JExpr.component(JExpr.ref(_this(), CONTENTION_FIELD_NAME), JExpr.lit(index)));
+                requested = block.decl(JMod.FINAL, codeModel.LONG, localName(method, "requested"),
+                    contention.invoke("request"));
+            }
+            final JFieldRef lockField = JExpr.ref(_this(), LOCK_FIELD_NAME);
+            if (concurrency == Concurrency.SYNCHRONIZED) {
+                block = block.synchronizedBlock(_this()).body();
+            } else {
+                block.add(lockField.invoke("lock"));
+            }
+            final JVar acquired = contention == null ? null
+                : block.decl(JMod.FINAL, codeModel.LONG, localName(method, "acquired"),
+                    contention.invoke("acquired").arg(requested));
+
+            final JTryBlock tryBlock = block._try();
+            if (contention != null) {
+                tryBlock._finally().add(contention.invoke("release").arg(requested).arg(acquired));
+            }
+            if (concurrency == Concurrency.REENTRANT_LOCK) {
+                tryBlock._finally().add(lockField.invoke("unlock"));
+            }
+            return tryBlock.body();
+        }
+
+        private IJExpression currentDelegate() {
+            return current(DELEGATE_FIELD_NAME);
+        }
+
+        private IJExpression current(String field) {
+            return current(_this(), field);
+        }
+
+        private IJExpression current(IJExpression owner, String field) {
+            final JFieldRef delegateField = JExpr.ref(owner, field);
+            return concurrency == Concurrency.THREAD_CONFINED ? delegateField.invoke("get") : delegateField;
+        }
+
+        /**
+         * Get an expression testing whether a delegate, or a supplier thereof, is installed.
+         *
+         * @return {@link IJExpression}
+         */
+        private IJExpression installed() {
+            final IJExpression result = ne(currentDelegate(), _null());
+            return annotation.lazy() ? result.cor(ne(current(SUPPLIER_FIELD_NAME), _null())) : result;
+        }
+
+        private AbstractJClass supplierType() {
+            return codeModel.ref(Supplier.class).narrow(delegateType.wildcard());
+        }
+
+        private void installDelegate(JBlock block, IJExpression delegate) {
+            if (annotation.reentrant()) {
+                // calls recorded for a delegate about to be replaced are its own:
+                flushCalls(block, _this());
+            }
+            install(block, DELEGATE_FIELD_NAME, delegate);
+        }
+
+        /**
+         * Flush any calls recorded for the current delegate of {@code owner}.
+         *
+         * @param block
+         * @param owner snap-in expression
+         */
+        private void flushCalls(JBlock block, IJExpression owner) {
+            if (callsClass != null) {
+                block.add(current(owner, CALLS_FIELD_NAME).invoke("flush")
+                    .arg(current(owner, DELEGATE_FIELD_NAME)));
+            }
+        }
+
+        private void install(JBlock block, String field, IJExpression delegate) {
+            final JFieldRef delegateField = JExpr.ref(_this(), field);
+            if (concurrency == Concurrency.THREAD_CONFINED) {
+                block.add(delegateField.invoke("set").arg(delegate));
+            } else {
+                block.assign(delegateField, delegate);
+            }
+        }
+
+        /**
+         * Restore the delegate referenced by {@code delegateField} to {@code previous}.
+         *
+         * @param block
+         * @param delegateField
+         * @param previous if {@code null}, clear the delegate
+         */
+        private void restoreDelegate(JBlock block, JFieldRef delegateField, IJExpression previous) {
+            if (callsClass != null && DELEGATE_FIELD_NAME.equals(delegateField.name())) {
+                // the delegate is restored even if it fails to accept its recorded calls, which are then discarded:
+                final JTryBlock tryBlock = block._try();
+                flushCalls(tryBlock.body(), (IJExpression) delegateField.object());
+                block = tryBlock._finally();
+            }
+            if (concurrency == Concurrency.THREAD_CONFINED) {
+                if (previous == null) {
+                    block.add(delegateField.invoke("remove"));
+                } else {
+                    final JConditional wasSet = block._if(eq(previous, _null()));
+                    wasSet._then().add(delegateField.invoke("remove"));
+                    wasSet._else().add(delegateField.invoke("set").arg(previous));
+                }
+            } else {
+                block.assign(delegateField, previous == null ? _null() : previous);
+            }
+        }
+
+        private void implementSnapin(JDefinedClass snapin) {
+            final boolean inheritance = inherit(snapin);
+
+            final JMethod resolveDelegate = annotation.lazy() ? defineResolveDelegate(snapin) : null;
+
+            final Function<JMethod, IJExpression> delegateAccess = impl -> {
+                // read the delegate only once:
+                final JVar delegate = impl.body().decl(resolveDelegate == null ? JMod.FINAL : JMod.NONE, delegateType,
+                    localName(impl, DELEGATE_FIELD_NAME), currentDelegate());
+                final JBlock unset = impl.body()._if(eq(delegate, _null()))._then();
+                if (resolveDelegate == null) {
+                    // if delegate == null throw new IllegalStateException:
+                    unset.add(noDelegate());
+                } else {
+                    unset.assign(delegate, JExpr.invoke(resolveDelegate));
+                }
+                return delegate;
+            };
+            final int mods = JMod.PUBLIC | synchronizedModifier() | JMod.FINAL;
+
+            for (ExecutableElement method : delegateMethods()) {
+                if (callsClass == null) {
+                    forward(snapin, method, mods, inheritance, delegateAccess);
+                    continue;
+                }
+                forward(snapin, method, mods, inheritance, (impl, invoker) -> {
+                    final IJExpression delegate = delegateAccess.apply(impl);
+                    final JBlock block = instrumented(impl, signature(impl, 0));
+                    final IJExpression calls = current(CALLS_FIELD_NAME);
+                    if (recordable(method)) {
+                        final JInvocation record = calls.invoke(recordTo(impl, method)).arg(delegate);
+                        impl.params().forEach(record::arg);
+                        Optional.ofNullable(impl.varParam()).ifPresent(record::arg);
+                        block.add(record);
+                    } else {
+                        // keep order with the calls already recorded:
+                        block.add(calls.invoke("flush").arg(delegate));
+                        returnFrom(block, method.getReturnType(), invoker.apply(delegate));
+                    }
+                });
+            }
+        }
+
+        /**
+         * Define the cold snap-in method by which the interface methods of a lazy snap-in obtain a delegate from the
+         * installed supplier, installing it in turn so as to call the supplier at most once per wrapper call.
+         *
+         * @param snapin
+         * @return {@link JMethod}
+         */
+        private JMethod defineResolveDelegate(JDefinedClass snapin) {
+            final JMethod result = snapin.method(JMod.PRIVATE, delegateType, "resolveDelegate");
+            result.javadoc().add("Obtain and install a delegate from the installed supplier.");
+            result.javadoc().addReturn().append(delegateType);
+            result.javadoc().addThrows(IllegalStateException.class).add("if no supplier is installed");
+            result.javadoc().addThrows(NullPointerException.class).add("if the supplier returns {@code null}");
+
+            final JVar supplier =
+                result.body().decl(JMod.FINAL, supplierType(), SUPPLIER_FIELD_NAME, current(SUPPLIER_FIELD_NAME));
+            result.body()._if(eq(supplier, _null()))._then().add(noDelegate());
+            final JVar delegate =
+                result.body().decl(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME, supplier.invoke("get"));
+            result.body()._if(eq(delegate, _null()))._then().add(nullDelegate());
+            installDelegate(result.body(), delegate);
+            result.body()._return(delegate);
+            return result;
+        }
+
+        /**
+         * Add to {@code snapin} an overload of {@code wrapper} accepting a {@link Supplier} of the delegate, which is
+         * installed in place of a delegate and called only upon the first call of an interface method.
+         *
+         * @param snapin
+         * @param wrapper
+         * @param template
+         * @param templateMethod
+         * @param specialization of {@code wrapper}
+         */
+        private void lazyTo(JDefinedClass snapin, JMethod wrapper, JMethod template, ExecutableElement templateMethod,
+            Map<TypeParameterElement, JPrimitiveType> specialization) {
+            final JMethod lazy = snapin.method(wrapper.mods().getValue(), wrapper.type(), wrapper.name());
+            LangModel.to(codeModel).copyTo(templateMethod.getTypeParameters().stream()
+                .filter(tp -> !specialization.containsKey(tp)).collect(Collectors.toList()), lazy);
+            documentTypeParameters(lazy, templateMethod);
+
+            lazy.javadoc().append(String.format(
+                "Call {@link #%s} using the delegate obtained from {@code delegate}, which is called only if, and",
+                templateLink(templateMethod, specialization)));
+            lazy.javadoc().append(" when, the template method first calls an interface method.");
+            lazy.javadoc().addReturn().add(lazy.type());
+
+            final JVar supplierParam = lazy.param(supplierType(), DELEGATE_FIELD_NAME);
+            lazy.javadoc().addParam(supplierParam).add("supplier of the delegate");
+
+            final Iterator<? extends VariableElement> parameters = templateMethod.getParameters().iterator();
+            final JInvocation invocation = JExpr.invoke(template);
+            wrapper.params().stream().skip(1).forEach(p -> {
+                final JVar param = lazy.param(p.mods().getValue(), p.type(), p.name());
+                lazy.javadoc().addParam(param).add(doc(parameters.next()));
+                invocation.arg(param);
+            });
+            Optional.ofNullable(wrapper.varParam()).ifPresent(p -> {
+                final JVar param = lazy.varParam(p.mods().getValue(), p.type().elementType(), p.name());
+                lazy.javadoc().addParam(param).add(doc(parameters.next()));
+                invocation.arg(param);
+            });
+            final Map<String, String[]> docThrows = docThrows(templateMethod);
+            wrapper.getThrows().forEach(twn -> {
+                lazy._throws(twn);
+                lazy.javadoc().addThrows(twn).add(docThrows.get(twn.fullName()));
+            });
+
+            final String signature = signature(template, 0);
+            final JBlock block = guard(lazy, instrumented(lazy, signature), supplierParam, signature, true);
+
+            // clear any delegate of an enclosing call, then install the supplier:
+            if (annotation.reentrant()) {
+                restoreDelegate(block, JExpr.ref(_this(), DELEGATE_FIELD_NAME), null);
+            }
+            install(block, SUPPLIER_FIELD_NAME, supplierParam);
+            returnFrom(block, templateMethod.getReturnType(), invocation);
+        }
+
+        /**
+         * Add to {@code snapin} a method that calls {@code wrapper} on an {@link Executor}, returning a
+         * {@link CompletableFuture} of its result. As the task calls the wrapper method, the delegate is installed
+         * within the executing thread alone; as the executor may run the task in a thread already calling a template
+         * method, a non-reentrant snap-in suspends any delegate installed there for the duration of the task.
+         *
+         * @param snapin
+         * @param wrapper
+         * @param templateMethod
+         * @param specialization of {@code wrapper}
+         */
+        private void asyncTo(JDefinedClass snapin, JMethod wrapper, ExecutableElement templateMethod,
+            Map<TypeParameterElement, JPrimitiveType> specialization) {
+            final boolean isVoid = codeModel.VOID == wrapper.type();
+            final AbstractJClass resultType = codeModel.ref(CompletableFuture.class)
+                .narrow(isVoid ? codeModel.ref(Void.class) : wrapper.type().boxify());
+
+            final JMethod async = snapin.method(JMod.FINAL, resultType, wrapper.name() + ASYNC_SUFFIX);
+            async.javadoc().append(String.format("Call {@link #%s} using {@code delegate}, asynchronously on",
+                templateLink(templateMethod, specialization)));
+            async.javadoc().append(" {@code executor}. The delegate is installed only within the executing thread.");
+
+            wrapper.typeParamList().forEach(tp -> async.generify(tp.name()).boundLike(tp));
+            documentTypeParameters(async, templateMethod);
+
+            final JVar delegateParam = async.param(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME);
+            async.javadoc().addParam(delegateParam).append(delegateType).add("delegate");
+
+            final JInvocation invocation = _this().invoke(wrapper).arg(delegateParam);
+            final Iterator<? extends VariableElement> templateParams = templateMethod.getParameters().iterator();
+            final List<JVar> params = new ArrayList<>(wrapper.params().subList(1, wrapper.params().size()));
+            Optional.ofNullable(wrapper.varParam()).ifPresent(params::add);
+            for (JVar p : params) {
+                // variable arguments cannot precede the executor:
+                final JVar param = async.param(p.mods().getValue() | JMod.FINAL, p.type(), p.name());
+                async.javadoc().addParam(param).add(doc(templateParams.next()));
+                invocation.arg(param);
+            }
+            final JVar executor =
+                async.param(JMod.FINAL, codeModel.ref(Executor.class), localName(async, EXECUTOR_FIELD_NAME));
+            async.javadoc().addParam(executor).add("on which to call the template method");
+
+            final JCommentPart returns = async.javadoc().addReturn().append(resultType).append(
+                String.format(" completed %s the template method, or exceptionally with anything it throws",
+                    isVoid ? "on return of" : "with the result of"));
+            final Map<String, String[]> docThrows = docThrows(templateMethod);
+            wrapper.getThrows().forEach(twn -> {
+                returns.append(", such as ").append(twn);
+                Optional.ofNullable(docThrows.get(twn.fullName())).map(doc -> String.join(" ", doc))
+                    .ifPresent(doc -> returns.append(' ' + doc));
+            });
+            async.javadoc().addThrows(RejectedExecutionException.class).add("if {@code executor} rejects the task");
+
+            final JBlock body = async.body();
+            // fail fast in the calling thread:
+            body._if(eq(delegateParam, _null()))._then().add(nullDelegate());
+            final JVar result = body.decl(JMod.FINAL, resultType, localName(async, "result"), _new(resultType));
+
+            final JLambda task = new JLambda();
+            final JFieldRef delegateField = JExpr.ref(_this(), DELEGATE_FIELD_NAME);
+            final JFieldRef supplierField = JExpr.ref(_this(), SUPPLIER_FIELD_NAME);
+            final JVar suspended;
+            final JVar suspendedSupplier;
+            if (annotation.reentrant()) {
+                suspended = null;
+                suspendedSupplier = null;
+            } else {
+                suspended = task.body().decl(JMod.FINAL, delegateType, localName(async, "suspended"),
+                    currentDelegate());
+                suspendedSupplier = annotation.lazy() ? task.body().decl(JMod.FINAL, supplierType(),
+                    localName(async, "suspendedSupplier"), current(SUPPLIER_FIELD_NAME)) : null;
+                restoreDelegate(task.body(), delegateField, null);
+                if (annotation.lazy()) {
+                    restoreDelegate(task.body(), supplierField, null);
+                }
+            }
+            final JTryBlock tryBlock = task.body()._try();
+            if (isVoid) {
+                tryBlock.body().add(invocation);
+                tryBlock.body().add(result.invoke("complete").arg(_null()));
+            } else {
+                tryBlock.body().add(result.invoke("complete").arg(invocation));
+            }
+            final JCatchBlock failed = tryBlock._catch(codeModel.ref(Throwable.class));
+            final JVar t = failed.param(localName(async, "t"));
+            failed.body().add(result.invoke("completeExceptionally").arg(t));
+            if (suspended != null) {
+                restoreDelegate(tryBlock._finally(), delegateField, suspended);
+                if (suspendedSupplier != null) {
+                    restoreDelegate(tryBlock._finally(), supplierField, suspendedSupplier);
+                }
+            }
+
+            body.add(codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(executor)
+                .arg(EXECUTOR_FIELD_NAME).invoke("execute").arg(task));
+            body._return(result);
+        }
+
+        /**
+         * Refer to a class nested in the snap-in by its simple name, so that from snap-in instance members it is
+         * implicitly parameterized by the snap-in's type variables.
+         *
+         * @param inner
+         * @return {@link AbstractJClass}
+         */
+        private AbstractJClass innerType(JDefinedClass inner) {
+            return codeModel.directClass(inner.name());
+        }
+
+        /**
+         * Define the bound view class, along with the snap-in method that creates it.
+         *
+         * @param snapin
+         * @return {@link JDefinedClass}
+         */
+        private JDefinedClass defineBound(JDefinedClass snapin) {
+            final JDefinedClass bound;
+            try {
+                bound = snapin._class(JMod.PUBLIC | JMod.FINAL, BOUND_CLASS_NAME);
+            } catch (Exception e) {
+                error(e, "Unable to define class %s.%s:", snapin.fullName(), BOUND_CLASS_NAME);
+                throw new IllegalStateException(e);
+            }
+            bound.javadoc().add(String.format(
+                "Immutable view of this {@link %s} bound to a single delegate. Interface methods are forwarded",
+                snapin.name()));
+            bound.javadoc().add(" directly to the bound delegate, and template methods are invoked using it.");
+
+            final JFieldVar delegateField = bound.field(JMod.PRIVATE | JMod.FINAL, delegateType, DELEGATE_FIELD_NAME);
+            final JMethod ctor = bound.constructor(JMod.NONE);
+            ctor.body().assign(JExpr.ref(_this(), delegateField),
+                ctor.param(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME));
+
+            final boolean inheritance = inherit(bound);
+            for (ExecutableElement method : delegateMethods()) {
+                forward(bound, method, JMod.PUBLIC, inheritance, impl -> JExpr.ref(_this(), delegateField));
+            }
+
+            final AbstractJClass boundType = innerType(bound);
+
+            final JMethod bind = snapin.method(JMod.PUBLIC | JMod.FINAL, boundType, "bind");
+            final JVar delegateParam = bind.param(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME);
+            bind.javadoc().add(String.format("Bind this {@link %s} to {@code delegate}.", snapin.name()));
+            bind.javadoc().addParam(delegateParam).append(delegateType).add("delegate");
+            bind.javadoc().addReturn().add(boundType);
+
+            bind.body()._if(eq(delegateParam, _null()))._then().add(nullDelegate());
+            bind.body()._return(_new(boundType).arg(delegateParam));
+
+            return bound;
+        }
+
+        /**
+         * Define the fan-out composite class, along with the snap-in methods that create it.
+         *
+         * @param snapin
+         */
+        private void defineFanOut(JDefinedClass snapin) {
+            final JDefinedClass fanOut;
+            final JDefinedClass callType;
+            try {
+                fanOut = snapin._class(JMod.PUBLIC | JMod.FINAL, FAN_OUT_CLASS_NAME);
+                callType = snapin._interface(JMod.PRIVATE, FAN_OUT_CALL_CLASS_NAME);
+            } catch (Exception e) {
+                error(e, "Unable to define class %s.%s:", snapin.fullName(), FAN_OUT_CLASS_NAME);
+                throw new IllegalStateException(e);
+            }
+            fanOut.javadoc().add(String.format(
+                "Composite delegate for use with this {@link %s}, forwarding each call to several delegates in order.",
+                snapin.name()));
+            fanOut.javadoc().add(" The calls of {@code void} methods other than that of the first delegate are made");
+            fanOut.javadoc().add(" in parallel if an {@link Executor} was specified; otherwise the first failure ends");
+            fanOut.javadoc().add(" a call.");
+
+            callType.javadoc().add("A call of an interface method upon a delegate.");
+            final JTypeVar d = callType.generify("D");
+            callType.javadoc().addParam(String.format(TYPE_PARAMETER_FORMAT, d.name())).add("delegate type");
+            final JMethod call = callType.method(JMod.NONE, codeModel.VOID, "call");
+            call.javadoc().add("Make the call.");
+            call.javadoc().addParam(call.param(d, DELEGATE_FIELD_NAME)).add("delegate");
+            call.javadoc().addThrows(Exception.class).add("on failure");
+            call._throws(Exception.class);
+
+            final JFieldVar delegatesField =
+                fanOut.field(JMod.PRIVATE | JMod.FINAL, delegateType.array(), DELEGATE_FIELD_NAME + 's');
+            final JFieldVar executorField =
+                fanOut.field(JMod.PRIVATE | JMod.FINAL, codeModel.ref(Executor.class), EXECUTOR_FIELD_NAME);
+
+            final JMethod ctor = fanOut.constructor(JMod.NONE);
+            final JVar executorParam = ctor.param(JMod.FINAL, codeModel.ref(Executor.class), EXECUTOR_FIELD_NAME);
+            final JVar delegatesParam = ctor.param(JMod.FINAL, delegateType.array(), DELEGATE_FIELD_NAME + 's');
+            ctor.body()._if(eq(delegatesParam.ref("length"), JExpr.lit(0)))._then()
+                .add(fail("noDelegates", IllegalArgumentException.class, "No delegates"));
+            ctor.body().assign(JExpr.ref(_this(), delegatesField), delegatesParam.invoke("clone"));
+            final JForEach each =
+                ctor.body().forEach(delegateType, DELEGATE_FIELD_NAME, JExpr.ref(_this(), delegatesField));
+            each.body()._if(eq(each.var(), _null()))._then().add(nullDelegate());
+            ctor.body().assign(JExpr.ref(_this(), executorField), executorParam);
+
+            final JMethod parallel = defineParallel(fanOut, callType, delegatesField, executorField);
+
+            final boolean inheritance = inherit(fanOut);
+            for (ExecutableElement method : delegateMethods()) {
+                forward(fanOut, method, JMod.PUBLIC, inheritance,
+                    (impl, invoker) -> fanOutTo(impl, method, invoker, delegatesField, executorField, parallel));
+            }
+
+            final AbstractJClass fanOutType = innerType(fanOut);
+
+            for (boolean withExecutor : new boolean[] { false, true }) {
+                final JMethod factory = snapin.method(JMod.PUBLIC | JMod.FINAL, fanOutType,
+                    withExecutor ? "fanOut" + PARALLEL_SUFFIX : "fanOut");
+                if (!delegateType.getTypeParameters().isEmpty()) {
+                    factory.annotate(SafeVarargs.class);
+                }
+                factory.javadoc().add(String.format("Create a {@link %s} of {@code delegates}", FAN_OUT_CLASS_NAME));
+                final IJExpression executor;
+                if (withExecutor) {
+                    final JVar executorArg = factory.param(JMod.FINAL, codeModel.ref(Executor.class),
+                        EXECUTOR_FIELD_NAME);
+                    factory.javadoc().append(", calling those of {@code void} methods in parallel on {@code executor}");
+                    factory.javadoc().addParam(executorArg).add("to call delegates other than the first");
+                    executor = codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(executorArg)
+                        .arg(EXECUTOR_FIELD_NAME);
+                } else {
+                    executor = _null();
+                }
+                factory.javadoc().append(".");
+                final JVar delegatesArg = factory.varParam(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME + 's');
+                factory.javadoc().addParam(delegatesArg).add("at least one, in order");
+                factory.javadoc().addReturn().add(fanOutType);
+                factory.javadoc().addThrows(IllegalArgumentException.class).add("if {@code delegates} is empty");
+                factory.body()._return(_new(fanOutType).arg(executor).arg(delegatesArg));
+            }
+        }
+
+        /**
+         * Define the method by which a {@code FanOut} calls its delegates in parallel, waiting for all calls to
+         * complete so that no delegate is called once the fan-out call has returned. Unchecked failures are thrown;
+         * the first checked exception is returned, for the caller to throw as its own. Further failures are
+         * suppressed.
+         *
+         * @param fanOut
+         * @param callType
+         * @param delegatesField
+         * @param executorField
+         * @return {@link JMethod}
+         */
+        private JMethod defineParallel(JDefinedClass fanOut, JDefinedClass callType, JFieldVar delegatesField,
+            JFieldVar executorField) {
+            final AbstractJClass exception = codeModel.ref(Exception.class);
+            final JMethod result = fanOut.method(JMod.PRIVATE, exception, "parallel");
+            result.javadoc().add("Make {@code call} upon each delegate, the first in the calling thread and the");
+            result.javadoc().add(" others in parallel on the executor, awaiting all.");
+            final JVar call = result.param(JMod.FINAL, callType.narrow(delegateType), "call");
+            result.javadoc().addParam(call).add("to make");
+            result.javadoc().addReturn().add("checked exception thrown by the first failed call, if any");
+
+            final JBlock body = result.body();
+            final JVar delegates = body.decl(JMod.FINAL, delegateType.array(), DELEGATE_FIELD_NAME + 's',
+                JExpr.ref(_this(), delegatesField));
+            final AbstractJClass taskType = codeModel.ref(FutureTask.class).narrow(Void.class);
+            final AbstractJClass tasksType = codeModel.ref(List.class).narrow(taskType);
+            final JVar tasks = body.decl(JMod.FINAL, tasksType, "tasks",
+                _new(codeModel.ref(ArrayList.class).narrow(taskType)).arg(delegates.ref("length")));
+
+            final JForLoop submit = body._for();
+            final JVar i = submit.init(codeModel.INT, "i", JExpr.lit(1));
+            submit.test(JOp.lt(i, delegates.ref("length")));
+            submit.update(JOp.incr(i));
+            final JVar delegate =
+                submit.body().decl(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME, delegates.component(i));
+            final JLambda task = new JLambda();
+            task.body().add(call.invoke("call").arg(delegate));
+            task.body()._return(_null());
+            final JVar taskVar = submit.body().decl(JMod.FINAL, taskType, "task", _new(taskType).arg(task));
+            submit.body().add(tasks.invoke("add").arg(taskVar));
+            final JTryBlock execute = submit.body()._try();
+            execute.body().add(JExpr.ref(_this(), executorField).invoke("execute").arg(taskVar));
+            // the delegates must not outlive the call; run a rejected task here:
+            execute._catch(codeModel.ref(RejectedExecutionException.class)).body().add(taskVar.invoke("run"));
+
+            final JVar failure = body.decl(codeModel.ref(Throwable.class), "failure", _null());
+            final JTryBlock first = body._try();
+            first.body().add(call.invoke("call").arg(delegates.component(JExpr.lit(0))));
+            final JCatchBlock firstFailed = first._catch(codeModel.ref(Throwable.class));
+            firstFailed.body().assign(failure, firstFailed.param("t"));
+
+            final JVar interrupted = body.decl(codeModel.BOOLEAN, "interrupted", JExpr.FALSE);
+            final JForEach await = body.forEach(taskType, "task", tasks);
+            final JBlock attempt = await.body()._while(JExpr.TRUE).body();
+            final JTryBlock get = attempt._try();
+            get.body().add(await.var().invoke("get"));
+            get.body()._break();
+            get._catch(codeModel.ref(InterruptedException.class)).body().assign(interrupted, JExpr.TRUE);
+            final JCatchBlock failed = get._catch(codeModel.ref(ExecutionException.class));
+            final JVar cause = failed.body().decl(JMod.FINAL, codeModel.ref(Throwable.class), "cause",
+                failed.param("e").invoke("getCause"));
+            final JConditional firstFailure = failed.body()._if(eq(failure, _null()));
+            firstFailure._then().assign(failure, cause);
+            firstFailure._elseif(ne(failure, cause))._then().add(failure.invoke("addSuppressed").arg(cause));
+            failed.body()._break();
+
+            body._if(interrupted)._then()
+                .add(codeModel.ref(Thread.class).staticInvoke("currentThread").invoke("interrupt"));
+            for (Class<? extends Throwable> unchecked : Arrays.asList(RuntimeException.class, Error.class)) {
+                body._if(failure._instanceof(codeModel.ref(unchecked)))._then()
+                    ._throw(JExpr.cast(codeModel.ref(unchecked), failure));
+            }
+            body._if(JOp.cor(eq(failure, _null()), failure._instanceof(exception)))._then()
+                ._return(JExpr.cast(exception, failure));
+            body._throw(_new(codeModel.ref(UndeclaredThrowableException.class)).arg(failure));
+            return result;
+        }
+
+        /**
+         * Implement {@code impl}, of a {@code FanOut}, to call each delegate in turn, unrolling the calls of the first
+         * few, or for a {@code void} method to call the delegates in parallel if an executor was specified.
+         *
+         * @param impl
+         * @param method
+         * @param invoker
+         * @param delegatesField
+         * @param executorField
+         * @param parallel
+         */
+        private void fanOutTo(JMethod impl, ExecutableElement method, Function<IJExpression, JInvocation> invoker,
+            JFieldVar delegatesField, JFieldVar executorField, JMethod parallel) {
+            final JBlock body = impl.body();
+            final boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+
+            if (isVoid) {
+                final JBlock inParallel = body._if(ne(JExpr.ref(_this(), executorField), _null()))._then();
+                final JLambda lambda = new JLambda();
+                // a block, lest a lone statement be rendered as an expression body:
+                lambda.body().block().add(invoker.apply(lambda.addParam(localName(impl, DELEGATE_FIELD_NAME))));
+                final JVar failure = inParallel.decl(JMod.FINAL, codeModel.ref(Exception.class),
+                    localName(impl, "failure"), JExpr.invoke(parallel).arg(lambda));
+                final JBlock failed = inParallel._if(ne(failure, _null()))._then();
+
+                final TypeMirror exception = elements().getTypeElement(Exception.class.getName()).asType();
+                final TypeMirror runtimeException =
+                    elements().getTypeElement(RuntimeException.class.getName()).asType();
+                method.getThrownTypes().stream()
+                    .filter(t -> t.getKind() == TypeKind.DECLARED && types().isSubtype(t, exception)
+                        && !types().isSubtype(t, runtimeException))
+                    .map(Object::toString).<AbstractJClass> map(this::naiveType).forEach(
+                        t -> failed._if(failure._instanceof(t))._then()._throw(JExpr.cast(t, failure)));
+                failed._throw(_new(codeModel.ref(UndeclaredThrowableException.class)).arg(failure));
+                inParallel._return();
+            }
+            final JVar delegates = body.decl(JMod.FINAL, delegateType.array(),
+                localName(impl, DELEGATE_FIELD_NAME + 's'), JExpr.ref(_this(), delegatesField));
+
+            final FanOutResult policy = annotation.fanOutResult();
+            final JVar result;
+            final JInvocation first = invoker.apply(delegates.component(JExpr.lit(0)));
+            if (isVoid) {
+                body.add(first);
+                result = null;
+            } else {
+                result = body.decl(policy == FanOutResult.LAST ? JMod.NONE : JMod.FINAL, impl.type(),
+                    localName(impl, "result"), first);
+            }
+            final BiConsumer<JBlock, JInvocation> fanOutCall = (block, invocation) -> {
+                if (isVoid || policy == FanOutResult.FIRST) {
+                    block.add(invocation);
+                } else if (policy == FanOutResult.LAST) {
+                    block.assign(result, invocation);
+                } else {
+                    block._if(differ(result, invocation))._then()
+                        .add(fail("disagreement", IllegalStateException.class, "Delegates returned different results"));
+                }
+            };
+            // give each of the first few delegates a call site, and thus a type profile, of its own:
+            JBlock block = body;
+            for (int k = 1; k < FAN_OUT_UNROLL; k++) {
+                block = block._if(JOp.gt(delegates.ref("length"), JExpr.lit(k)))._then();
+                fanOutCall.accept(block, invoker.apply(delegates.component(JExpr.lit(k))));
+            }
+            final JForLoop rest = block._for();
+            final JVar i = rest.init(codeModel.INT, localName(impl, "i"), JExpr.lit(FAN_OUT_UNROLL));
+            rest.test(JOp.lt(i, delegates.ref("length")));
+            rest.update(JOp.incr(i));
+            fanOutCall.accept(rest.body(), invoker.apply(delegates.component(i)));
+
+            if (!isVoid) {
+                body._return(result);
+            }
+        }
+
+        /**
+         * Compare {@code result} with {@code other}, by value, as {@link Objects#equals(Object, Object)} or, for
+         * primitive types, as their wrapper types would.
+         *
+         * @param result
+         * @param other
+         * @return {@code boolean} expression that is {@code true} if the two differ
+         */
+        private IJExpression differ(JVar result, IJExpression other) {
+            final AbstractJType type = result.type();
+            if (type == codeModel.FLOAT || type == codeModel.DOUBLE) {
+                return ne(type.boxify().staticInvoke("compare").arg(result).arg(other), JExpr.lit(0));
+            }
+            if (type.isPrimitive()) {
+                return ne(result, other);
+            }
+            return JOp.not(codeModel.ref(Objects.class).staticInvoke("equals").arg(result).arg(other));
+        }
+
+        /**
+         * Define the write-behind buffer class and the {@code BatchAware} interface by which a delegate may accept
+         * its contents, along with the snap-in field holding the buffer. The arrays holding the arguments of each
+         * recordable method are added as its forwarding method is generated.
+         *
+         * @param snapin
+         */
+        private void defineWriteBehind(JDefinedClass snapin) {
+            try {
+                callsClass = snapin._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, CALLS_CLASS_NAME);
+                batchAwareClass = snapin._interface(JMod.PUBLIC, BATCH_AWARE_CLASS_NAME);
+            } catch (Exception e) {
+                error(e, "Unable to define write-behind classes of %s:", snapin.fullName());
+                throw new IllegalStateException(e);
+            }
+            LangModel.to(codeModel).copyTo(element.getTypeParameters(), callsClass);
+            LangModel.to(codeModel).copyTo(element.getTypeParameters(), batchAwareClass);
+
+            final boolean generic = !callsClass.typeParamList().isEmpty();
+            final AbstractJClass callsType = generic ? callsClass.narrow(callsClass.typeParams()) : callsClass;
+            final AbstractJClass batchAwareType =
+                generic ? batchAwareClass.narrow(callsClass.typeParams()) : batchAwareClass;
+            final AbstractJClass string = codeModel.ref(String.class);
+
+            callsClass.javadoc().add(String.format(
+                "Calls of the {@code void} methods of {@link %s}, recorded by a {@link %s} for write-behind and",
+                delegateType.erasure().name(), snapin.name()));
+            callsClass.javadoc().add(" flushed, in order, to the delegate for which they were recorded. A");
+            callsClass.javadoc().add(String.format(" {@link %s} delegate may examine the calls by index, or",
+                BATCH_AWARE_CLASS_NAME));
+            callsClass.javadoc().add(" {@link #replay} them; either way they are valid only until it returns.");
+            batchAwareClass.javadoc().add(String.format(
+                "Implemented by a delegate of a {@link %s} to accept the calls recorded for it as a batch, rather",
+                snapin.name()));
+            batchAwareClass.javadoc().add(" than have them replayed one by one.");
+            element.getTypeParameters().forEach(tp -> {
+                final String param = String.format(TYPE_PARAMETER_FORMAT, tp.getSimpleName());
+                callsClass.javadoc().addParam(param).add(doc(tp));
+                batchAwareClass.javadoc().addParam(param).add(doc(tp));
+            });
+
+            final JMethod writeBehind = batchAwareClass.method(JMod.NONE, codeModel.VOID, "writeBehind");
+            writeBehind.javadoc().add("Accept a batch of calls.");
+            writeBehind.javadoc().addParam(writeBehind.param(callsType, CALLS_FIELD_NAME))
+                .add("recorded, valid only until this method returns");
+
+            final int capacity = annotation.writeBehind();
+            callNames = JExpr.newArray(string);
+            final JFieldVar names = callsClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, string.array(),
+                "METHODS", callNames);
+            final JFieldVar methods = callsClass.field(JMod.PRIVATE | JMod.FINAL, codeModel.INT.array(), "methods",
+                JExpr.newArray(codeModel.INT, capacity));
+            final JFieldVar size = callsClass.field(JMod.PRIVATE, codeModel.INT, "size");
+
+            callsClass.constructor(JMod.NONE);
+
+            final JMethod check = callsClass.method(JMod.PRIVATE, codeModel.VOID, "check");
+            final JVar checked = check.param(JMod.FINAL, codeModel.INT, "index");
+            check.body()._if(JOp.lt(checked, JExpr.lit(0)).cor(JOp.gte(checked, size)))._then()
+                ._throw(_new(codeModel.ref(IndexOutOfBoundsException.class))
+                    .arg(string.staticInvoke("valueOf").arg(checked)));
+
+            final JMethod sizeMethod = callsClass.method(JMod.PUBLIC, codeModel.INT, "size");
+            sizeMethod.javadoc().add("Get the number of calls recorded.");
+            sizeMethod.javadoc().addReturn().add("int");
+            sizeMethod.body()._return(size);
+
+            final JMethod method = callsClass.method(JMod.PUBLIC, string, "method");
+            method.javadoc().add("Get the name of the method called by the call at {@code index}.");
+            final JVar methodIndex = method.param(JMod.FINAL, codeModel.INT, "index");
+            method.javadoc().addParam(methodIndex).add("of call");
+            method.javadoc().addReturn().add(string);
+            method.javadoc().addThrows(IndexOutOfBoundsException.class).add("if {@code index} is out of range");
+            method.body().invoke(check).arg(methodIndex);
+            method.body()._return(names.component(methods.component(methodIndex)));
+
+            final JMethod arguments = callsClass.method(JMod.PUBLIC, codeModel.ref(Object.class).array(), "arguments");
+            arguments.javadoc().add("Get the arguments of the call at {@code index}.");
+            argumentsCursor = arguments.param(JMod.FINAL, codeModel.INT, "index");
+            arguments.javadoc().addParam(argumentsCursor).add("of call");
+            arguments.javadoc().addReturn().add("Object[], primitive arguments boxed");
+            arguments.javadoc().addThrows(IndexOutOfBoundsException.class).add("if {@code index} is out of range");
+            arguments.body().invoke(check).arg(argumentsCursor);
+            argumentsSwitch = arguments.body()._switch(methods.component(argumentsCursor));
+            arguments.body()._throw(_new(codeModel.ref(IllegalStateException.class)));
+
+            replay = callsClass.method(JMod.PUBLIC, codeModel.VOID, "replay");
+            replay.javadoc().add("Make the recorded calls upon {@code delegate}, in order.");
+            final JVar replayDelegate = replay.param(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME);
+            replay.javadoc().addParam(replayDelegate).add("delegate");
+            final JForLoop each = replay.body()._for();
+            replayCursor = each.init(codeModel.INT, "i", JExpr.lit(0));
+            each.test(JOp.lt(replayCursor, size));
+            each.update(JOp.incr(replayCursor));
+            replaySwitch = each.body()._switch(methods.component(replayCursor));
+
+            // flush to the delegate, clearing the buffer even on failure:
+            final JMethod flush = callsClass.method(JMod.NONE, codeModel.VOID, "flush");
+            final JVar flushDelegate = flush.param(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME);
+            flush.body()._if(eq(size, JExpr.lit(0)))._then()._return();
+            final JTryBlock tryBlock = flush.body()._try();
+            final JConditional batchAware = tryBlock.body()._if(flushDelegate._instanceof(batchAwareClass));
+            batchAware._then().add(JExpr.cast(batchAwareType, flushDelegate).invoke(writeBehind).arg(_this()));
+            batchAware._else().invoke(replay).arg(flushDelegate);
+            if (generic) {
+                flush.annotate(SuppressWarnings.class).param("value", "unchecked");
+            }
+            tryBlock._finally().invoke("discard");
+
+            final JMethod discard = callsClass.method(JMod.NONE, codeModel.VOID, "discard");
+            clearCalls = discard.body().blockVirtual();
+            discard.body().assign(JExpr.ref(_this(), size), JExpr.lit(0));
+
+            // snap-in field:
+            if (concurrency == Concurrency.THREAD_CONFINED) {
+                snapin.field(JMod.PRIVATE | JMod.FINAL, codeModel.ref(ThreadLocal.class).narrow(callsType),
+                    CALLS_FIELD_NAME, codeModel.ref(ThreadLocal.class).staticInvoke("withInitial")
+                        .arg(new JLambdaMethodRef(callsClass, "new")));
+            } else {
+                snapin.field(JMod.PRIVATE | JMod.FINAL, callsType, CALLS_FIELD_NAME, _new(callsType));
+            }
+        }
+
+        /**
+         * Learn whether calls of {@code method} can be recorded for write-behind: it must be a {@code void},
+         * non-generic method declaring no checked exception.
+         *
+         * @param method
+         * @return boolean
+         */
+        private boolean recordable(ExecutableElement method) {
+            final List<TypeMirror> unchecked = Stream.of(RuntimeException.class, Error.class)
+                .map(c -> elements().getTypeElement(c.getName()).asType()).collect(Collectors.toList());
+
+            return method.getReturnType().getKind() == TypeKind.VOID && method.getTypeParameters().isEmpty()
+                && method.getThrownTypes().stream()
+                    .allMatch(t -> unchecked.stream().anyMatch(u -> types().isAssignable(t, u)));
+        }
+
+        /**
+         * Add to the write-behind buffer the arrays and method by which calls of {@code method}, forwarded by
+         * {@code impl}, are recorded, and the code by which they are replayed and examined.
+         *
+         * @param impl
+         * @param method
+         * @return the {@code record} {@link JMethod}, accepting the delegate and the arguments of {@code impl}
+         */
+        private JMethod recordTo(JMethod impl, ExecutableElement method) {
+            final String name = method.getSimpleName().toString();
+            final int index = recordedMethods++;
+            callNames.add(JExpr.lit(name));
+
+            final JFieldRef methods = JExpr.ref(_this(), "methods");
+            final JFieldRef size = JExpr.ref(_this(), "size");
+
+            final JMethod record = callsClass.method(JMod.NONE, codeModel.VOID, "record" + index);
+            final JVar delegate = record.param(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME);
+            final JVar at = record.body().decl(JMod.FINAL, codeModel.INT, "at", size);
+            record.body().assign(methods.component(at), JExpr.lit(index));
+
+            final JInvocation replayed = JExpr.invoke(JExpr.ref(DELEGATE_FIELD_NAME), name);
+            final JArray args = JExpr.newArray(codeModel.ref(Object.class));
+
+            final List<JVar> params = new ArrayList<>(impl.params());
+            Optional.ofNullable(impl.varParam()).ifPresent(params::add);
+            boolean unchecked = false;
+            int arg = 0;
+            for (JVar p : params) {
+                final AbstractJType type = p.type();
+                final AbstractJType elementType = type.isPrimitive() ? type : codeModel.ref(Object.class);
+                final JFieldVar column = callsClass.field(JMod.PRIVATE | JMod.FINAL, elementType.array(),
+                    String.format("args%d_%d", index, arg), JExpr.newArray(elementType, annotation.writeBehind()));
+                record.body().assign(column.component(at), record.param(JMod.FINAL, type, "arg" + arg++));
+
+                final IJExpression recorded = column.component(replayCursor);
+                if (type.isPrimitive() || type.equals(codeModel.ref(Object.class))) {
+                    replayed.arg(recorded);
+                } else {
+                    replayed.arg(JExpr.cast(type, recorded));
+                    unchecked |= !reifiable(type);
+                }
+                args.add(column.component(argumentsCursor));
+                if (!type.isPrimitive()) {
+                    // release references once flushed:
+                    clearCalls.add(codeModel.ref(Arrays.class).staticInvoke("fill").arg(column).arg(JExpr.lit(0))
+                        .arg(size).arg(_null()));
+                }
+            }
+            record.body().assign(size, JOp.plus(at, JExpr.lit(1)));
+            record.body()._if(eq(size, methods.ref("length")))._then().invoke("flush").arg(delegate);
+
+            final JBlock replayCase = replaySwitch._case(JExpr.lit(index)).body();
+            replayCase.add(replayed);
+            replayCase._break();
+            argumentsSwitch._case(JExpr.lit(index)).body()._return(args);
+
+            if (unchecked && replay.annotations().isEmpty()) {
+                replay.annotate(SuppressWarnings.class).param("value", "unchecked");
+            }
+            return record;
+        }
+
+        private boolean reifiable(AbstractJType type) {
+            if (type.isArray()) {
+                return reifiable(type.elementType());
+            }
+            return type.isPrimitive()
+                || !(type instanceof JTypeVar) && ((AbstractJClass) type).getTypeParameters().isEmpty();
+        }
+
+        /**
+         * Add to {@code bound} an entry point to {@code wrapper} using the bound delegate.
+         *
+         * @param bound
+         * @param wrapper
+         * @param templateMethod
+         */
+        private void bindTo(JDefinedClass bound, JMethod wrapper, ExecutableElement templateMethod) {
+            final JInvocation invocation =
+                JExpr.invoke(snapin.staticRef("this"), wrapper).arg(JExpr.ref(_this(), DELEGATE_FIELD_NAME));
+
+            final JMethod entry = entryPoint(bound, wrapper, templateMethod, invocation, false);
+            entry.javadoc().append(String.format("Call {@link %s#%s} using the bound delegate", snapin.name(),
+                templateMethod.getSimpleName()));
+
+            returnFrom(entry.body(), templateMethod.getReturnType(), invocation);
+        }
+
+        /**
+         * Add to {@code session} an entry point to {@code template} using the session delegate.
+         *
+         * @param session
+         * @param wrapper
+         * @param template
+         * @param templateMethod
+         */
+        private void openTo(JDefinedClass session, JMethod wrapper, JMethod template,
+            ExecutableElement templateMethod) {
+            final JInvocation invocation = JExpr.invoke(snapin.staticRef("this"), template);
+
+            final JMethod entry = entryPoint(session, wrapper, templateMethod, invocation, false);
+            entry.javadoc().append(String.format("Call {@link %s#%s} using the session delegate", snapin.name(),
+                templateMethod.getSimpleName()));
+
+            entry.body()._if(JExpr.ref(_this(), CLOSED_FIELD_NAME))._then().add(sessionClosed());
+
+            // a session call is measured as a call of the wrapper method:
+            returnFrom(instrumented(entry, signature(entry, 0)), templateMethod.getReturnType(), invocation);
+        }
+
+        /**
+         * Define on {@code host} a method having the signature of {@code wrapper}, optionally less its delegate
+         * parameter, passing its parameters to {@code invocation}.
+         *
+         * @param host
+         * @param wrapper
+         * @param templateMethod
+         * @param invocation
+         * @param includeDelegate
+         * @return {@link JMethod} whose body is as yet unimplemented
+         */
+        private JMethod entryPoint(JDefinedClass host, JMethod wrapper, ExecutableElement templateMethod,
+            JInvocation invocation, boolean includeDelegate) {
+            final JMethod entry = host.method(JMod.NONE, wrapper.type(), wrapper.name());
+
+            wrapper.typeParamList().forEach(tp -> entry.generify(tp.name()).boundLike(tp));
+            documentTypeParameters(entry, templateMethod);
+
+            if (includeDelegate) {
+                final JVar delegateParam = entry.param(delegateType, DELEGATE_FIELD_NAME);
+                entry.javadoc().addParam(delegateParam).append(delegateType).add("delegate");
+                invocation.arg(delegateParam);
+            }
+            final List<JVar> params = wrapper.params().subList(1, wrapper.params().size());
+            final Iterator<? extends VariableElement> templateParams = templateMethod.getParameters().iterator();
+            for (JVar p : params) {
+                final JVar param = entry.param(p.mods().getValue(), p.type(), p.name());
+                entry.javadoc().addParam(param).add(doc(templateParams.next()));
+                invocation.arg(param);
+            }
+            if (wrapper.hasVarArgs()) {
+                final JVar varParam = wrapper.varParam();
+                final JVar param =
+                    entry.varParam(varParam.mods().getValue(), varParam.type().elementType(), varParam.name());
+                entry.javadoc().addParam(param).add(doc(templateParams.next()));
+                invocation.arg(param);
+            }
+            final Map<String, String[]> docThrows = docThrows(templateMethod);
+            wrapper.getThrows().forEach(twn -> {
+                entry._throws(twn);
+                entry.javadoc().addThrows(twn).add(docThrows.get(twn.fullName()));
+            });
+            if (codeModel.VOID != wrapper.type()) {
+                entry.javadoc().addReturn().add(wrapper.type());
+            }
+            return entry;
+        }
+
+        /**
+         * Define the session class, along with the snap-in method that opens it.
+         *
+         * @param snapin
+         * @return {@link JDefinedClass}
+         */
+        private JDefinedClass defineSession(JDefinedClass snapin) {
+            final JDefinedClass session;
+            try {
+                session = snapin._class(JMod.PUBLIC | JMod.FINAL, SESSION_CLASS_NAME);
+            } catch (Exception e) {
+                error(e, "Unable to define class %s.%s:", snapin.fullName(), SESSION_CLASS_NAME);
+                throw new IllegalStateException(e);
+            }
+            session._implements(AutoCloseable.class);
+            session.javadoc().add(String.format(
+                "Session during which a single delegate is installed on this {@link %s}, permitting template methods",
+                snapin.name()));
+            session.javadoc().add(" to be called repeatedly without the overhead of the wrapper methods.");
+
+            final JFieldVar closed = session.field(JMod.PRIVATE, codeModel.BOOLEAN, CLOSED_FIELD_NAME);
+            final JMethod ctor = session.constructor(JMod.NONE);
+            final JFieldVar previous;
+            if (annotation.reentrant()) {
+                previous = session.field(JMod.PRIVATE | JMod.FINAL, delegateType, PREVIOUS_NAME);
+                ctor.body().assign(JExpr.ref(_this(), previous),
+                    ctor.param(JMod.FINAL, delegateType, PREVIOUS_NAME));
+            } else {
+                previous = null;
+            }
+
+            final JMethod close = session.method(JMod.PUBLIC, codeModel.VOID, "close");
+            close.annotate(Override.class);
+            close.javadoc().add("Close this session, uninstalling its delegate. Subsequent calls have no effect.");
+            JBlock block = close.body();
+            block._if(JExpr.ref(_this(), closed))._then()._return();
+            block.assign(JExpr.ref(_this(), closed), JExpr.TRUE);
+            if (concurrency == Concurrency.REENTRANT_LOCK) {
+                final JTryBlock tryBlock = block._try();
+                tryBlock._finally().add(JExpr.ref(snapin.staticRef("this"), LOCK_FIELD_NAME).invoke("unlock"));
+                block = tryBlock.body();
+            }
+            restoreDelegate(block, JExpr.ref(snapin.staticRef("this"), DELEGATE_FIELD_NAME),
+                previous == null ? null : JExpr.ref(_this(), previous));
+
+            final AbstractJClass sessionType = innerType(session);
+
+            final JMethod open = snapin.method(JMod.PUBLIC | JMod.FINAL, sessionType, "open");
+            final JVar delegateParam = open.param(JMod.FINAL, delegateType, DELEGATE_FIELD_NAME);
+            open.javadoc().add(String.format("Open a {@link %s} using {@code delegate}. The session must be closed",
+                SESSION_CLASS_NAME));
+            open.javadoc().add(" by the thread that opened it.");
+            open.javadoc().addParam(delegateParam).append(delegateType).add("delegate");
+            open.javadoc().addReturn().add(sessionType);
+
+            block = open.body();
+            block._if(eq(delegateParam, _null()))._then().add(nullDelegate());
+            final JFieldRef lockField = JExpr.ref(_this(), LOCK_FIELD_NAME);
+            if (concurrency == Concurrency.REENTRANT_LOCK) {
+                block.add(lockField.invoke("lock"));
+            }
+            final JInvocation newSession = _new(sessionType);
+            if (annotation.reentrant()) {
+                newSession.arg(block.decl(JMod.FINAL, delegateType, PREVIOUS_NAME, currentDelegate()));
+            } else {
+                final JBlock reentry = block._if(installed())._then();
+                if (concurrency == Concurrency.REENTRANT_LOCK) {
+                    reentry.add(lockField.invoke("unlock"));
+                }
+                reentry.add(reentered());
+                open.javadoc().addThrows(IllegalStateException.class).add("if a delegate is already installed");
+            }
+            installDelegate(block, delegateParam);
+            block._return(newSession);
+
+            return session;
+        }
+
+        /**
+         * Define the companion pool class.
+         *
+         * @return {@link JDefinedClass}
+         */
+        private JDefinedClass definePool() {
+            final String name = snapin.name() + POOL_CLASS_SUFFIX;
+            final JDefinedClass pool;
+            try {
+                pool = snapin._package()._class(JMod.PUBLIC | JMod.FINAL, name);
+            } catch (Exception e) {
+                error(e, "Unable to define class %s.%s:", snapin._package().name(), name);
+                throw new IllegalStateException(e);
+            }
+            filer.originate(pool.fullName(), element);
+            LangModel.to(codeModel).copyTo(element.getTypeParameters(), pool);
+
+            pool.javadoc().add(String.format(
+                "Pool of {@link %s} instances, striped by thread, to spread contention among concurrent callers.",
+                snapin.name()));
+            element.getTypeParameters().forEach(tp -> {
+                pool.javadoc().addParam(String.format(TYPE_PARAMETER_FORMAT, tp.getSimpleName())).add(doc(tp));
+            });
+
+            final AbstractJClass snapinType =
+                pool.typeParamList().isEmpty() ? snapin : snapin.narrow(pool.typeParams());
+            final AbstractJClass factoryType = codeModel.ref(Supplier.class).narrow(snapinType.wildcard());
+            final AbstractJClass stripesType = codeModel.ref(AtomicReferenceArray.class).narrow(snapinType);
+
+            final JFieldVar factory = pool.field(JMod.PRIVATE | JMod.FINAL, factoryType, "factory");
+            final JFieldVar stripes = pool.field(JMod.PRIVATE | JMod.FINAL, stripesType, "stripes");
+            final JFieldVar mask = pool.field(JMod.PRIVATE | JMod.FINAL, codeModel.INT, "mask");
+
+            // hand each thread the next index in turn, spreading threads evenly among the stripes:
+            final JFieldVar nextIndex = pool.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+                codeModel.ref(AtomicInteger.class), "NEXT_INDEX", _new(codeModel.ref(AtomicInteger.class)));
+            final JFieldVar threadIndex = pool.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+                codeModel.ref(ThreadLocal.class).narrow(Integer.class), "THREAD_INDEX",
+                codeModel.ref(ThreadLocal.class).staticInvoke("withInitial")
+                    .arg(new JLambdaMethodRef(nextIndex, "getAndIncrement")));
+
+            final AbstractJClass runtime = codeModel.ref(Runtime.class);
+            final JMethod defaultCtor = pool.constructor(JMod.PUBLIC);
+            defaultCtor.javadoc().add("Create a new pool sized to the number of available processors.");
+            final JVar defaultFactory = defaultCtor.param(JMod.FINAL, factoryType, "factory");
+            defaultCtor.javadoc().addParam(defaultFactory).add("creates snap-in instances");
+            defaultCtor.body().invoke("this").arg(defaultFactory)
+                .arg(runtime.staticInvoke("getRuntime").invoke("availableProcessors"));
+
+            final JMethod ctor = pool.constructor(JMod.PUBLIC);
+            ctor.javadoc().add("Create a new pool.");
+            final JVar factoryParam = ctor.param(JMod.FINAL, factoryType, "factory");
+            ctor.javadoc().addParam(factoryParam).add("creates snap-in instances");
+            final JVar size = ctor.param(JMod.FINAL, codeModel.INT, "size");
+            ctor.javadoc().addParam(size).add("minimum number of stripes; rounded up to a power of two");
+            ctor.javadoc().addThrows(IllegalArgumentException.class)
+                .add("if {@code size < 1} or {@code size > 1 << 30}, beyond which it cannot be rounded up");
+
+            ctor.body().assign(JExpr.ref(_this(), factory),
+                codeModel.ref(Objects.class).staticInvoke("requireNonNull").arg(factoryParam).arg("factory"));
+            ctor.body()._if(JOp.lt(size, JExpr.lit(1)))._then()
+                ._throw(_new(codeModel.ref(IllegalArgumentException.class)).arg("size must be positive"));
+            // a greater size would wrap negative when rounded up:
+            ctor.body()._if(JOp.gt(size, JOp.shl(JExpr.lit(1), JExpr.lit(30))))._then()
+                ._throw(_new(codeModel.ref(IllegalArgumentException.class)).arg("size must not exceed 1 << 30"));
+            final JVar stripeCount = ctor.body().decl(JMod.FINAL, codeModel.INT, "stripeCount",
+                codeModel.ref(Math.class).staticInvoke("max").arg(JExpr.lit(1)).arg(JOp.shl(
+                    codeModel.ref(Integer.class).staticInvoke("highestOneBit").arg(JOp.minus(size, JExpr.lit(1))),
+                    JExpr.lit(1))));
+            ctor.body().assign(JExpr.ref(_this(), stripes), _new(stripesType).arg(stripeCount));
+            ctor.body().assign(JExpr.ref(_this(), mask), JOp.minus(stripeCount, JExpr.lit(1)));
+
+            final JMethod get = pool.method(JMod.PUBLIC, snapinType, "get");
+            get.javadoc().add("Get the snap-in instance for the current thread's stripe, creating it if necessary.");
+            get.javadoc().addReturn().add(snapinType);
+            final JVar index = get.body().decl(JMod.FINAL, codeModel.INT, "index",
+                JOp.band(threadIndex.invoke("get"), mask));
+            final JVar result = get.body().decl(snapinType, "result", stripes.invoke("get").arg(index));
+            final JBlock create = get.body()._if(eq(result, _null()))._then();
+            create.assign(result, codeModel.ref(Objects.class).staticInvoke("requireNonNull")
+                .arg(factory.invoke("get")).arg("factory result"));
+            create._if(JOp.not(stripes.invoke("compareAndSet").arg(index).arg(_null()).arg(result)))._then()
+                .assign(result, stripes.invoke("get").arg(index));
+            get.body()._return(result);
+
+            final JMethod reclaim = pool.method(JMod.PUBLIC, codeModel.VOID, "reclaim");
+            reclaim.javadoc().add("Release all pooled instances; subsequent calls will obtain new instances from the");
+            reclaim.javadoc().add(" factory. Calls in progress complete using the instances they already hold.");
+            final JForLoop loop = reclaim.body()._for();
+            final JVar i = loop.init(codeModel.INT, "i", JExpr.lit(0));
+            loop.test(JOp.lt(i, stripes.invoke("length")));
+            loop.update(JOp.incr(i));
+            loop.body().add(stripes.invoke("set").arg(i).arg(_null()));
+
+            final JMethod sizeMethod = pool.method(JMod.PUBLIC, codeModel.INT, "size");
+            sizeMethod.javadoc().add("Get the number of stripes in this pool.");
+            sizeMethod.javadoc().addReturn().add("int");
+            sizeMethod.body()._return(stripes.invoke("length"));
+
+            return pool;
+        }
+
+        /**
+         * Add to {@code pool} a method to call {@code wrapper} on a pooled instance.
+         *
+         * @param pool
+         * @param wrapper
+         * @param templateMethod
+         */
+        private void poolTo(JDefinedClass pool, JMethod wrapper, ExecutableElement templateMethod) {
+            final JInvocation invocation = JExpr.invoke(JExpr.invoke("get"), wrapper.name());
+
+            final JMethod entry = entryPoint(pool, wrapper, templateMethod, invocation, true);
+            entry.javadoc().append(String.format("Call {@link %s#%s} using a pooled instance", snapin.name(),
+                templateMethod.getSimpleName()));
+
+            returnFrom(entry.body(), templateMethod.getReturnType(), invocation);
+        }
+
+        private boolean inherit(JDefinedClass target) {
+            final Element snapinTypeElement = snapinType.asElement();
+
+            if (snapinTypeElement.getKind().isInterface()) {
+                target._implements(delegateType);
+                return true;
+            }
+            if (isExtensibleClass(snapinTypeElement)) {
+                target._extends(delegateType);
+                return true;
+            }
+            return false;
+        }
+
+        private List<ExecutableElement> delegateMethods() {
+            return ElementFilter.methodsIn(snapinType.asElement().getEnclosedElements()).stream()
+                .filter(m -> !m.getModifiers().contains(Modifier.STATIC)).collect(Collectors.toList());
+        }
+
+        /**
+         * Forward {@code method} to the delegate obtained by {@code delegateAccess}.
+         *
+         * @param target
+         * @param method
+         * @param mods
+         * @param inheritance
+         * @param delegateAccess generates, into the body of its method argument, the expression by which the delegate
+         *        will be accessed
+         * @return generated {@link JMethod}
+         */
+        private JMethod forward(JDefinedClass target, ExecutableElement method, int mods, boolean inheritance,
+            Function<JMethod, IJExpression> delegateAccess) {
+            return forward(target, method, mods, inheritance, (impl, invoker) -> {
+                final JInvocation invocation = invoker.apply(delegateAccess.apply(impl));
+                returnFrom(instrumented(impl, signature(impl, 0)), method.getReturnType(), invocation);
+            });
+        }
+
+        /**
+         * Implement {@code method}, per {@code implementation}.
+         *
+         * @param target
+         * @param method
+         * @param mods
+         * @param inheritance
+         * @param implementation generates the body of its method argument, given a function by which to invoke the
+         *        interface method, with the method's arguments, upon a delegate expression
+         * @return generated {@link JMethod}
+         */
+        private JMethod forward(JDefinedClass target, ExecutableElement method, int mods, boolean inheritance,
+            BiConsumer<JMethod, Function<IJExpression, JInvocation>> implementation) {
+            final String name = method.getSimpleName().toString();
+
+            // the return type may be a mapped type variable, so defer until we can handle it
+            final JMethod impl = target.method(mods, codeModel.NULL, name);
+
+            // the same delegate method may be forwarded from several classes:
+            final TypeVariableRenamer utv = delegateMethodTypeVariables.computeIfAbsent(method, m -> {
+                final TypeVariableRenamer result = new TypeVariableRenamer(codeModel,
+                    snapin.typeParamList().stream().map(JTypeVar::name).collect(Collectors.toSet()));
+                LangModel.to(codeModel).copyTo(m.getTypeParameters(), result);
+                return result;
+            });
+
+            final Map<String, AbstractJClass> methodTypeArguments = new HashMap<>(delegateTypeArguments);
+            methodTypeArguments.putAll(utv.copyTo(impl));
+
+            final AbstractJType returnType = resolveVariables(method.getReturnType(), methodTypeArguments);
+            impl.type(returnType);
+            if (codeModel.VOID != returnType) {
+                impl.javadoc().addReturn().add(returnType);
+            }
+            if (inheritance) {
+                impl.annotate(Override.class);
+            }
+
+            final List<? extends VariableElement> methodParameters = method.getParameters();
+
+            int index = 0;
+            for (VariableElement p : methodParameters) {
+                final boolean varParam = ++index == methodParameters.size() && method.isVarArgs();
+                final int paramMods = LangModel.encodeModifiers(p.getModifiers());
+                final AbstractJType t = resolveVariables(p.asType(), methodTypeArguments);
+                final String paramName = p.getSimpleName().toString();
+
+                final JVar param;
+                if (varParam) {
+                    param = impl.varParam(paramMods, t.elementType(), paramName);
+                } else {
+                    param = impl.param(paramMods, t, paramName);
+                }
+                impl.javadoc().addParam(param).add("see interface");
+            }
+
+            // implement body:
+            implementation.accept(impl, delegate -> {
+                final JInvocation invocation = JExpr.invoke(delegate, name);
+                impl.params().forEach(invocation::arg);
+                Optional.ofNullable(impl.varParam()).ifPresent(invocation::arg);
+                return invocation;
+            });
+
+            if (inheritance) {
+                impl.javadoc().add("{@inheritDoc}");
+            }
+            impl.javadoc().addTag(JDocComment.TAG_SEE)
+                .add(String.format("%s#%s(%s)", delegateType.erasure().name(), name,
+                    Stream.concat(impl.params().stream(), Stream.of(impl.varParam()).filter(Objects::nonNull))
+                        .map(JVar::type).map(this::seeParameter).map(AbstractJType::name)
+                        .collect(Collectors.joining(", "))));
+
+            method.getThrownTypes().stream().map(Object::toString).<AbstractJClass> map(this::naiveType)
+                .forEach(((Consumer<AbstractJClass>) impl::_throws).andThen(twn -> {
+                    impl.javadoc().addThrows(twn).add("see interface");
+                }));
+
+            return impl;
+        }
+
+        /**
+         * Get a local variable name, based on {@code name}, that does not collide with any parameter of
+         * {@code method}.
+         *
+         * @param method
+         * @param name
+         * @return String
+         */
+        private String localName(JMethod method, String name) {
+            final Set<String> paramNames = Stream.concat(method.params().stream(),
+                Stream.of(method.varParam()).filter(Objects::nonNull)).map(JVar::name).collect(Collectors.toSet());
+            String result = name;
+            while (paramNames.contains(result)) {
+                result = "_" + result;
+            }
+            return result;
+        }
+
+        private AbstractJType seeParameter(AbstractJType type) {
+            if (type.isArray()) {
+                return seeParameter(type.elementType()).array();
+            }
+            if (type instanceof JTypeVar) {
+                return seeParameter(((JTypeVar) type)._extends());
+            }
+            return type.erasure();
+        }
+
+        private AbstractJClass represent(TypeMirror type, Map<String, AbstractJClass> variableMappingTypes)
+            throws ErrorTypeFound, CodeModelBuildingException {
+            switch (type.getKind()) {
+            case DECLARED:
+                final DeclaredType declaredType = DeclaredType.class.cast(type);
+
+                AbstractJClass result = resolutions.ref(TypeElement.class.cast(declaredType.asElement()));
+
+                for (TypeMirror arg : declaredType.getTypeArguments()) {
+                    result = result.narrow(represent(arg, variableMappingTypes));
+                }
+                return result;
+            case TYPEVAR:
+                final TypeVariable tv = TypeVariable.class.cast(type);
+
+                final TypeParameterElement typeParameter = TypeParameterElement.class.cast(tv.asElement());
+                final String genericElementName =
+                    TypeElement.class.cast(typeParameter.getGenericElement()).getQualifiedName().toString();
+
+                if (variableMappingTypes.containsKey(genericElementName)) {
+
+                    final Optional<JTypeVar> var = Stream.of(variableMappingTypes.get(genericElementName).typeParams())
+                        .filter(tp -> typeParameter.getSimpleName().contentEquals(tp.name())).findFirst();
+
+                    if (var.isPresent()) {
+                        return var.get();
+                    }
+                }
+                break;
+            default:
+                break;
+            }
+            return naiveType(type.toString());
+        }
+
+        private boolean isExtensibleClass(Element snapinTypeElement) {
+            if (snapinTypeElement.getKind() == ElementKind.CLASS) {
+                if (!snapinTypeElement.getModifiers().contains(Modifier.FINAL)) {
+                    return ElementFilter.constructorsIn(snapinTypeElement.getEnclosedElements()).stream()
+                        .filter(this::isExtensibleCtor).findFirst().isPresent();
+                }
+            }
+            return false;
+        }
+
+        private boolean isExtensibleCtor(ExecutableElement ctor) {
+            if ((ctor.getKind() == ElementKind.CONSTRUCTOR) && ctor.getParameters().isEmpty()) {
+                final Set<Modifier> mods = ctor.getModifiers();
+                if (mods.contains(Modifier.PUBLIC) || mods.contains(Modifier.PROTECTED)) {
+                    return true;
+                }
+                if (!mods.contains(Modifier.PRIVATE)) {
+                    return elements().getPackageOf(ctor).equals(elements().getPackageOf(element));
+                }
+            }
+            return false;
+        }
+
+        private void returnFrom(JBlock block, TypeMirror resultType, IJExpression expr) {
+            if (resultType.getKind() == TypeKind.VOID) {
+                block.add((JInvocation) expr);
+                block._return();
+            } else {
+                block._return(expr);
+            }
+        }
+
+        private Map<String, AbstractJClass> typeArguments(AbstractJClass type) {
+
+            final JTypeVar[] typeParams = type.erasure().typeParams();
+            final List<? extends AbstractJClass> typeArguments = type.getTypeParameters();
+
+            final Map<String, AbstractJClass> result = new LinkedHashMap<>();
+            for (int i = 0; (i < typeParams.length) && (i < typeArguments.size()); i++) {
+                result.put(typeParams[i].name(), typeArguments.get(i));
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends AbstractJType> T resolveVariables(TypeMirror type,
+            Map<String, ? extends AbstractJClass> typeMappings) {
+            switch (type.getKind()) {
+            case TYPEVAR:
+                return (T) typeMappings.get(TypeVariable.class.cast(type).asElement().getSimpleName().toString());
+
+            case WILDCARD:
+                final WildcardType wild = WildcardType.class.cast(type);
+                final TypeMirror xBound = wild.getExtendsBound();
+
+                if (xBound != null) {
+                    return (T) this.<AbstractJClass> resolveVariables(xBound, typeMappings).wildcard();
+                }
+                final TypeMirror sBound = wild.getSuperBound();
+                if (sBound != null) {
+                    return (T) this.<AbstractJClass> resolveVariables(sBound, typeMappings).wildcardSuper();
+                }
+                return (T) codeModel.wildcard();
+
+            case DECLARED:
+                final DeclaredType declaredType = DeclaredType.class.cast(type);
+
+                try {
+                    return (T) resolutions.resolve(declaredType, typeMappings, t -> {
+                        AbstractJClass result = resolutions.ref(TypeElement.class.cast(t.asElement()));
+
+                        for (TypeMirror arg : t.getTypeArguments()) {
+                            result = result.narrow(this.<AbstractJType> resolveVariables(arg, typeMappings));
+                        }
+                        return result;
+                    });
                 } catch (CodeModelBuildingException ex) {
                     // fall through:
                 }
@@ -0,0 +1,294 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Runtime registry of the snap-ins generated with the processor option {@code -Asnapin.index=true}, which writes an
+ * index of each compilation's templates to the resource {@value #RESOURCE}. The indexes visible to a
+ * {@link ClassLoader} are read, and merged, upon the first lookup; thereafter each lookup is answered from a map,
+ * without scanning or reflection. Where several indexes name the same template or snap-in, the first found prevails,
+ * as with the classes themselves; an entry conflicting with any earlier one is ignored entirely. Classes are loaded,
+ * without initialization, only when requested of an {@link Entry}. One registry is kept per {@link ClassLoader},
+ * referencing it weakly.
+ */
+public final class SnapinRegistry {
+    /**
+     * Path of the index resource.
+     */
+    public static final String RESOURCE = "META-INF/snapin/index";
+
+    /**
+     * Indexed snap-in.
+     */
+    public static final class Entry {
+        private final WeakReference<ClassLoader> classLoader;
+        private final String template;
+        private final String snapin;
+        private final String delegateType;
+
+        private Entry(WeakReference<ClassLoader> classLoader, String template, String snapin, String delegateType) {
+            this.classLoader = classLoader;
+            this.template = template;
+            this.snapin = snapin;
+            this.delegateType = delegateType;
+        }
+
+        /**
+         * Get the binary name of the template.
+         *
+         * @return String
+         */
+        public String templateName() {
+            return template;
+        }
+
+        /**
+         * Get the binary name of the generated snap-in.
+         *
+         * @return String
+         */
+        public String snapinName() {
+            return snapin;
+        }
+
+        /**
+         * Get the binary name of the delegate type.
+         *
+         * @return String
+         */
+        public String delegateTypeName() {
+            return delegateType;
+        }
+
+        /**
+         * Load the template.
+         *
+         * @return {@link Class}
+         * @throws IllegalStateException if not found
+         */
+        public Class<?> template() {
+            return load(template);
+        }
+
+        /**
+         * Load the generated snap-in.
+         *
+         * @return {@link Class}
+         * @throws IllegalStateException if not found
+         */
+        public Class<?> snapin() {
+            return load(snapin);
+        }
+
+        /**
+         * Load the delegate type.
+         *
+         * @return {@link Class}
+         * @throws IllegalStateException if not found
+         */
+        public Class<?> delegateType() {
+            return load(delegateType);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s -> %s (%s)", template, snapin, delegateType);
+        }
+
+        private Class<?> load(String name) {
+            final ClassLoader loader = classLoader.get();
+            Validate.validState(loader != null, "Class loader of indexed class %s has been collected", name);
+            try {
+                return Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(String.format("Indexed class %s not found", name), e);
+            }
+        }
+    }
+
+    /**
+     * Lookup maps, built once.
+     */
+    private static final class Index {
+        final Map<String, Entry> byTemplate = new LinkedHashMap<>();
+        final Map<String, Entry> bySnapin = new HashMap<>();
+        final Map<String, List<Entry>> byDelegateType = new HashMap<>();
+
+        Index(WeakReference<ClassLoader> classLoader) throws IOException {
+            final ClassLoader loader = classLoader.get();
+            Validate.validState(loader != null, "Class loader has been collected");
+            final Enumeration<URL> resources = loader.getResources(RESOURCE);
+            while (resources.hasMoreElements()) {
+                read(classLoader, resources.nextElement());
+            }
+            byDelegateType.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        }
+
+        private void read(WeakReference<ClassLoader> classLoader, URL resource) throws IOException {
+            try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+                int lineNumber = 0;
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lineNumber++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.charAt(0) == '#') {
+                        continue;
+                    }
+                    final String[] names = line.split("\\s+");
+                    Validate.validState(names.length == 3, "%s:%d: malformed entry %s", resource, lineNumber, line);
+
+                    final Entry entry = new Entry(classLoader, names[0], names[1], names[2]);
+                    if (!byTemplate.containsKey(entry.template) && !bySnapin.containsKey(entry.snapin)) {
+                        byTemplate.put(entry.template, entry);
+                        bySnapin.put(entry.snapin, entry);
+                        byDelegateType.computeIfAbsent(entry.delegateType, k -> new ArrayList<>()).add(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Registries by {@link ClassLoader}. A registry must not strongly reference its key.
+     */
+    private static final Map<ClassLoader, SnapinRegistry> REGISTRIES = new WeakHashMap<>();
+
+    /**
+     * Get the registry of snap-ins visible to {@code classLoader}. The indexes are not read until the first lookup.
+     *
+     * @param classLoader
+     * @return {@link SnapinRegistry}
+     */
+    public static SnapinRegistry of(ClassLoader classLoader) {
+        Validate.notNull(classLoader, "classLoader");
+        synchronized (REGISTRIES) {
+            return REGISTRIES.computeIfAbsent(classLoader, SnapinRegistry::new);
+        }
+    }
+
+    private final WeakReference<ClassLoader> classLoader;
+    private volatile Index index;
+
+    private SnapinRegistry(ClassLoader classLoader) {
+        this.classLoader = new WeakReference<>(classLoader);
+    }
+
+    /**
+     * Find the snap-in generated from {@code template}.
+     *
+     * @param template
+     * @return {@link Optional} {@link Entry}
+     */
+    public Optional<Entry> forTemplate(Class<?> template) {
+        return forTemplate(template.getName());
+    }
+
+    /**
+     * Find the snap-in generated from the template of binary name {@code template}.
+     *
+     * @param template
+     * @return {@link Optional} {@link Entry}
+     */
+    public Optional<Entry> forTemplate(String template) {
+        return Optional.ofNullable(index().byTemplate.get(template));
+    }
+
+    /**
+     * Find the entry of generated snap-in {@code snapin}.
+     *
+     * @param snapin
+     * @return {@link Optional} {@link Entry}
+     */
+    public Optional<Entry> forSnapin(Class<?> snapin) {
+        return forSnapin(snapin.getName());
+    }
+
+    /**
+     * Find the entry of the generated snap-in of binary name {@code snapin}.
+     *
+     * @param snapin
+     * @return {@link Optional} {@link Entry}
+     */
+    public Optional<Entry> forSnapin(String snapin) {
+        return Optional.ofNullable(index().bySnapin.get(snapin));
+    }
+
+    /**
+     * Find the snap-ins serving {@code delegateType}.
+     *
+     * @param delegateType
+     * @return unmodifiable {@link List} of {@link Entry}
+     */
+    public List<Entry> forDelegateType(Class<?> delegateType) {
+        return forDelegateType(delegateType.getName());
+    }
+
+    /**
+     * Find the snap-ins serving the delegate type of binary name {@code delegateType}.
+     *
+     * @param delegateType
+     * @return unmodifiable {@link List} of {@link Entry}
+     */
+    public List<Entry> forDelegateType(String delegateType) {
+        return index().byDelegateType.getOrDefault(delegateType, Collections.emptyList());
+    }
+
+    /**
+     * Get all entries, in the order found.
+     *
+     * @return unmodifiable {@link Collection} of {@link Entry}
+     */
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(index().byTemplate.values());
+    }
+
+    private Index index() {
+        Index result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    try {
+                        index = result = new Index(classLoader);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
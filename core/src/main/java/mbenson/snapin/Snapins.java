@@ -0,0 +1,381 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Runtime counterpart of {@link SnapinProcessor}, for templates loaded by code that was not compiled with the
+ * processor. As the template of a runtime snap-in cannot extend a generated class, it must itself implement the
+ * delegate interface (leaving abstract the methods to forward) along with {@link SnapinTemplate}, and its template
+ * methods must be concrete:
+ *
+ * <pre>
+ * abstract class GreeterTemplate implements SnapinTemplate&lt;Example&gt;, Example {
+ *     protected void greet(String name) {
+ *         call("greet", name);
+ *     }
+ * }
+ *
+ * Snapins.Engine&lt;GreeterTemplate, Example&gt; engine = Snapins.generate(GreeterTemplate.class);
+ * GreeterTemplate snapin = engine.newInstance();
+ * engine.run(snapin, example, s -&gt; s.greet("world"));
+ * </pre>
+ *
+ * The generated class is that of a {@link Snapin.Concurrency#SYNCHRONIZED} snap-in: a {@code final} subclass of the
+ * template whose {@code synchronized} interface methods forward to the installed delegate, defined in the package of
+ * the template (as a hidden class where the JVM supports these) so that package-private templates may be used.
+ * Generated classes are cached per template class, and thus per class loader.
+ */
+public final class Snapins {
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private static final ClassValue<Engine<?, ?>> ENGINES = new ClassValue<Engine<?, ?>>() {
+
+        @Override
+        protected Engine<?, ?> computeValue(Class<?> type) {
+            return new Engine<>(type);
+        }
+    };
+
+    /**
+     * Implemented by generated snap-in classes, to install their delegates; not for use by templates.
+     */
+    public interface Host {
+
+        /**
+         * Get the installed delegate.
+         *
+         * @return Object, possibly {@code null}
+         */
+        Object snapinDelegate();
+
+        /**
+         * Install a delegate.
+         *
+         * @param delegate {@code null} to uninstall
+         */
+        void snapinDelegate(Object delegate);
+    }
+
+    /**
+     * A template method call returning a value.
+     *
+     * @param <S> snap-in type
+     * @param <R> result type
+     * @param <X> exception type
+     */
+    @FunctionalInterface
+    public interface TemplateCall<S, R, X extends Throwable> {
+
+        /**
+         * Call a template method of {@code snapin}.
+         *
+         * @param snapin
+         * @return R
+         * @throws X
+         */
+        R call(S snapin) throws X;
+    }
+
+    /**
+     * A template method call returning no value.
+     *
+     * @param <S> snap-in type
+     * @param <X> exception type
+     */
+    @FunctionalInterface
+    public interface TemplateRun<S, X extends Throwable> {
+
+        /**
+         * Call a template method of {@code snapin}.
+         *
+         * @param snapin
+         * @throws X
+         */
+        void run(S snapin) throws X;
+    }
+
+    /**
+     * Creates instances of, and calls template methods against, a generated snap-in class.
+     *
+     * @param <S> template type
+     * @param <T> delegate type
+     */
+    public static final class Engine<S, T> {
+        private final Class<T> delegateType;
+        private final Class<? extends S> type;
+        private final Constructor<? extends S> constructor;
+
+        @SuppressWarnings("unchecked")
+        private Engine(Class<?> template) {
+            Validate.isTrue(!template.isInterface() && Modifier.isAbstract(template.getModifiers()),
+                "%s should be an abstract class", template);
+            delegateType = (Class<T>) resolveDelegateType(template);
+            Validate.isTrue(delegateType.isInterface(), "%s: snap-in type %s should be an interface", template,
+                delegateType);
+            Validate.isTrue(delegateType.isAssignableFrom(template), "%s should implement %s", template,
+                delegateType);
+            Validate.isTrue(Stream.of(template.getDeclaredConstructors())
+                .anyMatch(c -> c.getParameterCount() == 0 && !Modifier.isPrivate(c.getModifiers())),
+                "%s should declare a non-private constructor without parameters", template);
+
+            final List<Method> forwarded = forwarded(template, delegateType);
+            final String name = String.format("%s$$Snapin%d", template.getName(), COUNTER.incrementAndGet());
+            final byte[] bytes = new SnapinClassWriter(name, template, delegateType).write(forwarded);
+            try {
+                type = (Class<? extends S>) define(template, name, bytes);
+                constructor = type.getConstructor();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(String.format("Unable to define snap-in class of %s", template), e);
+            }
+        }
+
+        /**
+         * Get the generated snap-in class.
+         *
+         * @return {@link Class}
+         */
+        public Class<? extends S> type() {
+            return type;
+        }
+
+        /**
+         * Get the delegate type.
+         *
+         * @return {@link Class}
+         */
+        public Class<T> delegateType() {
+            return delegateType;
+        }
+
+        /**
+         * Create a new snap-in instance.
+         *
+         * @return S
+         */
+        public S newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Call a template method of {@code snapin} using {@code delegate}, as does a wrapper method of a generated
+         * snap-in.
+         *
+         * @param <R> result type
+         * @param <X> exception type
+         * @param snapin created by this {@link Engine}
+         * @param delegate
+         * @param template method call
+         * @return R
+         * @throws X
+         * @throws IllegalStateException if a delegate is already installed
+         */
+        public <R, X extends Throwable> R call(S snapin, T delegate, TemplateCall<? super S, ? extends R, X> template)
+            throws X {
+            Validate.notNull(delegate);
+            final Host host = (Host) snapin;
+            synchronized (host) {
+                if (host.snapinDelegate() != null) {
+                    throw new IllegalStateException("Re-entry not permitted");
+                }
+                try {
+                    host.snapinDelegate(delegate);
+                    return template.call(snapin);
+                } finally {
+                    host.snapinDelegate(null);
+                }
+            }
+        }
+
+        /**
+         * Call a {@code void} template method of {@code snapin} using {@code delegate}, as does a wrapper method of
+         * a generated snap-in.
+         *
+         * @param <X> exception type
+         * @param snapin created by this {@link Engine}
+         * @param delegate
+         * @param template method call
+         * @throws X
+         * @throws IllegalStateException if a delegate is already installed
+         */
+        public <X extends Throwable> void run(S snapin, T delegate, TemplateRun<? super S, X> template) throws X {
+            call(snapin, delegate, s -> {
+                template.run(s);
+                return null;
+            });
+        }
+    }
+
+    private Snapins() {
+    }
+
+    /**
+     * Get the {@link Engine} of {@code template}, generating its snap-in class upon first use.
+     *
+     * @param <S> template type
+     * @param <T> delegate type
+     * @param template
+     * @return {@link Engine}
+     * @throws IllegalArgumentException if {@code template} is unsuitable
+     */
+    @SuppressWarnings("unchecked")
+    public static <S extends SnapinTemplate<T>, T> Engine<S, T> generate(Class<S> template) {
+        Validate.notNull(template, "template");
+        return (Engine<S, T>) ENGINES.get(template);
+    }
+
+    /**
+     * Get the delegate type declared by {@code template}.
+     *
+     * @param template
+     * @return {@link Class}
+     */
+    private static Class<?> resolveDelegateType(Class<?> template) {
+        for (Class<?> c = template; c != null; c = c.getSuperclass()) {
+            for (Type t : c.getGenericInterfaces()) {
+                if (t instanceof ParameterizedType && ((ParameterizedType) t).getRawType() == SnapinTemplate.class) {
+                    Type arg = ((ParameterizedType) t).getActualTypeArguments()[0];
+                    if (arg instanceof ParameterizedType) {
+                        arg = ((ParameterizedType) arg).getRawType();
+                    }
+                    Validate.isTrue(arg instanceof Class, "%s: unable to resolve snap-in type %s", template, arg);
+                    return (Class<?>) arg;
+                }
+            }
+        }
+        throw new IllegalArgumentException(String.format("%s should implement SnapinTemplate", template));
+    }
+
+    /**
+     * Get the methods of {@code delegateType} that the snap-in class of {@code template} should forward: those
+     * {@code template} does not implement, including default methods as does {@link SnapinProcessor}. Any other
+     * abstract method of {@code template} is an error.
+     *
+     * @param template
+     * @param delegateType
+     * @return {@link List} of {@link Method}
+     */
+    private static List<Method> forwarded(Class<?> template, Class<?> delegateType) {
+        final Map<String, Method> result = new LinkedHashMap<>();
+        for (Method method : delegateType.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            final Method implementation;
+            try {
+                implementation = template.getMethod(method.getName(), method.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+            if (implementation.getDeclaringClass().isInterface()
+                || Modifier.isAbstract(implementation.getModifiers())) {
+                result.putIfAbsent(signature(method), method);
+            }
+        }
+        final Set<String> concrete = new HashSet<>(result.keySet());
+        final List<String> unimplemented = new ArrayList<>();
+        for (Class<?> c = template; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                final String signature = signature(method);
+                if (!Modifier.isAbstract(method.getModifiers())) {
+                    concrete.add(signature);
+                } else if (!concrete.contains(signature)) {
+                    unimplemented.add(signature);
+                }
+            }
+        }
+        Validate.isTrue(unimplemented.isEmpty(), "%s: template methods of a runtime snap-in should be concrete: %s",
+            template, unimplemented);
+        return new ArrayList<>(result.values());
+    }
+
+    private static String signature(Method method) {
+        return method.getName() + Arrays.toString(method.getParameterTypes());
+    }
+
+    /**
+     * Define a class in the package of {@code host}: as a hidden class where supported (Java 15+), else via a
+     * private {@link Lookup} (Java 9+, or where the host lies in another module), else via {@link ClassLoader}.
+     *
+     * @param host
+     * @param name
+     * @param bytes
+     * @return {@link Class}
+     * @throws ReflectiveOperationException
+     */
+    private static Class<?> define(Class<?> host, String name, byte[] bytes) throws ReflectiveOperationException {
+        final Method privateLookupIn;
+        try {
+            privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, Lookup.class);
+        } catch (NoSuchMethodException e) {
+            final Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class,
+                int.class, int.class, ProtectionDomain.class);
+            defineClass.setAccessible(true);
+            return (Class<?>) defineClass.invoke(host.getClassLoader(), name, bytes, 0, bytes.length,
+                host.getProtectionDomain());
+        }
+        final Lookup lookup = (Lookup) privateLookupIn.invoke(null, host, MethodHandles.lookup());
+        try {
+            final Class<?> classOption = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            final Object noOptions = Array.newInstance(classOption, 0);
+            final Method defineHiddenClass =
+                Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, noOptions.getClass());
+            return ((Lookup) defineHiddenClass.invoke(lookup, bytes, true, noOptions)).lookupClass();
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            // before JDK 15
+        } catch (InvocationTargetException e) {
+            // a template outside the module of this class yields no full privilege access, but package access suffices:
+            if (!(e.getCause() instanceof IllegalAccessException)) {
+                throw e;
+            }
+        }
+        return (Class<?>) Lookup.class.getMethod("defineClass", byte[].class).invoke(lookup, bytes);
+    }
+}
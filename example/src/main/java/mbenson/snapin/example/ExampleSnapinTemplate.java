@@ -20,7 +20,7 @@ import mbenson.snapin.Snapin.Doc;
 import mbenson.snapin.Snapin.DocThrow;
 import mbenson.snapin.SnapinTemplate;
 
-@Snapin("ExampleSnapin")
+@Snapin(value = "ExampleSnapin", bind = true, pool = true, batch = true)
 @Doc({ "This is an example snapin.", "It's great." })
 abstract class ExampleSnapinTemplate<@Doc("type of blah blah blah") T> implements SnapinTemplate<Example> {
 
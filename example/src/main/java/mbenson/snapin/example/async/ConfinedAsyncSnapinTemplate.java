@@ -0,0 +1,30 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.async;
+
+import java.util.function.Consumer;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.SnapinTemplate;
+
+@Snapin(value = "ConfinedAsyncSnapin", concurrency = Snapin.Concurrency.THREAD_CONFINED, async = true)
+@Doc("snapin whose generic consumers are fed asynchronously without locking")
+abstract class ConfinedAsyncSnapinTemplate<@Doc("element type") T> implements SnapinTemplate<Consumer<T>> {
+
+    @Doc("feed")
+    protected abstract void feed(@Doc("element") T t);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.concurrent;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Concurrency;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.SnapinTemplate;
+import mbenson.snapin.example.Example;
+
+@Snapin(value = "ConfinedSnapin", concurrency = Concurrency.THREAD_CONFINED, bind = true, session = true,
+    reentrant = true)
+@Doc("snapin whose delegate is confined to the calling thread")
+abstract class ConfinedSnapinTemplate<@Doc("argument type") T> implements SnapinTemplate<Example> {
+
+    @Doc("foo")
+    protected abstract void foo(@Doc("argument") T t);
+
+    @Doc("bar")
+    protected abstract <@Doc("result type") R> R bar(@Doc("argument") T t);
+}
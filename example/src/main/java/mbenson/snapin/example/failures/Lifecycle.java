@@ -0,0 +1,42 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.failures;
+
+/**
+ * Lifecycle listener whose methods share the names of the snap-in's failure paths.
+ */
+public interface Lifecycle {
+
+    /**
+     * Notify that no delegate was given.
+     */
+    void nullDelegate();
+
+    /**
+     * Notify that no delegate was installed.
+     */
+    void noDelegate();
+
+    /**
+     * Notify of re-entry.
+     */
+    void reentered();
+
+    /**
+     * Notify that a session closed.
+     */
+    void sessionClosed();
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.fanout;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.Snapin.FanOutResult;
+import mbenson.snapin.SnapinTemplate;
+
+@Snapin(value = "LastFanOutSnapin", fanOut = true, fanOutResult = FanOutResult.LAST)
+@Doc("snapin whose fanned out sinks return the last result")
+abstract class LastFanOutSnapinTemplate implements SnapinTemplate<Sink> {
+
+    @Doc("tally")
+    protected abstract int tally(@Doc("key") String key);
+}
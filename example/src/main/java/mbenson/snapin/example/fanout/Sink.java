@@ -0,0 +1,65 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.fanout;
+
+import java.io.IOException;
+
+/**
+ * Event sink, such as a primary store alongside audit and replica sinks.
+ */
+public interface Sink {
+
+    /**
+     * Accept an event.
+     *
+     * @param event to accept
+     * @throws IOException on failure
+     */
+    void accept(String event) throws IOException;
+
+    /**
+     * Accept several events.
+     *
+     * @param events to accept
+     */
+    void acceptAll(String... events);
+
+    /**
+     * Count the events accepted for {@code key}.
+     *
+     * @param key of events
+     * @return int
+     */
+    int count(String key);
+
+    /**
+     * Weigh the events accepted for {@code key}.
+     *
+     * @param key of events
+     * @return double
+     */
+    double weight(String key);
+
+    /**
+     * Get the value recorded for {@code key}.
+     *
+     * @param <V> value type
+     * @param key of value
+     * @param type of value
+     * @return V
+     */
+    <V> V get(String key, Class<V> type);
+}
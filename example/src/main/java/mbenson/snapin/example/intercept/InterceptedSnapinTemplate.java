@@ -0,0 +1,36 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.intercept;
+
+import java.io.IOException;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.Snapin.DocThrow;
+import mbenson.snapin.SnapinTemplate;
+import mbenson.snapin.example.Example;
+
+@Snapin(value = "InterceptedSnapin", bind = true, batch = true, metrics = true, intercept = true)
+@Doc("snapin reporting its calls to an interceptor")
+abstract class InterceptedSnapinTemplate<@Doc("argument type") T> implements SnapinTemplate<Example> {
+
+    @Doc("foo")
+    protected abstract void foo(@Doc("argument") T t);
+
+    @Doc("load")
+    @DocThrow(type = IOException.class, value = "if loading fails")
+    protected abstract <@Doc("result type") R> R load(@Doc("argument") T t) throws IOException;
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.memo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Concurrency;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.Snapin.Memoize;
+import mbenson.snapin.Snapin.Memoize.Eviction;
+import mbenson.snapin.SnapinTemplate;
+
+@Snapin(value = "MemoizedSnapin", concurrency = Concurrency.THREAD_CONFINED, bind = true)
+@Doc("snapin remembering the results of pure template methods")
+abstract class MemoizedSnapinTemplate<@Doc("input type") I, @Doc("output type") O>
+    implements SnapinTemplate<Function<I, O>> {
+
+    @Doc("apply, forgetting the least recently used of two results")
+    @Memoize(size = 2)
+    protected abstract O recent(@Doc("input") I input);
+
+    @Doc("apply, forgetting the least frequently used of two results")
+    @Memoize(size = 2, eviction = Eviction.LFU)
+    protected abstract O frequent(@Doc("input") I input);
+
+    @Doc("apply, forgetting results after a while")
+    @Memoize(expireAfter = 50, unit = TimeUnit.MILLISECONDS)
+    protected abstract O expiring(@Doc("input") I input);
+
+    @Doc("apply to each of several inputs, returning the number of distinct outputs")
+    @Memoize
+    protected abstract int distinct(@Doc("inputs") I... inputs);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.specialize;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.Snapin.Specialize;
+import mbenson.snapin.SnapinTemplate;
+
+@Snapin(value = "SpecializedSnapin", bind = true, pool = true, batch = true)
+@Doc("snapin with primitive specializations")
+abstract class SpecializedSnapinTemplate implements SnapinTemplate<Accumulator> {
+
+    @Doc("accumulate")
+    protected abstract <@Doc("numeric type") @Specialize({ int.class, long.class }) N extends Number> void accumulate(
+        @Doc("value") N value);
+
+    @Doc("scale")
+    protected abstract <@Doc("scaled type") @Specialize(double.class) X extends Number,
+        @Doc("factor type") @Specialize({ int.class, long.class }) F extends Number> X scale(@Doc("value") X value,
+            @Doc("factor") F factor);
+}
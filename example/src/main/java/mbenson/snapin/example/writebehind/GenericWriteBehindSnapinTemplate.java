@@ -0,0 +1,31 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.writebehind;
+
+import java.util.function.Consumer;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.SnapinTemplate;
+
+@Snapin(value = "GenericWriteBehindSnapin", concurrency = Snapin.Concurrency.THREAD_CONFINED, writeBehind = 8,
+    session = true, lazy = true)
+@Doc("snapin whose generic consumers are fed write-behind")
+abstract class GenericWriteBehindSnapinTemplate<@Doc("element type") T> implements SnapinTemplate<Consumer<T>> {
+
+    @Doc("feed")
+    protected abstract void feed(@Doc("elements") Iterable<? extends T> elements);
+}
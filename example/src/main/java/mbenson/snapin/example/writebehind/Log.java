@@ -0,0 +1,68 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.writebehind;
+
+import java.io.IOException;
+
+/**
+ * Log, such as one written to a remote service.
+ */
+public interface Log {
+
+    /**
+     * Write a message.
+     *
+     * @param message to write
+     */
+    void write(String message);
+
+    /**
+     * Write a message at a level.
+     *
+     * @param level of message
+     * @param message to write
+     */
+    void write(int level, String message);
+
+    /**
+     * Record a measurement.
+     *
+     * @param name of measurement
+     * @param value measured
+     */
+    void measure(String name, double value);
+
+    /**
+     * Write several messages.
+     *
+     * @param messages to write
+     */
+    void writeAll(String... messages);
+
+    /**
+     * Sync written messages to storage.
+     *
+     * @throws IOException on failure
+     */
+    void sync() throws IOException;
+
+    /**
+     * Get the number of messages written.
+     *
+     * @return int
+     */
+    int written();
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.writebehind;
+
+import java.io.IOException;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.Snapin.Doc;
+import mbenson.snapin.Snapin.DocThrow;
+import mbenson.snapin.SnapinTemplate;
+
+@Snapin(value = "WriteBehindSnapin", writeBehind = 4, reentrant = true, batch = true)
+@Doc("snapin whose log writes are buffered")
+abstract class WriteBehindSnapinTemplate implements SnapinTemplate<Log> {
+
+    @Doc("report")
+    protected abstract void report(@Doc("count") int count);
+
+    @Doc("report, then sync")
+    @DocThrow(type = IOException.class, value = "if the log fails")
+    protected abstract int reportAndSync(@Doc("count") int count) throws IOException;
+}
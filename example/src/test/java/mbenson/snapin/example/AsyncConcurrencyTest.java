@@ -0,0 +1,76 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static mbenson.snapin.example.ProcessorCompilation.source;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verifies that asynchronous calls are permitted only with {@code THREAD_CONFINED} concurrency.
+ */
+public class AsyncConcurrencyTest {
+    private static final String REJECTED = "specify THREAD_CONFINED concurrency";
+
+    private static JavaFileObject template(String concurrency) {
+        return source("async.ConcurrentSnapinTemplate",
+            "package async;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+                + "@Snapin(value = \"ConcurrentSnapin\", concurrency = Snapin.Concurrency." + concurrency
+                + ", async = true)\n"
+                + "abstract class ConcurrentSnapinTemplate implements SnapinTemplate<Runnable> {\n"
+                + "    protected abstract void go();\n" + "}\n");
+    }
+
+    @Rule
+    public final TemporaryFolder output = new TemporaryFolder();
+
+    private ProcessorCompilation compilation;
+
+    @Before
+    public void setup() {
+        compilation = new ProcessorCompilation(output.getRoot());
+    }
+
+    @Test
+    public void testThreadConfined() throws IOException {
+        assertEquals(Collections.singleton("async.ConcurrentSnapin"),
+            compilation.generated(template("THREAD_CONFINED")));
+    }
+
+    @Test
+    public void testSynchronized() throws IOException {
+        compilation.assertRejected(template("SYNCHRONIZED"), REJECTED);
+    }
+
+    @Test
+    public void testReentrantLock() throws IOException {
+        compilation.assertRejected(template("REENTRANT_LOCK"), REJECTED);
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        compilation.assertRejected(template("NONE"), REJECTED);
+    }
+}
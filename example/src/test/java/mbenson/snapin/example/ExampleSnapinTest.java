@@ -17,6 +17,7 @@ package mbenson.snapin.example;
 
 import static org.mockito.Mockito.verify;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -30,10 +31,11 @@ public class ExampleSnapinTest {
     private final Integer fooArg = Integer.valueOf(666);
     private final Boolean barArg = Boolean.TRUE;
     private final String[] bazArg = { "bazArg" };
+    private AutoCloseable mocks;
 
     @Before
     public void setup() {
-        MockitoAnnotations.initMocks(this);
+        mocks = MockitoAnnotations.openMocks(this);
         snapin = new ExampleSnapin<Integer>() {
 
             @Override
@@ -57,6 +59,11 @@ public class ExampleSnapinTest {
         usage = new ExampleUsage<Integer, Boolean>(example, fooArg, barArg, bazArg);
     }
 
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
     @Test
     public void test() throws Exception {
         usage.foo(snapin);
@@ -67,4 +74,17 @@ public class ExampleSnapinTest {
         verify(example).call("baz", bazArg);
     }
 
+    @Test
+    public void testBound() throws Exception {
+        final ExampleSnapin<Integer>.Bound bound = snapin.bind(example);
+        bound.call("direct", fooArg);
+        verify(example).call("direct", fooArg);
+        bound.foo(fooArg);
+        verify(example).call("foo", fooArg);
+        bound.bar(barArg);
+        verify(example).call("bar", barArg);
+        bound.baz(bazArg);
+        verify(example).call("baz", bazArg);
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static mbenson.snapin.example.ProcessorCompilation.source;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verifies that, with {@code -Asnapin.fingerprints=true}, unchanged templates are not regenerated on recompilation.
+ */
+public class FingerprintTest {
+    private static final String OPTION = "snapin.fingerprints";
+    private static final List<String> GENERATED =
+        Arrays.asList("fingerprint.FingerprintSnapin", "fingerprint.FingerprintSnapinPool");
+
+    private static JavaFileObject template(String doc) {
+        return source("fingerprint.FingerprintSnapinTemplate", "package fingerprint;\n"
+            + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+            + "@Snapin(value = \"FingerprintSnapin\", pool = true)\n" + "@Snapin.Doc(\"" + doc + "\")\n"
+            + "abstract class FingerprintSnapinTemplate<T> implements SnapinTemplate<Comparable<T>> {\n"
+            + "    protected abstract int foo(T t);\n" + "}\n");
+    }
+
+    private static JavaFileObject otherTemplate() {
+        return source("fingerprint.OtherSnapinTemplate",
+            "package fingerprint;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+                + "@Snapin(\"OtherSnapin\")\n"
+                + "abstract class OtherSnapinTemplate implements SnapinTemplate<Runnable> {\n"
+                + "    protected abstract void bar();\n" + "}\n");
+    }
+
+    @Rule
+    public final TemporaryFolder output = new TemporaryFolder();
+
+    private ProcessorCompilation compilation;
+    private long generatedAt;
+
+    @Before
+    public void setup() throws IOException {
+        compilation = new ProcessorCompilation(output.getRoot()).option(OPTION, true);
+        assertEquals(GENERATED, generated(compilation.compile(Collections.singletonList(template("doc")),
+            Collections.emptyList())));
+
+        // backdate output so that any rewrite is detectable:
+        generatedAt = System.currentTimeMillis() - 60000;
+        compilation.generatedSources().forEach(f -> f.setLastModified(generatedAt));
+    }
+
+    @Test
+    public void testUnchangedTemplateIsNotRegenerated() throws IOException {
+        assertTrue(recompile(compilation, "doc").isEmpty());
+        compilation.generatedSources().forEach(f -> assertEquals(f.getName(), generatedAt, f.lastModified()));
+    }
+
+    @Test
+    public void testChangedTemplateIsRegenerated() throws IOException {
+        assertEquals(GENERATED, generated(
+            compilation.compile(Collections.singletonList(template("changed doc")), Collections.emptyList())));
+        assertTrue(recompile(compilation, "changed doc").isEmpty());
+    }
+
+    @Test
+    public void testMissingOutputIsRegenerated() throws IOException {
+        // generated sources not part of the compilation, e.g. having been cleaned:
+        assertEquals(GENERATED,
+            generated(compilation.compile(Collections.singletonList(template("doc")), Collections.emptyList())));
+    }
+
+    @Test
+    public void testRemovedTemplateIsPruned() throws IOException {
+        assertEquals(Collections.singletonList("fingerprint.OtherSnapin"), generated(
+            compilation.compile(Arrays.asList(template("doc"), otherTemplate()), compilation.generatedSources())));
+        assertTrue(index().contains("fingerprint.OtherSnapinTemplate"));
+
+        // other template deleted, along with its generated output:
+        final List<File> generatedSources = compilation.generatedSources().stream()
+            .filter(f -> !f.getName().startsWith("Other")).collect(Collectors.toList());
+        assertTrue(compilation.compile(Collections.singletonList(template("doc")), generatedSources).isEmpty());
+        assertFalse(index().contains("fingerprint.OtherSnapinTemplate"));
+        assertTrue(index().contains("fingerprint.FingerprintSnapinTemplate"));
+    }
+
+    private String index() throws IOException {
+        return new String(Files.readAllBytes(
+            new File(compilation.sourceOutput(), "META-INF/snapin/fingerprints.properties").toPath()),
+            StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Recompile the template along with the sources previously generated, as Maven does.
+     */
+    private Map<String, List<String>> recompile(ProcessorCompilation compilation, String doc) throws IOException {
+        final List<File> generatedSources = compilation.generatedSources();
+        assertEquals(GENERATED.size(), generatedSources.size());
+        return compilation.compile(Collections.singletonList(template(doc)), generatedSources);
+    }
+
+    private static List<String> generated(Map<String, List<String>> origins) {
+        return Arrays.asList(origins.keySet().toArray(new String[0]));
+    }
+}
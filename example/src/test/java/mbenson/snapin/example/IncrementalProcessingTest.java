@@ -0,0 +1,111 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static mbenson.snapin.example.ProcessorCompilation.source;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import mbenson.snapin.SnapinProcessor;
+
+/**
+ * Verifies that {@link SnapinProcessor} honors the contract of an isolating processor, as it declares to Gradle
+ * unless indexing: each generated source derives from exactly one originating template, so that editing an unrelated
+ * source neither regenerates nor recompiles existing snap-ins.
+ */
+public class IncrementalProcessingTest {
+    private static final String TEMPLATE = "package incremental;\n" + "import mbenson.snapin.Snapin;\n"
+        + "import mbenson.snapin.SnapinTemplate;\n" + "@Snapin(value = \"IncrementalSnapin\", pool = true)\n"
+        + "abstract class IncrementalSnapinTemplate<T> implements SnapinTemplate<Comparable<T>> {\n"
+        + "    protected abstract int foo(T t);\n" + "}\n";
+
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
+    private static final String UNRELATED = "package incremental;\n" + "public class Unrelated {\n" + "}\n";
+
+    @Rule
+    public final TemporaryFolder output = new TemporaryFolder();
+
+    private ProcessorCompilation compilation;
+
+    @Before
+    public void setup() {
+        compilation = new ProcessorCompilation(output.getRoot());
+    }
+
+    @Test
+    public void testGeneratedSourcesOriginateFromTemplate() throws IOException {
+        final Map<String, List<String>> origins = compilation.compile(
+            Arrays.asList(source("incremental.IncrementalSnapinTemplate", TEMPLATE),
+                source("incremental.Unrelated", UNRELATED)),
+            Collections.emptyList());
+
+        assertEquals(Arrays.asList("incremental.IncrementalSnapin", "incremental.IncrementalSnapinPool"),
+            Arrays.asList(origins.keySet().toArray()));
+        origins.values().forEach(
+            elements -> assertEquals(Collections.singletonList("incremental.IncrementalSnapinTemplate"), elements));
+    }
+
+    @Test
+    public void testUnrelatedSourceGeneratesNothing() throws IOException {
+        // an isolating processor is only rerun over changed sources:
+        assertTrue(compilation
+            .compile(Collections.singletonList(source("incremental.Unrelated", UNRELATED + "// edited\n")),
+                Collections.emptyList())
+            .isEmpty());
+    }
+
+    @Test
+    public void testDeclaredDynamic() throws IOException {
+        try (
+            InputStream in =
+                SnapinProcessor.class.getResourceAsStream("/META-INF/gradle/incremental.annotation.processors");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            assertTrue(reader.lines().anyMatch((SnapinProcessor.class.getName() + ",dynamic")::equals));
+        }
+    }
+
+    @Test
+    public void testIsolatingUnlessIndexed() throws IOException {
+        compilation.compile(Collections.singletonList(source("incremental.Unrelated", UNRELATED)),
+            Collections.emptyList());
+        assertTrue(compilation.supportedOptions().contains(GRADLE_ISOLATING));
+        assertFalse(compilation.supportedOptions().contains(GRADLE_AGGREGATING));
+
+        // the index derives from all templates:
+        compilation.option("snapin.index", true).compile(
+            Collections.singletonList(source("incremental.Unrelated", UNRELATED)), Collections.emptyList());
+        assertTrue(compilation.supportedOptions().contains(GRADLE_AGGREGATING));
+        assertFalse(compilation.supportedOptions().contains(GRADLE_ISOLATING));
+    }
+}
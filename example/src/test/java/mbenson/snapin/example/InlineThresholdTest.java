@@ -0,0 +1,187 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import mbenson.snapin.example.concurrent.ConfinedSnapin;
+import mbenson.snapin.example.concurrent.LockingSnapin;
+import mbenson.snapin.example.concurrent.UnguardedSnapin;
+import mbenson.snapin.example.external.FunctionSnapin;
+import mbenson.snapin.example.lazy.ConfinedLazySnapin;
+import mbenson.snapin.example.lazy.LazySnapin;
+import mbenson.snapin.example.param.Parameterized;
+import mbenson.snapin.example.param.ParameterizedSnapin;
+
+/**
+ * Verifies that the bytecode of generated methods stays within the default inlining thresholds of HotSpot's C2
+ * compiler: {@code MaxInlineSize} for methods forwarding to the delegate, {@code FreqInlineSize} for the rest.
+ */
+public class InlineThresholdTest {
+    private static final int MAX_INLINE_SIZE = 35;
+    private static final int FREQ_INLINE_SIZE = 325;
+
+    @Test
+    public void testExampleSnapin() throws IOException {
+        assertWithinThresholds(ExampleSnapin.class, Example.class);
+        assertWithinThresholds(ExampleSnapin.Bound.class, Example.class);
+        assertWithinThresholds(ExampleSnapinPool.class, Example.class);
+    }
+
+    @Test
+    public void testConcurrentSnapins() throws IOException {
+        assertWithinThresholds(LockingSnapin.class, Example.class);
+        assertWithinThresholds(LockingSnapin.Session.class, Example.class);
+        assertWithinThresholds(ConfinedSnapin.class, Example.class);
+        assertWithinThresholds(ConfinedSnapin.Bound.class, Example.class);
+        assertWithinThresholds(ConfinedSnapin.Session.class, Example.class);
+        assertWithinThresholds(UnguardedSnapin.class, Example.class);
+        assertWithinThresholds(UnguardedSnapin.Session.class, Example.class);
+    }
+
+    @Test
+    public void testLazySnapins() throws IOException {
+        assertWithinThresholds(LazySnapin.class, Example.class);
+        assertWithinThresholds(ConfinedLazySnapin.class, Example.class);
+    }
+
+    @Test
+    public void testParameterizedSnapin() throws IOException {
+        assertWithinThresholds(ParameterizedSnapin.class, Parameterized.class);
+    }
+
+    @Test
+    public void testFunctionSnapin() throws IOException {
+        assertWithinThresholds(FunctionSnapin.class, Function.class);
+    }
+
+    private static void assertWithinThresholds(Class<?> generated, Class<?> delegateType) throws IOException {
+        final Set<String> forwarded =
+            Stream.of(delegateType.getMethods()).map(java.lang.reflect.Method::getName).collect(Collectors.toSet());
+        final Map<String, Integer> codeLengths = codeLengths(generated);
+        assertFalse(codeLengths.isEmpty());
+
+        codeLengths.forEach((method, length) -> {
+            final String name = method.substring(0, method.indexOf('('));
+            if ("<init>".equals(name) || "<clinit>".equals(name)) {
+                return;
+            }
+            final int threshold = forwarded.contains(name) ? MAX_INLINE_SIZE : FREQ_INLINE_SIZE;
+            assertTrue(String.format("%s#%s: %d bytes of bytecode exceed %d", generated.getName(), method, length,
+                threshold), length <= threshold);
+        });
+    }
+
+    /**
+     * Read the code length of each method of {@code type} from its class file.
+     *
+     * @param type
+     * @return {@link Map} of name + descriptor to code length
+     * @throws IOException
+     */
+    private static Map<String, Integer> codeLengths(Class<?> type) throws IOException {
+        final String resource = type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream classFile = type.getResourceAsStream(resource)) {
+            final DataInputStream in = new DataInputStream(classFile);
+            in.skipBytes(8); // magic, minor, major
+
+            final String[] utf8 = new String[in.readUnsignedShort()];
+            for (int i = 1; i < utf8.length; i++) {
+                final int tag = in.readUnsignedByte();
+                switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 15: // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    in.skipBytes(2);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown constant pool tag " + tag);
+                }
+            }
+            in.skipBytes(6); // access flags, this class, super class
+            in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+
+            final int fields = in.readUnsignedShort();
+            for (int i = 0; i < fields; i++) {
+                in.skipBytes(6);
+                skipAttributes(in);
+            }
+            final Map<String, Integer> result = new LinkedHashMap<>();
+            final int methods = in.readUnsignedShort();
+            for (int i = 0; i < methods; i++) {
+                in.skipBytes(2); // access flags
+                final String method = utf8[in.readUnsignedShort()] + utf8[in.readUnsignedShort()];
+                final int attributes = in.readUnsignedShort();
+                for (int j = 0; j < attributes; j++) {
+                    final String attribute = utf8[in.readUnsignedShort()];
+                    final int length = in.readInt();
+                    if ("Code".equals(attribute)) {
+                        in.skipBytes(4); // max stack, max locals
+                        result.put(method, in.readInt());
+                        in.skipBytes(length - 8);
+                    } else {
+                        in.skipBytes(length);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        final int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+
+import mbenson.snapin.Snapin;
+import mbenson.snapin.SnapinProcessor;
+
+/**
+ * Compiles sources with a {@link SnapinProcessor} into a given output directory, recording the originating
+ * elements passed to the {@link Filer} for each source file generated.
+ */
+class ProcessorCompilation {
+
+    static JavaFileObject source(String className, String content) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"),
+            JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+
+    private final File sourceOutput;
+    private final File classOutput;
+    private final List<String> options = new ArrayList<>();
+    private Set<String> supportedOptions;
+
+    ProcessorCompilation(File output) {
+        sourceOutput = new File(output, "sources");
+        classOutput = new File(output, "classes");
+        sourceOutput.mkdirs();
+        classOutput.mkdirs();
+    }
+
+    File sourceOutput() {
+        return sourceOutput;
+    }
+
+    File classOutput() {
+        return classOutput;
+    }
+
+    /**
+     * Get the options supported by the processor of the last compilation, once initialized.
+     *
+     * @return {@link Set} of String
+     */
+    Set<String> supportedOptions() {
+        return supportedOptions;
+    }
+
+    ProcessorCompilation option(String key, Object value) {
+        options.add(String.format("-A%s=%s", key, value));
+        return this;
+    }
+
+    /**
+     * Get the sources previously generated into the output directory, as a build tool would pass them to a
+     * subsequent compilation.
+     *
+     * @return {@link List} of {@link File}
+     * @throws IOException
+     */
+    List<File> generatedSources() throws IOException {
+        try (Stream<Path> files = Files.walk(sourceOutput.toPath())) {
+            return files.map(Path::toFile).filter(f -> f.getName().endsWith(".java"))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Compile {@code sources} alone.
+     *
+     * @param sources
+     * @return {@link Set} of generated type names
+     * @throws IOException
+     */
+    Set<String> generated(JavaFileObject... sources) throws IOException {
+        return compile(Arrays.asList(sources), Collections.emptyList()).keySet();
+    }
+
+    /**
+     * Assert that the processor rejects {@code source} with an error containing {@code message}.
+     *
+     * @param source
+     * @param message
+     * @throws IOException
+     */
+    void assertRejected(JavaFileObject source, String message) throws IOException {
+        try {
+            generated(source);
+            Assert.fail("compilation succeeded");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    /**
+     * Compile {@code sources}.
+     *
+     * @param sources
+     * @param files additional source files
+     * @return {@link Map} of generated type name to originating type names
+     * @throws IOException
+     */
+    Map<String, List<String>> compile(List<JavaFileObject> sources, List<File> files) throws IOException {
+        final Map<String, List<String>> result = new TreeMap<>();
+
+        final SnapinProcessor processor = new SnapinProcessor() {
+
+            // processor annotations are not inherited:
+            @Override
+            public Set<String> getSupportedAnnotationTypes() {
+                return Collections.singleton(Snapin.class.getName());
+            }
+
+            @Override
+            public Set<String> getSupportedOptions() {
+                final Set<String> result =
+                    new HashSet<>(Arrays.asList(SnapinProcessor.class.getAnnotation(SupportedOptions.class).value()));
+                result.addAll(super.getSupportedOptions());
+                return result;
+            }
+
+            @Override
+            public synchronized void init(ProcessingEnvironment processingEnv) {
+                final Filer filer = processingEnv.getFiler();
+                final Filer recording = (Filer) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Filer.class }, (proxy, method, args) -> {
+                        if ("createSourceFile".equals(method.getName())) {
+                            result.put(args[0].toString(), Stream.of((Element[]) args[1]).map(TypeElement.class::cast)
+                                .map(e -> e.getQualifiedName().toString()).collect(Collectors.toList()));
+                        }
+                        try {
+                            return method.invoke(filer, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+                super.init((ProcessingEnvironment) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { ProcessingEnvironment.class },
+                    (proxy, method, args) -> "getFiler".equals(method.getName()) ? recording
+                        : method.invoke(processingEnv, args)));
+                supportedOptions = getSupportedOptions();
+            }
+        };
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singleton(classOutput));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singleton(sourceOutput));
+
+            final List<JavaFileObject> compilationUnits = new ArrayList<>(sources);
+            fileManager.getJavaFileObjectsFromFiles(files).forEach(compilationUnits::add);
+
+            final List<String> args =
+                new ArrayList<>(Arrays.asList("-classpath", System.getProperty("java.class.path")));
+            args.addAll(options);
+
+            final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            final JavaCompiler.CompilationTask task =
+                compiler.getTask(null, fileManager, diagnostics, args, null, compilationUnits);
+            task.setProcessors(Collections.singleton(processor));
+            if (!task.call().booleanValue()) {
+                throw new IllegalStateException("compilation failed: " + diagnostics.getDiagnostics());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static mbenson.snapin.example.ProcessorCompilation.source;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import mbenson.snapin.SnapinRegistry;
+import mbenson.snapin.SnapinRegistry.Entry;
+
+/**
+ * Verifies the index written with {@code -Asnapin.index=true}, and its lookup by {@link SnapinRegistry}.
+ */
+public class SnapinIndexTest {
+    private static final String OPTION = "snapin.index";
+
+    private static final List<JavaFileObject> SOURCES = Arrays.asList(
+        source("index.IndexedSnapinTemplate",
+            "package index;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+                + "@Snapin(\"IndexedSnapin\")\n"
+                + "abstract class IndexedSnapinTemplate<T> implements SnapinTemplate<Comparable<T>> {\n"
+                + "    protected abstract int foo(T t);\n" + "}\n"),
+        source("index.Outer",
+            "package index;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+                + "public class Outer {\n" + "    @Snapin(\"NestedSnapin\")\n"
+                + "    static abstract class NestedTemplate implements SnapinTemplate<Runnable> {\n"
+                + "        protected abstract void foo();\n" + "    }\n" + "}\n"));
+
+    private static List<String> index(File classOutput) throws IOException {
+        return Files.readAllLines(new File(classOutput, SnapinRegistry.RESOURCE).toPath(), StandardCharsets.UTF_8)
+            .stream().filter(l -> !l.startsWith("#")).collect(Collectors.toList());
+    }
+
+    @Rule
+    public final TemporaryFolder output = new TemporaryFolder();
+
+    private ProcessorCompilation compilation;
+
+    @Before
+    public void setup() {
+        compilation = new ProcessorCompilation(output.getRoot());
+    }
+
+    @Test
+    public void testIndexWritten() throws IOException {
+        compilation.option(OPTION, true).compile(SOURCES, Collections.emptyList());
+
+        assertEquals(Arrays.asList("index.IndexedSnapinTemplate index.IndexedSnapin java.lang.Comparable",
+            "index.Outer$NestedTemplate index.NestedSnapin java.lang.Runnable"), index(compilation.classOutput()));
+    }
+
+    @Test
+    public void testNoIndexByDefault() throws IOException {
+        compilation.compile(SOURCES, Collections.emptyList());
+
+        assertFalse(new File(compilation.classOutput(), SnapinRegistry.RESOURCE).exists());
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        compilation.option(OPTION, true).compile(SOURCES, Collections.emptyList());
+
+        try (URLClassLoader loader = loader(compilation.classOutput())) {
+            final SnapinRegistry registry = SnapinRegistry.of(loader);
+
+            final Entry entry = registry.forTemplate("index.Outer$NestedTemplate").get();
+            assertEquals("index.NestedSnapin", entry.snapinName());
+            assertSame(Runnable.class, entry.delegateType());
+            assertSame(loader, entry.template().getClassLoader());
+            assertTrue(Runnable.class.isAssignableFrom(entry.snapin()));
+            assertSame(loader, entry.snapin().getClassLoader());
+
+            assertSame(entry, registry.forTemplate(entry.template()).get());
+            assertSame(entry, registry.forSnapin(entry.snapin()).get());
+            assertEquals(Collections.singletonList(entry), registry.forDelegateType(Runnable.class));
+            assertEquals("index.IndexedSnapin",
+                registry.forDelegateType(Comparable.class).get(0).snapinName());
+
+            assertFalse(registry.forTemplate(Object.class).isPresent());
+            assertTrue(registry.forDelegateType(Object.class).isEmpty());
+            assertEquals(2, registry.entries().size() - parentEntries());
+        }
+    }
+
+    @Test
+    public void testMergeAcrossClasspathEntries() throws IOException {
+        compilation.option(OPTION, true).compile(SOURCES, Collections.emptyList());
+
+        final File other = output.newFolder("other");
+        final File index = new File(other, SnapinRegistry.RESOURCE);
+        index.getParentFile().mkdirs();
+        Files.write(index.toPath(), Arrays.asList("# another jar", "other.Template other.Snapin java.lang.Runnable",
+            "index.IndexedSnapinTemplate other.Shadowed java.lang.Runnable",
+            "other.Conflicting index.NestedSnapin java.lang.Runnable"), StandardCharsets.UTF_8);
+
+        try (URLClassLoader loader = loader(compilation.classOutput(), other)) {
+            final SnapinRegistry registry = SnapinRegistry.of(loader);
+
+            assertEquals(3, registry.entries().size() - parentEntries());
+            // first found prevails:
+            assertEquals("index.IndexedSnapin", registry.forTemplate("index.IndexedSnapinTemplate").get().snapinName());
+            assertFalse(registry.forSnapin("other.Shadowed").isPresent());
+            // an entry whose snap-in is already taken is ignored altogether:
+            assertFalse(registry.forTemplate("other.Conflicting").isPresent());
+            assertEquals("index.Outer$NestedTemplate", registry.forSnapin("index.NestedSnapin").get().templateName());
+            assertEquals(Arrays.asList("index.NestedSnapin", "other.Snapin"), registry.forDelegateType(Runnable.class)
+                .stream().map(Entry::snapinName).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testRegistryPerClassLoader() throws IOException {
+        compilation.option(OPTION, true).compile(SOURCES, Collections.emptyList());
+
+        try (URLClassLoader loader = loader(compilation.classOutput());
+            URLClassLoader other = loader(compilation.classOutput())) {
+            final SnapinRegistry registry = SnapinRegistry.of(loader);
+            assertSame(registry, SnapinRegistry.of(loader));
+            assertNotSame(registry, SnapinRegistry.of(other));
+            assertSame(SnapinRegistry.of(other), SnapinRegistry.of(other));
+        }
+    }
+
+    @Test
+    public void testExampleIndex() {
+        final SnapinRegistry registry = SnapinRegistry.of(getClass().getClassLoader());
+
+        final Entry entry = registry.forTemplate(ExampleSnapinTemplate.class).get();
+        assertSame(ExampleSnapin.class, entry.snapin());
+        assertSame(Example.class, entry.delegateType());
+        assertTrue(registry.forDelegateType(Example.class).contains(entry));
+    }
+
+    /**
+     * Count the entries visible to the parent of our class loaders, i.e. those of the example snap-ins.
+     *
+     * @return int
+     */
+    private static int parentEntries() {
+        return SnapinRegistry.of(SnapinIndexTest.class.getClassLoader()).entries().size();
+    }
+
+    private static URLClassLoader loader(File... classpath) throws IOException {
+        final URL[] urls = new URL[classpath.length];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = classpath[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, SnapinIndexTest.class.getClassLoader());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static mbenson.snapin.example.ProcessorCompilation.source;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verifies the restriction of {@code @Specialize} on a type variable of the template class to the primitive type whose
+ * boxed type bounds it.
+ */
+public class SpecializeTest {
+
+    private static JavaFileObject template(String typeParameter) {
+        return source("specialize.ClassSpecializedSnapinTemplate",
+            "package specialize;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.Snapin.Specialize;\n"
+                + "import mbenson.snapin.SnapinTemplate;\n" + "import java.util.function.Consumer;\n"
+                + "@Snapin(\"ClassSpecializedSnapin\")\n" + "abstract class ClassSpecializedSnapinTemplate<"
+                + typeParameter + "> implements SnapinTemplate<Consumer<T>> {\n"
+                + "    protected abstract void take(T t);\n" + "}\n");
+    }
+
+    @Rule
+    public final TemporaryFolder output = new TemporaryFolder();
+
+    private ProcessorCompilation compilation;
+
+    @Before
+    public void setup() {
+        compilation = new ProcessorCompilation(output.getRoot());
+    }
+
+    @Test
+    public void testPinnedClassVariable() throws IOException {
+        assertEquals(Collections.singleton("specialize.ClassSpecializedSnapin"),
+            compilation.generated(template("@Specialize(int.class) T extends Integer")));
+    }
+
+    @Test
+    public void testUnpinnedClassVariable() throws IOException {
+        compilation.assertRejected(template("@Specialize(int.class) T extends Number"),
+            "cannot specialize class type variable T as int unless bounded by");
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static mbenson.snapin.example.ProcessorCompilation.source;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verifies that {@code -Asnapin.streaming=true}, generating each template into its own code model, generates the
+ * same sources from the same originating templates.
+ */
+public class StreamingEmissionTest {
+    private static final List<JavaFileObject> TEMPLATES = Arrays.asList(
+        source("streaming.FirstSnapinTemplate",
+            "package streaming;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+                + "@Snapin(value = \"FirstSnapin\", pool = true, batch = true)\n"
+                + "abstract class FirstSnapinTemplate<T> implements SnapinTemplate<Comparable<T>> {\n"
+                + "    protected abstract int foo(T t);\n" + "}\n"),
+        source("streaming.SecondSnapinTemplate",
+            "package streaming;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+                + "@Snapin(value = \"SecondSnapin\", bind = true)\n"
+                + "abstract class SecondSnapinTemplate implements SnapinTemplate<Runnable> {\n"
+                + "    protected abstract void bar(String... s) throws Exception;\n" + "}\n"));
+
+    @Rule
+    public final TemporaryFolder output = new TemporaryFolder();
+
+    @Test
+    public void testStreamingGeneratesSameSources() throws IOException {
+        final ProcessorCompilation shared = new ProcessorCompilation(output.newFolder());
+        final ProcessorCompilation streaming =
+            new ProcessorCompilation(output.newFolder()).option("snapin.streaming", true);
+
+        assertEquals(shared.compile(TEMPLATES, Collections.emptyList()),
+            streaming.compile(TEMPLATES, Collections.emptyList()));
+        assertEquals(contents(shared), contents(streaming));
+    }
+
+    private static Map<String, String> contents(ProcessorCompilation compilation) throws IOException {
+        final Map<String, String> result = new TreeMap<>();
+        for (File f : compilation.generatedSources()) {
+            result.put(f.getName(), new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+}
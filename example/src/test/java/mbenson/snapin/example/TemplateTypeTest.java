@@ -0,0 +1,70 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example;
+
+import static mbenson.snapin.example.ProcessorCompilation.source;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verifies that a template is recognized as implementing {@code SnapinTemplate} whether or not it declares type
+ * parameters.
+ */
+public class TemplateTypeTest {
+
+    private static JavaFileObject template(String declaration) {
+        return source("template.PlainSnapinTemplate",
+            "package template;\n" + "import mbenson.snapin.Snapin;\n" + "import mbenson.snapin.SnapinTemplate;\n"
+                + "@Snapin(\"PlainSnapin\")\n" + "abstract class PlainSnapinTemplate" + declaration + " {\n"
+                + "    protected abstract void go();\n" + "}\n");
+    }
+
+    @Rule
+    public final TemporaryFolder output = new TemporaryFolder();
+
+    private ProcessorCompilation compilation;
+
+    @Before
+    public void setup() {
+        compilation = new ProcessorCompilation(output.getRoot());
+    }
+
+    @Test
+    public void testNonGenericTemplate() throws IOException {
+        assertEquals(Collections.singleton("template.PlainSnapin"),
+            compilation.generated(template(" implements SnapinTemplate<Runnable>")));
+    }
+
+    @Test
+    public void testGenericTemplate() throws IOException {
+        assertEquals(Collections.singleton("template.PlainSnapin"),
+            compilation.generated(template("<T> implements SnapinTemplate<Comparable<T>>")));
+    }
+
+    @Test
+    public void testNotATemplate() throws IOException {
+        compilation.assertRejected(template(" implements Runnable"), "should implement SnapinTemplate");
+    }
+}
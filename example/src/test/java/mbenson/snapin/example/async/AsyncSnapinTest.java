@@ -0,0 +1,245 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import mbenson.snapin.example.fanout.Sink;
+
+public class AsyncSnapinTest {
+    private AsyncSnapin snapin;
+    private Sink sink;
+    private ExecutorService executor;
+    private volatile Thread templateThread;
+
+    @Before
+    public void setup() {
+        snapin = new AsyncSnapin() {
+
+            @Override
+            protected void publish(String... events) throws IOException {
+                templateThread = Thread.currentThread();
+                for (String event : events) {
+                    accept(event);
+                }
+            }
+
+            @Override
+            protected int tally(String key) {
+                return count(key);
+            }
+
+            @Override
+            protected <V> V lookup(String key, Class<V> type) {
+                return get(key, type);
+            }
+        };
+        sink = mock(Sink.class);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCompletesWithResult() throws Exception {
+        when(sink.count("key")).thenReturn(3);
+        assertEquals(Integer.valueOf(3), snapin.tallyAsync(sink, "key", executor).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCompletesWithGenericResult() throws Exception {
+        when(sink.get("key", String.class)).thenReturn("value");
+        final CompletableFuture<String> result = snapin.lookupAsync(sink, "key", String.class, executor);
+        assertEquals("value", result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVoidRunsOnExecutor() throws Exception {
+        assertEquals(null, snapin.publishAsync(sink, new String[] { "a", "b" }, executor).get(1, TimeUnit.SECONDS));
+        verify(sink).accept("a");
+        verify(sink).accept("b");
+        assertNotSame(Thread.currentThread(), templateThread);
+    }
+
+    @Test
+    public void testCheckedExceptionCompletesExceptionally() throws Exception {
+        final IOException failure = new IOException();
+        doThrow(failure).when(sink).accept("a");
+        final CompletableFuture<Void> result = snapin.publishAsync(sink, new String[] { "a" }, executor);
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertTrue(result.isCompletedExceptionally());
+
+        // the delegate was uninstalled:
+        when(sink.count("key")).thenReturn(1);
+        assertEquals(1, snapin.tally(sink, "key"));
+    }
+
+    @Test
+    public void testNullDelegateFailsInCaller() {
+        try {
+            snapin.tallyAsync(null, "key", command -> fail());
+            fail();
+        } catch (NullPointerException e) {
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullExecutor() {
+        snapin.tallyAsync(sink, "key", null);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejected() {
+        executor.shutdown();
+        snapin.tallyAsync(sink, "key", executor);
+    }
+
+    @Test
+    public void testConcurrentCallsProceedIndependently() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final AsyncSnapin meeting = new AsyncSnapin() {
+
+            @Override
+            protected void publish(String... events) {
+            }
+
+            @Override
+            protected int tally(String key) {
+                // neither call can complete unless both are in progress at once:
+                try {
+                    barrier.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    throw new IllegalStateException(e);
+                }
+                return count(key);
+            }
+
+            @Override
+            protected <V> V lookup(String key, Class<V> type) {
+                return null;
+            }
+        };
+        final Sink other = mock(Sink.class);
+        when(sink.count("key")).thenReturn(1);
+        when(other.count("key")).thenReturn(2);
+
+        final CompletableFuture<Integer> first = meeting.tallyAsync(sink, "key", executor);
+        final CompletableFuture<Integer> second = meeting.tallyAsync(other, "key", executor);
+        assertEquals(Integer.valueOf(1), first.get(2, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), second.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDirectExecutorWithinTemplate() {
+        final Sink inner = mock(Sink.class);
+        when(inner.get("key", Integer.class)).thenReturn(2);
+        when(sink.count("key")).thenReturn(1);
+        final AsyncSnapin nesting = new AsyncSnapin() {
+
+            @Override
+            protected void publish(String... events) {
+            }
+
+            @Override
+            protected int tally(String key) {
+                // runs in this thread, with the inner delegate installed in place of our own:
+                final int nested = lookupAsync(inner, key, Integer.class, Runnable::run).join();
+                return count(key) + nested;
+            }
+
+            @Override
+            protected <V> V lookup(String key, Class<V> type) {
+                return get(key, type);
+            }
+        };
+        assertEquals(3, nesting.tally(sink, "key"));
+        verify(inner, never()).count("key");
+    }
+
+    @Test
+    public void testConfinedDelegatesAreIsolated() throws Exception {
+        final CountDownLatch fed = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ConfinedAsyncSnapin<String> confined = new ConfinedAsyncSnapin<String>() {
+
+            @Override
+            protected void feed(String t) {
+                accept(t);
+                if ("async".equals(t)) {
+                    fed.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    accept(t);
+                }
+            }
+        };
+        final List<String> asyncFed = Collections.synchronizedList(new ArrayList<>());
+        final List<String> syncFed = new ArrayList<>();
+
+        final CompletableFuture<Void> result = confined.feedAsync(asyncFed::add, "async", executor);
+        assertTrue(fed.await(1, TimeUnit.SECONDS));
+        assertFalse(result.isDone());
+
+        // while the asynchronous call is in progress, the calling thread installs a delegate of its own:
+        confined.feed(syncFed::add, "sync");
+        release.countDown();
+        result.get(1, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonList("sync"), syncFed);
+        assertEquals(Arrays.asList("async", "async"), asyncFed);
+    }
+}
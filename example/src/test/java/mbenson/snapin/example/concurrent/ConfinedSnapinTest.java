@@ -0,0 +1,133 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import mbenson.snapin.example.Example;
+
+public class ConfinedSnapinTest {
+    @Mock
+    private Example outer;
+    @Mock
+    private Example inner;
+    private ConfinedSnapin<String> snapin;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        snapin = new ConfinedSnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                call("before", t);
+                // nest using another delegate:
+                bar(inner, t);
+                call("after", t);
+            }
+
+            @Override
+            protected <R> R bar(String t) {
+                call("bar", t);
+                return null;
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testReentry() {
+        snapin.foo(outer, "foo");
+
+        final InOrder inOrder = inOrder(outer);
+        inOrder.verify(outer).call("before", "foo");
+        inOrder.verify(outer).call("after", "foo");
+        verify(inner).call("bar", "foo");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRestored() {
+        snapin.foo(outer, "foo");
+        snapin.call("outside", "foo");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullDelegate() {
+        snapin.foo(null, "foo");
+    }
+
+    @Test
+    public void testThreadsHaveOwnDelegates() throws InterruptedException, ExecutionException, TimeoutException {
+        final CountDownLatch installed = new CountDownLatch(2);
+        final ConfinedSnapin<CountDownLatch> shared = new ConfinedSnapin<CountDownLatch>() {
+
+            @Override
+            protected void foo(CountDownLatch t) {
+                // both threads have installed their delegates before either calls its own:
+                t.countDown();
+                try {
+                    t.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                call("foo", Thread.currentThread().getName());
+            }
+
+            @Override
+            protected <R> R bar(CountDownLatch t) {
+                return null;
+            }
+        };
+        final CompletableFuture<Void> other = CompletableFuture.runAsync(() -> shared.foo(inner, installed));
+        shared.foo(outer, installed);
+        other.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, installed.getCount());
+        verify(outer).call("foo", Thread.currentThread().getName());
+        verify(inner, times(0)).call("foo", Thread.currentThread().getName());
+    }
+
+    @Test
+    public void testSessionReentry() {
+        try (ConfinedSnapin<String>.Session session = snapin.open(outer)) {
+            session.foo("foo");
+            session.bar("bar");
+        }
+        verify(inner).call("bar", "foo");
+        verify(outer).call("bar", "bar");
+    }
+}
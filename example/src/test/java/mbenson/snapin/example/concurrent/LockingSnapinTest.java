@@ -0,0 +1,212 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import mbenson.snapin.example.Example;
+
+public class LockingSnapinTest {
+    @Mock
+    private Example example;
+    @Mock
+    private Example other;
+    private LockingSnapin<String> snapin;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        snapin = create();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    private LockingSnapin<String> create() {
+        return new LockingSnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                // the lock, not the monitor, guards the template:
+                assertFalse(Thread.holdsLock(this));
+                call("foo", t);
+                if ("nest".equals(t)) {
+                    foo(other, t);
+                } else if ("fail".equals(t)) {
+                    throw new UnsupportedOperationException();
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected <R> R bar(String t) {
+                call("bar", t);
+                return (R) t;
+            }
+        };
+    }
+
+    @Test
+    public void testWrapper() {
+        snapin.foo(example, "a");
+        assertEquals("b", snapin.<String> bar(example, "b"));
+        verify(example).call("foo", "a");
+        verify(example).call("bar", "b");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUninstalled() {
+        snapin.foo(example, "a");
+        snapin.call("outside", "a");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullDelegate() {
+        snapin.foo(null, "a");
+    }
+
+    @Test
+    public void testWrapperReentry() {
+        try {
+            snapin.foo(example, "nest");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Re-entry not permitted", e.getMessage());
+        }
+        verify(other, times(0)).call("foo", "nest");
+    }
+
+    @Test
+    public void testUnlockedOnFailure() throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            snapin.foo(example, "fail");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        // another thread acquires the lock:
+        CompletableFuture.runAsync(() -> snapin.foo(other, "a")).get(10, TimeUnit.SECONDS);
+        verify(other).call("foo", "a");
+    }
+
+    @Test
+    public void testSession() {
+        try (LockingSnapin<String>.Session session = snapin.open(example)) {
+            session.foo("a");
+            session.foo("b");
+            session.bar("c");
+        }
+        verify(example).call("foo", "a");
+        verify(example).call("foo", "b");
+        verify(example).call("bar", "c");
+
+        // delegate uninstalled and lock released:
+        snapin.foo(other, "d");
+        verify(other).call("foo", "d");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSessionClosed() {
+        final LockingSnapin<String>.Session session = snapin.open(example);
+        session.close();
+        session.close();
+        session.foo("a");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReentry() {
+        try (LockingSnapin<String>.Session session = snapin.open(example)) {
+            snapin.foo(other, "a");
+        } finally {
+            verify(other, times(0)).call("foo", "a");
+        }
+    }
+
+    @Test
+    public void testPool() {
+        final LockingSnapinPool<String> pool = new LockingSnapinPool<>(this::create, 3);
+        assertEquals(4, pool.size());
+
+        pool.foo(example, "a");
+        verify(example).call("foo", "a");
+
+        final LockingSnapin<String> pooled = pool.get();
+        assertSame(pooled, pool.get());
+        pool.reclaim();
+        assertNotSame(pooled, pool.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPoolSizeNotPositive() {
+        new LockingSnapinPool<>(this::create, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPoolSizeTooLarge() {
+        // would otherwise round up past Integer.MAX_VALUE:
+        new LockingSnapinPool<>(this::create, (1 << 30) + 1);
+    }
+
+    @Test
+    public void testBatch() {
+        snapin.fooAll(Arrays.asList(example, other), "a");
+        verify(example).call("foo", "a");
+        verify(other).call("foo", "a");
+
+        final List<String> results = snapin.barAll(Arrays.asList(example, other), "b");
+        assertEquals(Arrays.asList("b", "b"), results);
+    }
+
+    @Test
+    public void testParallelBatch() {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<Example> delegates = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            delegates.add((id, arg) -> calls.incrementAndGet());
+        }
+        final LockingSnapinPool<String> pool = new LockingSnapinPool<>(this::create);
+        pool.fooAllParallel(delegates, "a");
+        assertEquals(delegates.size(), calls.get());
+
+        final List<String> results = pool.barAllParallel(delegates, "b");
+        assertEquals(delegates.size(), results.size());
+        assertTrue(results.stream().allMatch("b"::equals));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import mbenson.snapin.example.Example;
+
+public class UnguardedSnapinTest {
+    @Mock
+    private Example example;
+    @Mock
+    private Example other;
+    private UnguardedSnapin<String> snapin;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        snapin = new UnguardedSnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                // nothing is held while the template runs:
+                assertFalse(Thread.holdsLock(this));
+                call("foo", t);
+                if ("nest".equals(t)) {
+                    foo(other, t);
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected <R> R bar(String t) {
+                call("bar", t);
+                return (R) t;
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testWrapper() {
+        snapin.foo(example, "a");
+        assertEquals("b", snapin.<String> bar(example, "b"));
+        verify(example).call("foo", "a");
+        verify(example).call("bar", "b");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUninstalled() {
+        snapin.foo(example, "a");
+        snapin.call("outside", "a");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullDelegate() {
+        snapin.foo(null, "a");
+    }
+
+    @Test
+    public void testReentry() {
+        try {
+            snapin.foo(example, "nest");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Re-entry not permitted", e.getMessage());
+        }
+        verifyNoMoreInteractions(other);
+
+        // uninstalled despite the failure:
+        snapin.foo(other, "a");
+        verify(other).call("foo", "a");
+    }
+
+    @Test
+    public void testSession() {
+        try (UnguardedSnapin<String>.Session session = snapin.open(example)) {
+            session.foo("a");
+            session.bar("b");
+        }
+        verify(example).call("foo", "a");
+        verify(example).call("bar", "b");
+
+        snapin.foo(other, "c");
+        verify(other).call("foo", "c");
+        verify(example, times(0)).call("foo", "c");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSessionClosed() {
+        final UnguardedSnapin<String>.Session session = snapin.open(example);
+        session.close();
+        session.foo("a");
+    }
+}
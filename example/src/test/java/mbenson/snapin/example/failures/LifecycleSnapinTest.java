@@ -0,0 +1,88 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.failures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class LifecycleSnapinTest {
+    private LifecycleSnapin snapin;
+    private Lifecycle lifecycle;
+
+    @Before
+    public void setup() {
+        snapin = new LifecycleSnapin() {
+
+            @Override
+            protected void cycle() {
+                nullDelegate();
+                noDelegate();
+                reentered();
+                sessionClosed();
+            }
+        };
+        lifecycle = mock(Lifecycle.class);
+    }
+
+    @Test
+    public void testForwardsMethodsNamedAsFailures() {
+        snapin.cycle(lifecycle);
+
+        final InOrder inOrder = inOrder(lifecycle);
+        inOrder.verify(lifecycle).nullDelegate();
+        inOrder.verify(lifecycle).noDelegate();
+        inOrder.verify(lifecycle).reentered();
+        inOrder.verify(lifecycle).sessionClosed();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullDelegate() {
+        snapin.cycle(null);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoDelegate() {
+        snapin.reentered();
+    }
+
+    @Test
+    public void testReentered() {
+        try (LifecycleSnapin.Session session = snapin.open(lifecycle)) {
+            snapin.cycle(lifecycle);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Re-entry not permitted", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSessionClosed() {
+        final LifecycleSnapin.Session session = snapin.open(lifecycle);
+        session.close();
+        try {
+            session.cycle();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Session closed", e.getMessage());
+        }
+    }
+}
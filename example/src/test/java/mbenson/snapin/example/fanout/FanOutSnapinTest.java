@@ -0,0 +1,294 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.fanout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class FanOutSnapinTest {
+    private FanOutSnapin snapin;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        snapin = new FanOutSnapin() {
+
+            @Override
+            protected void publish(String event) throws IOException {
+                accept(event);
+            }
+
+            @Override
+            protected int tally(String key) {
+                return count(key);
+            }
+        };
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCallsEachDelegateInOrder() throws IOException {
+        // within and beyond the unrolled calls:
+        for (int n = 1; n <= 6; n++) {
+            final Sink[] sinks = sinks(n);
+            snapin.publish(snapin.fanOut(sinks), "event");
+
+            final InOrder inOrder = inOrder((Object[]) sinks);
+            for (Sink sink : sinks) {
+                inOrder.verify(sink).accept("event");
+            }
+        }
+    }
+
+    @Test
+    public void testVarargs() {
+        final Sink[] sinks = sinks(2);
+        snapin.fanOut(sinks).acceptAll("a", "b");
+        verify(sinks[0]).acceptAll("a", "b");
+        verify(sinks[1]).acceptAll("a", "b");
+    }
+
+    @Test
+    public void testDelegatesCopied() throws IOException {
+        final Sink[] sinks = sinks(2);
+        final Sink fanOut = snapin.fanOut(sinks);
+        final Sink original = sinks[1];
+        sinks[1] = mock(Sink.class);
+
+        fanOut.accept("event");
+        verify(original).accept("event");
+        verifyNoInteractions(sinks[1]);
+    }
+
+    @Test
+    public void testFirstResult() {
+        final Sink[] sinks = counting(1, 2, 3, 4, 5);
+        assertEquals(1, snapin.tally(snapin.fanOut(sinks), "key"));
+        for (Sink sink : sinks) {
+            verify(sink).count("key");
+        }
+        when(sinks[0].get("key", String.class)).thenReturn("value");
+        assertEquals("value", snapin.fanOut(sinks).get("key", String.class));
+    }
+
+    @Test
+    public void testLastResult() {
+        final LastFanOutSnapin last = new LastFanOutSnapin() {
+
+            @Override
+            protected int tally(String key) {
+                return count(key);
+            }
+        };
+        assertEquals(5, last.tally(last.fanOut(counting(1, 2, 3, 4, 5)), "key"));
+        assertEquals(1, last.tally(last.fanOut(counting(1)), "key"));
+    }
+
+    @Test
+    public void testAgreedResult() {
+        final AgreedFanOutSnapin agreed = new AgreedFanOutSnapin() {
+
+            @Override
+            protected int tally(String key) {
+                return count(key);
+            }
+        };
+        assertEquals(3, agreed.tally(agreed.fanOut(counting(3, 3, 3, 3, 3)), "key"));
+        for (int disagreeing = 1; disagreeing < 5; disagreeing++) {
+            final int[] counts = { 3, 3, 3, 3, 3 };
+            counts[disagreeing] = 4;
+            try {
+                agreed.tally(agreed.fanOut(counting(counts)), "key");
+                fail("expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertEquals("Delegates returned different results", e.getMessage());
+            }
+        }
+        final Sink[] sinks = sinks(2);
+        when(sinks[0].weight("key")).thenReturn(Double.NaN);
+        when(sinks[1].weight("key")).thenReturn(Double.NaN);
+        assertEquals(Double.NaN, agreed.fanOut(sinks).weight("key"), 0.0);
+    }
+
+    @Test
+    public void testFirstFailureEndsSequentialCall() throws IOException {
+        final IOException failure = new IOException();
+        final Sink[] sinks = sinks(3);
+        doThrow(failure).when(sinks[1]).accept("event");
+        try {
+            snapin.publish(snapin.fanOut(sinks), "event");
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+        verify(sinks[0]).accept("event");
+        verifyNoInteractions(sinks[2]);
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        final Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+        final Sink[] sinks = sinks(6);
+        for (int i = 0; i < sinks.length; i++) {
+            final Integer index = Integer.valueOf(i);
+            doAnswer(invocation -> {
+                // slow delegates are still awaited:
+                Thread.sleep(20);
+                threads.put(index, Thread.currentThread());
+                return null;
+            }).when(sinks[i]).accept("event");
+        }
+        snapin.publish(snapin.fanOutParallel(executor, sinks), "event");
+
+        assertEquals(sinks.length, threads.size());
+        assertSame(Thread.currentThread(), threads.get(0));
+        for (int i = 1; i < sinks.length; i++) {
+            assertNotSame(Thread.currentThread(), threads.get(i));
+        }
+    }
+
+    @Test
+    public void testParallelFailures() throws IOException {
+        final IOException first = new IOException("first");
+        final IOException second = new IOException("second");
+        final Sink[] sinks = sinks(4);
+        doThrow(first).when(sinks[1]).accept("event");
+        doThrow(second).when(sinks[3]).accept("event");
+        try {
+            snapin.publish(snapin.fanOutParallel(executor, sinks), "event");
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertSame(first, e);
+            assertArrayEquals(new Throwable[] { second }, e.getSuppressed());
+        }
+        // every delegate is called regardless:
+        for (Sink sink : sinks) {
+            verify(sink).accept("event");
+        }
+    }
+
+    @Test
+    public void testParallelUncheckedFailurePrevails() throws IOException {
+        final IllegalStateException unchecked = new IllegalStateException();
+        final IOException checked = new IOException();
+        final Sink[] sinks = sinks(2);
+        doThrow(unchecked).when(sinks[0]).accept("event");
+        doThrow(checked).when(sinks[1]).accept("event");
+        try {
+            snapin.publish(snapin.fanOutParallel(executor, sinks), "event");
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertSame(unchecked, e);
+            assertArrayEquals(new Throwable[] { checked }, e.getSuppressed());
+        }
+    }
+
+    @Test
+    public void testRejectedCallsRunInCallingThread() throws IOException {
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        final Sink[] sinks = sinks(3);
+        for (Sink sink : sinks) {
+            doAnswer(invocation -> threads.add(Thread.currentThread())).when(sink).accept("event");
+        }
+        snapin.publish(snapin.fanOutParallel(r -> {
+            throw new RejectedExecutionException();
+        }, sinks), "event");
+
+        assertEquals(Collections.nCopies(3, Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void testNonVoidMethodsAreSequential() {
+        final Sink[] sinks = counting(1, 2);
+        assertEquals(1, snapin.fanOutParallel(r -> fail("should not be called"), sinks).count("key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoDelegates() {
+        snapin.fanOut();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullDelegate() {
+        snapin.fanOut(mock(Sink.class), null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullExecutor() {
+        snapin.fanOutParallel(null, mock(Sink.class));
+    }
+
+    @Test
+    public void testGeneric() {
+        final GenericFanOutSnapin<String> generic = new GenericFanOutSnapin<String>() {
+
+            @Override
+            protected void feed(String t) {
+                accept(t);
+            }
+        };
+        final List<String> fed = new ArrayList<>();
+        generic.feed(generic.fanOut(fed::add, s -> fed.add(s.toUpperCase())), "a");
+        assertEquals(Arrays.asList("a", "A"), fed);
+    }
+
+    private static Sink[] sinks(int n) {
+        final Sink[] result = new Sink[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = mock(Sink.class);
+        }
+        return result;
+    }
+
+    private static Sink[] counting(int... counts) {
+        final Sink[] result = sinks(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            when(result[i].count("key")).thenReturn(counts[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.intercept;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import mbenson.snapin.example.Example;
+
+public class InterceptedSnapinTest {
+    private static final IOException FAILURE = new IOException("load");
+
+    @Mock
+    private Example example;
+    @Mock
+    private InterceptedSnapin.Interceptor interceptor;
+    private InterceptedSnapin<String> snapin;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        snapin = new InterceptedSnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                call("foo", t);
+            }
+
+            @Override
+            protected <R> R load(String t) throws IOException {
+                throw FAILURE;
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testNoInterceptor() {
+        assertNull(snapin.snapinInterceptor());
+        snapin.foo(example, "a");
+        verify(example).call("foo", "a");
+    }
+
+    @Test
+    public void testInterceptedCalls() {
+        snapin.snapinInterceptor(interceptor);
+        assertSame(interceptor, snapin.snapinInterceptor());
+
+        snapin.foo(example, "a");
+        snapin.fooAll(Arrays.asList(example), "b");
+        snapin.bind(example).call("direct", "c");
+
+        final InOrder inOrder = inOrder(interceptor);
+        inOrder.verify(interceptor).before("foo(T)");
+        inOrder.verify(interceptor).before("call(String,Object)");
+        inOrder.verify(interceptor).after("call(String,Object)");
+        inOrder.verify(interceptor).after("foo(T)");
+        inOrder.verify(interceptor).before("fooAll(T)");
+        inOrder.verify(interceptor).before("call(String,Object)");
+        inOrder.verify(interceptor).after("call(String,Object)");
+        inOrder.verify(interceptor).after("fooAll(T)");
+        inOrder.verify(interceptor).before("call(String,Object)");
+        inOrder.verify(interceptor).after("call(String,Object)");
+        verifyNoMoreInteractions(interceptor);
+    }
+
+    @Test
+    public void testFailure() {
+        snapin.snapinInterceptor(interceptor);
+        try {
+            snapin.load(example, "a");
+            fail();
+        } catch (IOException e) {
+            assertSame(FAILURE, e);
+        }
+        final InOrder inOrder = inOrder(interceptor);
+        inOrder.verify(interceptor).before("load(T)");
+        inOrder.verify(interceptor).failed("load(T)", FAILURE);
+        inOrder.verify(interceptor).after("load(T)");
+        verifyNoMoreInteractions(interceptor);
+    }
+
+    @Test
+    public void testRemoval() {
+        snapin.snapinInterceptor(interceptor);
+        snapin.snapinInterceptor(null);
+        snapin.foo(example, "a");
+        verifyNoMoreInteractions(interceptor);
+        assertEquals(1, snapin.snapinStats().get("foo(T)").getCalls());
+    }
+
+    @Test
+    public void testDefaultMethods() {
+        final InterceptedSnapin.Interceptor noop = new InterceptedSnapin.Interceptor() {
+        };
+        snapin.snapinInterceptor(noop);
+        snapin.foo(example, "a");
+        verify(example).call("foo", "a");
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import mbenson.snapin.example.Example;
+
+public class LazySnapinTest {
+    @Mock
+    private Example example;
+    @Mock
+    private Example other;
+    @Mock
+    private Supplier<Example> supplier;
+    private LazySnapin<String> snapin;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        when(supplier.get()).thenReturn(example);
+        snapin = new LazySnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                if (t != null) {
+                    call("foo", t);
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected <R> R bar(String... t) throws IOException {
+                for (String s : t) {
+                    call("bar", s);
+                    if ("nested".equals(s)) {
+                        foo(other, s);
+                    }
+                }
+                return (R) Integer.valueOf(t.length);
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testShortCircuitNeverSupplies() {
+        snapin.foo(supplier, null);
+        verify(supplier, times(0)).get();
+    }
+
+    @Test
+    public void testSuppliedOnceOnFirstCall() throws IOException {
+        assertEquals(Integer.valueOf(3), snapin.<Integer> bar(supplier, "a", "b", "c"));
+        verify(supplier).get();
+        verify(example).call("bar", "a");
+        verify(example).call("bar", "b");
+        verify(example).call("bar", "c");
+    }
+
+    @Test
+    public void testSuppliedPerCall() {
+        snapin.foo(supplier, "a");
+        snapin.foo(supplier, "b");
+        verify(supplier, times(2)).get();
+    }
+
+    @Test
+    public void testReentryRestoresResolvedDelegate() throws IOException {
+        snapin.bar(supplier, "a", "nested", "b");
+        verify(supplier).get();
+        verify(other).call("foo", "nested");
+        verify(example).call("bar", "b");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullSupplier() {
+        snapin.foo((Supplier<Example>) null, "a");
+    }
+
+    @Test
+    public void testNullSupplied() {
+        when(supplier.get()).thenReturn(null);
+        try {
+            snapin.foo(supplier, "a");
+            fail();
+        } catch (NullPointerException e) {
+            // expected
+        }
+        // the supplier has been uninstalled:
+        try {
+            snapin.call("direct", "b");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConfined() {
+        final ConfinedLazySnapin<String> confined = new ConfinedLazySnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                call("foo", t);
+                call("foo", t);
+            }
+        };
+        confined.foo(supplier, "a");
+        verify(supplier).get();
+        verify(example, times(2)).call("foo", "a");
+
+        confined.foo(mock(Example.class), "b");
+        verify(supplier).get();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.memo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class MemoizedSnapinTest {
+    @Mock
+    private Function<String, String> function;
+    private MemoizedSnapin<String, String> snapin;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        when(function.apply("a")).thenReturn("A");
+        when(function.apply("b")).thenReturn("B");
+        when(function.apply("c")).thenReturn("C");
+
+        snapin = new MemoizedSnapin<String, String>() {
+
+            @Override
+            protected String recent(String input) {
+                return apply(input);
+            }
+
+            @Override
+            protected String frequent(String input) {
+                return apply(input);
+            }
+
+            @Override
+            protected String expiring(String input) {
+                return apply(input);
+            }
+
+            @Override
+            protected int distinct(String... inputs) {
+                return (int) Arrays.stream(inputs).map(this::apply).distinct().count();
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testRemembered() {
+        assertEquals("A", snapin.recent(function, "a"));
+        assertEquals("A", snapin.recent(function, "a"));
+        assertEquals("A", snapin.bind(function).recent("a"));
+        verify(function).apply("a");
+    }
+
+    @Test
+    public void testKeyedByDelegateIdentity() {
+        @SuppressWarnings("unchecked")
+        final Function<String, String> other = mock(Function.class);
+        when(other.apply("a")).thenReturn("a'");
+
+        assertEquals("A", snapin.recent(function, "a"));
+        assertEquals("a'", snapin.recent(other, "a"));
+        assertEquals("A", snapin.recent(function, "a"));
+        verify(function).apply("a");
+        verify(other).apply("a");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        snapin.recent(function, "a");
+        snapin.recent(function, "b");
+        snapin.recent(function, "a");
+        snapin.recent(function, "c"); // evicts b
+        snapin.recent(function, "a");
+        snapin.recent(function, "b");
+        verify(function).apply("a");
+        verify(function, times(2)).apply("b");
+        verify(function).apply("c");
+    }
+
+    @Test
+    public void testLeastFrequentlyUsedEvicted() {
+        snapin.frequent(function, "a");
+        snapin.frequent(function, "a");
+        snapin.frequent(function, "b");
+        snapin.frequent(function, "b");
+        snapin.frequent(function, "b");
+        snapin.frequent(function, "c"); // evicts a
+        snapin.frequent(function, "b");
+        snapin.frequent(function, "a"); // evicts c
+        snapin.frequent(function, "c");
+        verify(function, times(2)).apply("a");
+        verify(function).apply("b");
+        verify(function, times(2)).apply("c");
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        snapin.expiring(function, "a");
+        snapin.expiring(function, "a");
+        verify(function).apply("a");
+        Thread.sleep(100);
+        snapin.expiring(function, "a");
+        verify(function, times(2)).apply("a");
+    }
+
+    @Test
+    public void testVarArgsComparedByValue() {
+        assertEquals(2, snapin.distinct(function, "a", "b", "a"));
+        assertEquals(2, snapin.distinct(function, "a", "b", "a"));
+        assertEquals(3, snapin.distinct(function, "a", "b", "c"));
+        verify(function, times(3)).apply("a");
+        verify(function, times(2)).apply("b");
+        verify(function).apply("c");
+    }
+
+    @Test
+    public void testVarArgsCopied() {
+        final String[] inputs = { "a", "b", "a" };
+        assertEquals(2, snapin.distinct(function, inputs));
+        inputs[2] = "c";
+        assertEquals(3, snapin.distinct(function, inputs));
+        assertEquals(2, snapin.distinct(function, "a", "b", "a"));
+        verify(function, times(3)).apply("a");
+        verify(function, times(2)).apply("b");
+        verify(function).apply("c");
+    }
+
+    @Test
+    public void testFailureNotRemembered() {
+        when(function.apply("x")).thenThrow(new IllegalArgumentException()).thenReturn("X");
+        try {
+            snapin.recent(function, "x");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("X", snapin.recent(function, "x"));
+        assertEquals("X", snapin.recent(function, "x"));
+        verify(function, times(2)).apply("x");
+    }
+
+    @Test
+    public void testNullResultRemembered() {
+        assertNull(snapin.recent(function, "z"));
+        assertNull(snapin.recent(function, "z"));
+        verify(function).apply("z");
+    }
+}
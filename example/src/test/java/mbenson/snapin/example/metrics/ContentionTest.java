@@ -0,0 +1,143 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import mbenson.snapin.example.Example;
+
+public class ContentionTest {
+    private static final long HOLD_MILLIS = 50;
+
+    private final Example example = (id, arg) -> {
+    };
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private void block(String t) {
+        if ("block".equals(t)) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final ContendedSnapin<String> contended = new ContendedSnapin<String>() {
+
+        @Override
+        protected void foo(String t) {
+            block(t);
+        }
+    };
+
+    private final SampledLockSnapin<String> sampled = new SampledLockSnapin<String>() {
+
+        @Override
+        protected void foo(String t) {
+            block(t);
+        }
+    };
+
+    @Test
+    public void testMonitorContention() throws InterruptedException {
+        contend(() -> contended.foo(example, "block"), () -> contended.foo(example, "wait"), Thread.State.BLOCKED);
+
+        final ContendedSnapin.ContentionStats stats = contended.snapinContention().get("foo(T)");
+        assertEquals(2, stats.getSamples());
+        assertEquals(1, stats.getMaxWaiters());
+        assertTrue(stats.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(HOLD_MILLIS));
+        assertTrue(stats.getTotalHoldNanos() >= TimeUnit.MILLISECONDS.toNanos(HOLD_MILLIS));
+        assertEquals(0, contended.snapinContention().get("fooAll(T)").getSamples());
+    }
+
+    @Test
+    public void testLockContention() throws InterruptedException {
+        contend(() -> sampled.foo(example, "block"), () -> sampled.foo(example, "wait"), Thread.State.WAITING);
+
+        final SampledLockSnapin.ContentionStats stats = sampled.snapinContention().get("foo(T)");
+        // every call is counted toward the waiters, sampled or not:
+        assertEquals(1, stats.getMaxWaiters());
+        assertTrue(stats.getSamples() <= 2);
+    }
+
+    @Test
+    public void testSampling() {
+        final int calls = 4000;
+        for (int i = 0; i < calls; i++) {
+            sampled.foo(example, "quick");
+        }
+        final long samples = sampled.snapinContention().get("foo(T)").getSamples();
+        // one in four on average:
+        assertTrue(String.valueOf(samples), samples > calls / 8 && samples < calls / 2);
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        final Path file = Files.createTempFile("contention", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ContendedSnapin.class.getName() + ".Contention");
+            recording.start();
+            contended.foo(example, "quick");
+            contended.fooAll(java.util.Arrays.asList(example, example), "quick");
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals(ContendedSnapin.class.getName() + ".Contention"))
+                .collect(Collectors.toList());
+            assertEquals(2, events.size());
+            assertEquals("foo(T)", events.get(0).getString("method"));
+            assertEquals("fooAll(T)", events.get(1).getString("method"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Have {@code waiter} contend for the guard held by {@code holder} for {@link #HOLD_MILLIS}.
+     */
+    private void contend(Runnable holder, Runnable waiter, Thread.State waiting) throws InterruptedException {
+        final Thread holding = new Thread(holder);
+        holding.start();
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        final Thread waitingThread = new Thread(waiter);
+        waitingThread.start();
+        while (waitingThread.getState() != waiting) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(HOLD_MILLIS);
+        release.countDown();
+        holding.join();
+        waitingThread.join();
+    }
+}
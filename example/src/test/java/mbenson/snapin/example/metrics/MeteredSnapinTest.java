@@ -0,0 +1,135 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import mbenson.snapin.example.Example;
+
+public class MeteredSnapinTest {
+    @Mock
+    private Example example;
+    private MeteredSnapin<String> snapin;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        snapin = new MeteredSnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                call("foo", t);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected <R> R bar(String t) {
+                call("bar", t);
+                return (R) t;
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testStats() {
+        snapin.foo(example, "a");
+        snapin.foo(example, "b");
+        assertEquals("c", snapin.<String> bar(example, "c"));
+        snapin.fooAll(Arrays.asList(example, example), "d");
+        try (MeteredSnapin<String>.Session session = snapin.open(example)) {
+            session.foo("e");
+        }
+        snapin.bind(example).call("direct", "f");
+
+        final Map<String, MeteredSnapin.Stats> stats = snapin.snapinStats();
+        assertEquals(Arrays.asList("call(String,Object)", "foo(T)", "fooAll(T)", "bar(T)", "barAll(T)"),
+            Arrays.asList(stats.keySet().toArray()));
+        assertEquals(7, stats.get("call(String,Object)").getCalls());
+        assertEquals(3, stats.get("foo(T)").getCalls());
+        assertEquals(1, stats.get("fooAll(T)").getCalls());
+        assertEquals(1, stats.get("bar(T)").getCalls());
+        assertEquals(0, stats.get("barAll(T)").getCalls());
+        assertEquals(0.0, stats.get("barAll(T)").getMeanNanos(), 0.0);
+
+        final MeteredSnapin.Stats foo = stats.get("foo(T)");
+        assertTrue(foo.getTotalNanos() > 0);
+        assertEquals(foo.getTotalNanos() / 3.0, foo.getMeanNanos(), 0.0);
+
+        verify(example).call("direct", "f");
+    }
+
+    @Test
+    public void testReset() {
+        snapin.foo(example, "a");
+        snapin.resetSnapinStats();
+        snapin.snapinStats().values().forEach(s -> {
+            assertEquals(0, s.getCalls());
+            assertEquals(0, s.getTotalNanos());
+        });
+    }
+
+    @Test
+    public void testFailedCallIsCounted() {
+        try {
+            snapin.foo(null, "a");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        assertEquals(1, snapin.snapinStats().get("foo(T)").getCalls());
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("mbenson.snapin.example:type=MeteredSnapin");
+        server.registerMBean(snapin.snapinStatsMXBean(), name);
+        try {
+            snapin.foo(example, "a");
+
+            final TabularData stats = (TabularData) server.getAttribute(name, "Stats");
+            final CompositeData foo = (CompositeData) stats.get(new Object[] { "foo(T)" }).get("value");
+            assertEquals(1L, foo.get("calls"));
+
+            server.invoke(name, "resetStats", null, null);
+            assertEquals(0, snapin.snapinStats().get("foo(T)").getCalls());
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
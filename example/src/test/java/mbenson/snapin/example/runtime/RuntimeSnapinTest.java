@@ -0,0 +1,194 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import mbenson.snapin.SnapinTemplate;
+import mbenson.snapin.Snapins;
+import mbenson.snapin.example.Example;
+
+public class RuntimeSnapinTest {
+
+    /**
+     * Exercises each kind of parameter and return type.
+     */
+    public interface Mixed {
+        long sum(int i, long l, double d, float f, short s, byte b, char c, boolean z);
+
+        double twice(double d);
+
+        String join(String[] parts, char separator);
+
+        void nothing();
+
+        int[] ints(Object o);
+
+        default String greeting() {
+            return "hello";
+        }
+    }
+
+    abstract static class ExampleTemplate implements SnapinTemplate<Example>, Example {
+
+        protected void foo(String t) {
+            call("foo", t);
+        }
+
+        protected String bar(String t) throws IOException {
+            if (t == null) {
+                throw new IOException();
+            }
+            call("bar", t);
+            return t + t;
+        }
+
+        protected void nested(Snapins.Engine<ExampleTemplate, Example> engine, Example other) {
+            engine.run(this, other, s -> s.foo("nested"));
+        }
+    }
+
+    abstract static class MixedTemplate implements SnapinTemplate<Mixed>, Mixed {
+
+        @Override
+        public double twice(double d) {
+            return 2 * d;
+        }
+
+        protected long everything() {
+            return sum(1, 2L, 3.0, 4f, (short) 5, (byte) 6, '7', true) + (long) twice(8.0)
+                + join(new String[] { "a" }, ',').length() + ints(null).length;
+        }
+    }
+
+    abstract static class UnimplementedTemplate implements SnapinTemplate<Example>, Example {
+        protected abstract void foo(String t);
+    }
+
+    @Mock
+    private Example example;
+    @Mock
+    private Mixed mixed;
+    private Snapins.Engine<ExampleTemplate, Example> engine;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        engine = Snapins.generate(ExampleTemplate.class);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testGeneratedClass() {
+        assertSame(engine, Snapins.generate(ExampleTemplate.class));
+        assertSame(Example.class, engine.delegateType());
+        assertTrue(ExampleTemplate.class.isAssignableFrom(engine.type()));
+        assertTrue(Modifier.isFinal(engine.type().getModifiers()));
+        assertEquals(ExampleTemplate.class.getPackage().getName(), engine.type().getPackage().getName());
+    }
+
+    @Test
+    public void testRun() {
+        final ExampleTemplate snapin = engine.newInstance();
+        engine.run(snapin, example, s -> s.foo("a"));
+        verify(example).call("foo", "a");
+    }
+
+    @Test
+    public void testCall() throws IOException {
+        final ExampleTemplate snapin = engine.newInstance();
+        assertEquals("bb", engine.call(snapin, example, s -> s.bar("b")));
+        verify(example).call("bar", "b");
+    }
+
+    @Test
+    public void testCheckedExceptionUninstallsDelegate() {
+        final ExampleTemplate snapin = engine.newInstance();
+        try {
+            engine.call(snapin, example, s -> s.bar(null));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(((Snapins.Host) snapin).snapinDelegate());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoDelegate() {
+        engine.newInstance().call("direct", "a");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullDelegate() {
+        engine.run(engine.newInstance(), null, s -> s.foo("a"));
+    }
+
+    @Test
+    public void testReentryNotPermitted() {
+        final ExampleTemplate snapin = engine.newInstance();
+        try {
+            engine.run(snapin, example, s -> s.nested(engine, example));
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verifyNoMoreInteractions(example);
+    }
+
+    @Test
+    public void testParameterAndReturnTypes() {
+        when(mixed.sum(1, 2L, 3.0, 4f, (short) 5, (byte) 6, '7', true)).thenReturn(100L);
+        when(mixed.join(new String[] { "a" }, ',')).thenReturn("abc");
+        when(mixed.ints(null)).thenReturn(new int[] { 1, 2 });
+        when(mixed.greeting()).thenReturn("hi");
+
+        final Snapins.Engine<MixedTemplate, Mixed> mixedEngine = Snapins.generate(MixedTemplate.class);
+        final MixedTemplate snapin = mixedEngine.newInstance();
+        assertEquals(Long.valueOf(121L), mixedEngine.call(snapin, mixed, MixedTemplate::everything));
+        // default methods are forwarded; implemented methods are not:
+        assertEquals("hi", mixedEngine.call(snapin, mixed, Mixed::greeting));
+        mixedEngine.run(snapin, mixed, Mixed::nothing);
+        verify(mixed).nothing();
+        assertArrayEquals(new int[] { 1, 2 }, mixedEngine.call(snapin, mixed, s -> s.ints(null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAbstractTemplateMethod() {
+        Snapins.generate(UnimplementedTemplate.class);
+    }
+}
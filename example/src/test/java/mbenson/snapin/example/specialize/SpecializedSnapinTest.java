@@ -0,0 +1,127 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.specialize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class SpecializedSnapinTest {
+    @Mock
+    private Accumulator accumulator;
+    private SpecializedSnapin snapin;
+    private Number generic;
+    private AutoCloseable mocks;
+
+    @Before
+    public void setup() {
+        mocks = MockitoAnnotations.openMocks(this);
+        snapin = new SpecializedSnapin() {
+
+            @Override
+            protected <N extends Number> void accumulate(N value) {
+                generic = value;
+                add(value.doubleValue());
+            }
+
+            @Override
+            protected void accumulate(int value) {
+                add((long) value);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected <X extends Number, F extends Number> X scale(X value, F factor) {
+                generic = value;
+                return (X) Double.valueOf(value.doubleValue() * factor.doubleValue());
+            }
+
+            @Override
+            protected double scale(double value, long factor) {
+                return value * factor;
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testOverriddenSpecialization() {
+        snapin.accumulate(accumulator, 5);
+        verify(accumulator).add(5L);
+        assertNull(generic);
+
+        assertEquals(7.5, snapin.scale(accumulator, 2.5, 3L), 0.0);
+        assertNull(generic);
+    }
+
+    @Test
+    public void testDefaultSpecializationBoxes() {
+        snapin.accumulate(accumulator, 5L);
+        verify(accumulator).add(5.0);
+        assertEquals(Long.valueOf(5L), generic);
+
+        assertEquals(7.5, snapin.scale(accumulator, 2.5, 3), 0.0);
+        assertEquals(Double.valueOf(2.5), generic);
+    }
+
+    @Test
+    public void testGeneric() {
+        snapin.accumulate(accumulator, Double.valueOf(1.5));
+        verify(accumulator).add(1.5);
+        assertEquals(Double.valueOf(1.5), generic);
+    }
+
+    @Test
+    public void testEntryPoints() {
+        snapin.bind(accumulator).accumulate(1);
+        snapin.accumulateAll(Arrays.asList(accumulator, accumulator), 2);
+        new SpecializedSnapinPool(() -> snapin, 2).accumulate(accumulator, 3);
+        verify(accumulator).add(1L);
+        verify(accumulator, times(2)).add(2L);
+        verify(accumulator).add(3L);
+        assertNull(generic);
+    }
+
+    @Test
+    public void testSignatures() throws NoSuchMethodException {
+        for (Class<?> primitive : Arrays.asList(int.class, long.class)) {
+            assertFalse(isAbstract(SpecializedSnapin.class.getDeclaredMethod("accumulate", primitive)));
+            SpecializedSnapin.class.getDeclaredMethod("accumulate", Accumulator.class, primitive);
+            assertEquals(double.class,
+                SpecializedSnapin.class.getDeclaredMethod("scale", double.class, primitive).getReturnType());
+        }
+        assertTrue(isAbstract(SpecializedSnapin.class.getDeclaredMethod("accumulate", Number.class)));
+    }
+
+    private static boolean isAbstract(java.lang.reflect.Method method) {
+        return java.lang.reflect.Modifier.isAbstract(method.getModifiers());
+    }
+}
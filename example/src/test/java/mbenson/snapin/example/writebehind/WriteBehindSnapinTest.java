@@ -0,0 +1,314 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.writebehind;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindSnapinTest {
+    private RecordingLog log;
+    private List<Integer> observed;
+    private WriteBehindSnapin snapin;
+
+    @Before
+    public void setup() {
+        log = new RecordingLog();
+        observed = new ArrayList<>();
+        snapin = new WriteBehindSnapin() {
+
+            @Override
+            protected void report(int count) {
+                for (int i = 0; i < count; i++) {
+                    write("m" + i);
+                    observed.add(log.entries.size());
+                }
+            }
+
+            @Override
+            protected int reportAndSync(int count) throws IOException {
+                report(count);
+                write(count, "level");
+                measure("count", count);
+                writeAll("a", "b");
+                sync();
+                return written();
+            }
+        };
+    }
+
+    @Test
+    public void testForwardsOnReturn() {
+        snapin.report(log, 3);
+        assertEquals(Arrays.asList(0, 0, 0), observed);
+        assertEquals(Arrays.asList("write:m0", "write:m1", "write:m2"), log.entries);
+    }
+
+    @Test
+    public void testFlushesWhenFull() {
+        snapin.report(log, 9);
+        assertEquals(Arrays.asList(0, 0, 0, 4, 4, 4, 4, 8, 8), observed);
+        assertEquals(9, log.entries.size());
+        assertEquals("write:m8", log.entries.get(8));
+    }
+
+    @Test
+    public void testFlushesBeforeOtherCalls() throws IOException {
+        assertEquals(4, snapin.reportAndSync(log, 2));
+        assertEquals(Arrays.asList("write:m0", "write:m1", "write:2:level", "measure:count:2.0", "writeAll:[a, b]",
+            "sync"), log.entries);
+    }
+
+    @Test
+    public void testDiscardsWhenTemplateFails() {
+        final WriteBehindSnapin failing = new WriteBehindSnapin() {
+
+            @Override
+            protected void report(int count) {
+                write("before");
+                if (count > 0) {
+                    throw new IllegalArgumentException();
+                }
+            }
+
+            @Override
+            protected int reportAndSync(int count) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try {
+            failing.report(log, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertTrue(log.entries.isEmpty());
+
+        // nothing left over for the next call:
+        failing.report(log, 0);
+        assertEquals(Collections.singletonList("write:before"), log.entries);
+    }
+
+    @Test
+    public void testTemplateFailureNotMaskedByFlush() {
+        final RecordingLog broken = new RecordingLog() {
+
+            @Override
+            public void write(String message) {
+                throw new IllegalStateException(message);
+            }
+        };
+        final WriteBehindSnapin failing = new WriteBehindSnapin() {
+
+            @Override
+            protected void report(int count) {
+                write("before");
+                throw new IllegalArgumentException("template");
+            }
+
+            @Override
+            protected int reportAndSync(int count) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try {
+            failing.report(broken, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("template", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUninstallsWhenDelegateFails() {
+        final RecordingLog broken = new RecordingLog() {
+
+            @Override
+            public void write(String message) {
+                throw new IllegalStateException(message);
+            }
+        };
+        try {
+            snapin.report(broken, 2);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("m0", e.getMessage());
+        }
+        // the delegate has been uninstalled and its calls discarded:
+        snapin.report(log, 1);
+        assertEquals(Collections.singletonList("write:m0"), log.entries);
+    }
+
+    @Test
+    public void testBatchFlushesEachDelegate() {
+        final RecordingLog other = new RecordingLog();
+        snapin.reportAll(Arrays.asList(log, other), 2);
+        assertEquals(Arrays.asList("write:m0", "write:m1"), log.entries);
+        assertEquals(Arrays.asList("write:m0", "write:m1"), other.entries);
+    }
+
+    @Test
+    public void testReentryFlushesOuterDelegate() {
+        final RecordingLog inner = new RecordingLog();
+        final WriteBehindSnapin reentrant = new WriteBehindSnapin() {
+
+            @Override
+            protected void report(int count) {
+                write("outer");
+                if (count > 0) {
+                    report(inner, count - 1);
+                    observed.add(inner.entries.size());
+                }
+                write("outer again");
+            }
+
+            @Override
+            protected int reportAndSync(int count) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        reentrant.report(log, 1);
+        assertEquals(Collections.singletonList(2), observed);
+        assertEquals(Arrays.asList("write:outer", "write:outer again"), inner.entries);
+        assertEquals(Arrays.asList("write:outer", "write:outer again"), log.entries);
+    }
+
+    @Test
+    public void testBatchAwareDelegate() throws IOException {
+        final BatchLog batched = new BatchLog();
+        assertEquals(0, snapin.reportAndSync(batched, 3));
+
+        // capacity 4: m0-m2, level; measure, writeAll; then sync:
+        assertEquals(2, batched.batches.size());
+        assertEquals(Arrays.asList("write", "write", "write", "write"), batched.batches.get(0));
+        assertEquals(Arrays.asList("measure", "writeAll"), batched.batches.get(1));
+        assertArrayEquals(new Object[] { "m1" }, batched.arguments.get(1));
+        assertArrayEquals(new Object[] { 3, "level" }, batched.arguments.get(3));
+        assertArrayEquals(new Object[] { "count", 3.0 }, batched.arguments.get(4));
+        assertArrayEquals(new String[] { "a", "b" }, (String[]) batched.arguments.get(5)[0]);
+        assertTrue(batched.outOfRange);
+        assertEquals(Arrays.asList("write:m0", "write:m1", "write:m2", "write:3:level", "measure:count:3.0",
+            "writeAll:[a, b]", "sync"), batched.entries);
+    }
+
+    @Test
+    public void testSessionFlushesOnClose() {
+        final List<String> fed = new ArrayList<>();
+        final GenericWriteBehindSnapin<String> generic = new GenericWriteBehindSnapin<String>() {
+
+            @Override
+            protected void feed(Iterable<? extends String> elements) {
+                elements.forEach(this);
+            }
+        };
+        try (GenericWriteBehindSnapin<String>.Session session = generic.open(fed::add)) {
+            session.feed(Arrays.asList("x", "y"));
+            assertTrue(fed.isEmpty());
+            session.feed(Collections.singletonList("z"));
+        }
+        assertEquals(Arrays.asList("x", "y", "z"), fed);
+    }
+
+    @Test
+    public void testLazyFlushesResolvedDelegate() {
+        final List<Integer> fed = new ArrayList<>();
+        final GenericWriteBehindSnapin<Integer> generic = new GenericWriteBehindSnapin<Integer>() {
+
+            @Override
+            protected void feed(Iterable<? extends Integer> elements) {
+                elements.forEach(this);
+            }
+        };
+        final List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            elements.add(i);
+        }
+        // capacity 8:
+        generic.feed(() -> (Consumer<Integer>) fed::add, elements);
+        assertEquals(elements, fed);
+    }
+
+    static class RecordingLog implements Log {
+        final List<String> entries = new ArrayList<>();
+
+        @Override
+        public void write(String message) {
+            entries.add("write:" + message);
+        }
+
+        @Override
+        public void write(int level, String message) {
+            entries.add("write:" + level + ':' + message);
+        }
+
+        @Override
+        public void measure(String name, double value) {
+            entries.add("measure:" + name + ':' + value);
+        }
+
+        @Override
+        public void writeAll(String... messages) {
+            entries.add("writeAll:" + Arrays.toString(messages));
+        }
+
+        @Override
+        public void sync() throws IOException {
+            entries.add("sync");
+        }
+
+        @Override
+        public int written() {
+            return (int) entries.stream().filter(e -> e.startsWith("write")).count();
+        }
+    }
+
+    static class BatchLog extends RecordingLog implements WriteBehindSnapin.BatchAware {
+        final List<List<String>> batches = new ArrayList<>();
+        final List<Object[]> arguments = new ArrayList<>();
+        boolean outOfRange;
+
+        @Override
+        public void writeBehind(WriteBehindSnapin.Calls calls) {
+            final List<String> methods = new ArrayList<>();
+            for (int i = 0; i < calls.size(); i++) {
+                methods.add(calls.method(i));
+                arguments.add(calls.arguments(i));
+            }
+            batches.add(methods);
+            try {
+                calls.method(calls.size());
+            } catch (IndexOutOfBoundsException e) {
+                outOfRange = true;
+            }
+            calls.replay(this);
+        }
+
+        @Override
+        public int written() {
+            return 0;
+        }
+    }
+}
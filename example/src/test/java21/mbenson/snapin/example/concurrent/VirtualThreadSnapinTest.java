@@ -0,0 +1,116 @@
+/*
+ * Copyright the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package mbenson.snapin.example.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import mbenson.snapin.example.Example;
+
+/**
+ * Verifies that snap-ins generated without monitors do not pin the carrier threads of blocked virtual threads.
+ */
+public class VirtualThreadSnapinTest {
+    private static final int THREADS = 5000;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void testLockedDelegateDoesNotStarveCarriers() throws InterruptedException {
+        final LockingSnapin<String> snapin = new LockingSnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                call("foo", t);
+            }
+
+            @Override
+            protected <R> R bar(String t) {
+                return null;
+            }
+        };
+        final CountDownLatch release = new CountDownLatch(1);
+        final Example blocking = (id, arg) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            calls.incrementAndGet();
+        };
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(Thread.ofVirtual().start(() -> snapin.foo(blocking, "foo")));
+        }
+        // one thread holds the lock, blocked in the delegate; all others wait for the lock:
+        final CountDownLatch probe = new CountDownLatch(1);
+        Thread.ofVirtual().start(probe::countDown);
+        assertTrue("carrier threads starved", probe.await(10, TimeUnit.SECONDS));
+
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(THREADS, calls.get());
+    }
+
+    @Test
+    public void testConfinedDelegatesBlockConcurrently() throws InterruptedException {
+        final ConfinedSnapin<String> snapin = new ConfinedSnapin<String>() {
+
+            @Override
+            protected void foo(String t) {
+                call("foo", t);
+            }
+
+            @Override
+            protected <R> R bar(String t) {
+                return null;
+            }
+        };
+        final CountDownLatch arrived = new CountDownLatch(THREADS);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final Example blocking = (id, arg) -> {
+                arrived.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                calls.incrementAndGet();
+            };
+            threads.add(Thread.ofVirtual().start(() -> snapin.foo(blocking, "foo")));
+        }
+        // every thread is simultaneously blocked within its own delegate:
+        assertTrue("delegates did not block concurrently", arrived.await(30, TimeUnit.SECONDS));
+
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(THREADS, calls.get());
+    }
+}